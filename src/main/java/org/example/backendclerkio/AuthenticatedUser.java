@@ -0,0 +1,12 @@
+package org.example.backendclerkio;
+
+import java.security.Principal;
+
+// Principal JwtFilter puts in the security context, built from the token's claims without loading the user
+public record AuthenticatedUser(int userId, String email, boolean isAdmin) implements Principal {
+
+    @Override
+    public String getName() {
+        return email;
+    }
+}
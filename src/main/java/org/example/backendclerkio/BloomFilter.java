@@ -0,0 +1,71 @@
+package org.example.backendclerkio;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Fixed size Bloom filter over 128-bit keys, sized for an expected number of entries and false positive rate.
+// The bit positions come from double hashing the two halves of the key, which are already a cryptographic hash.
+// Lookups don't lock; a key added concurrently may be missed by a lookup running at the same time.
+final class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+    private final AtomicInteger entries = new AtomicInteger();
+
+    private BloomFilter(long bitCount, int hashCount) {
+        this.words = new AtomicLongArray((int) (bitCount / 64));
+        this.bitCount = bitCount;
+        this.hashCount = hashCount;
+    }
+
+    static BloomFilter create(long expectedEntries, double falsePositiveRate) {
+        long expected = Math.max(1, expectedEntries);
+        double bits = -expected * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        // Whole words, between one word and the largest array
+        long bitCount = Math.min(Math.max(64, (long) Math.ceil(bits / 64) * 64), (Integer.MAX_VALUE - 8) * 64L);
+        int hashCount = (int) Math.max(1, Math.round((double) bitCount / expected * Math.log(2)));
+        return new BloomFilter(bitCount, hashCount);
+    }
+
+    // Counts the key once if it set any bit, so adding the same key again doesn't grow the entry count
+    synchronized void add(long high, long low) {
+        boolean changed = false;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = index(high, low, i);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            if ((current & mask) == 0) {
+                words.set(word, current | mask);
+                changed = true;
+            }
+        }
+        if (changed) {
+            entries.incrementAndGet();
+        }
+    }
+
+    boolean mightContain(long high, long low) {
+        for (int i = 0; i < hashCount; i++) {
+            long bit = index(high, low, i);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int entries() {
+        return entries.get();
+    }
+
+    // For the entries added so far
+    double expectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) hashCount * entries.get() / bitCount), hashCount);
+    }
+
+    private long index(long high, long low, int i) {
+        return Math.floorMod(high + i * low, bitCount);
+    }
+}
@@ -5,23 +5,19 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.AllArgsConstructor;
-import org.example.backendclerkio.service.JwtUserDetailsService;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 
 @AllArgsConstructor
 @Component
 public class JwtFilter extends OncePerRequestFilter {
-    private final JwtUserDetailsService userDetailsService;
     private final JwtTokenManager jwtTokenManager;
 
     @Override
@@ -29,50 +25,40 @@ public class JwtFilter extends OncePerRequestFilter {
                                     HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
         String tokenHeader = request.getHeader("Authorization");
-        System.out.println("JwtFilter doFilterInternal call 3 request header: " + tokenHeader); // Improved logging
-        String username = null;
         String token = null;
+        VerifiedToken verified = null;
 
         if (tokenHeader != null && tokenHeader.startsWith("Bearer ")) {
             token = tokenHeader.substring(7);
-            try {
-                username = jwtTokenManager.getUsernameFromToken(token);
-            } catch (Exception e) {
+            // Parsed and checked once per request; tokens seen before come from JwtTokenManager's cache
+            verified = jwtTokenManager.verify(token).orElse(null);
+            if (verified == null) {
                 System.out.println("Unable to get JWT Token");
             }
-        } else {
-            System.out.println("Authorization header does not start with Bearer or is null");
         }
 
-        validateToken(request, username, token);
+        validateToken(request, verified, token);
         filterChain.doFilter(request, response); // Continue the filter chain
     }
 
-    private void validateToken(HttpServletRequest request, String username, String token) {
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-            if (jwtTokenManager.validateJwtToken(token, userDetails)) {
-                // Extract isAdmin flag from token
-                Boolean isAdmin = jwtTokenManager.getIsAdminFromToken(token);
+    // Builds the principal from the token alone: no user lookup
+    private void validateToken(HttpServletRequest request, VerifiedToken verified, String token) {
+        if (verified != null && SecurityContextHolder.getContext().getAuthentication() == null
+                && jwtTokenManager.validateJwtToken(token, verified)) {
+            AuthenticatedUser user = new AuthenticatedUser(verified.userId(), verified.username(), verified.isAdmin());
+            List<SimpleGrantedAuthority> authorities = verified.isAdmin()
+                    ? List.of(new SimpleGrantedAuthority("ROLE_ADMIN"))
+                    : List.of();
 
-                // Initialize authorities list
-                List<SimpleGrantedAuthority> authorities = (List<SimpleGrantedAuthority>) new ArrayList<>(userDetails.getAuthorities());
+            // Create Authentication token
+            UsernamePasswordAuthenticationToken authenticationToken =
+                    new UsernamePasswordAuthenticationToken(user, null, authorities);
 
-                // Assign ROLE_ADMIN if isAdmin is true
-                if (isAdmin != null && isAdmin) {
-                    authorities.add(new SimpleGrantedAuthority("ROLE_ADMIN"));
-                }
+            // Set authentication details
+            authenticationToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
 
-                // Create Authentication token
-                UsernamePasswordAuthenticationToken authenticationToken =
-                        new UsernamePasswordAuthenticationToken(userDetails, null, authorities);
-
-                // Set authentication details
-                authenticationToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-
-                // Set the authentication in the context
-                SecurityContextHolder.getContext().setAuthentication(authenticationToken);
-            }
+            // Set the authentication in the context
+            SecurityContextHolder.getContext().setAuthentication(authenticationToken);
         }
     }
 }
@@ -1,89 +1,158 @@
 package org.example.backendclerkio;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import org.example.backendclerkio.entity.User;
+import org.example.backendclerkio.service.UserTokenVersions;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Component
 public class JwtTokenManager {
 
     private final TokenBlacklist tokenBlacklist;
+    private final UserTokenVersions tokenVersions;
+    // Decoded once; the parser is thread safe and shared by all requests
+    private final Key signInKey;
+    private final JwtParser parser;
+    private final int cacheMaxSize;
+    // Verified claims by SHA-256 of the token, so a token is parsed and its signature checked once rather than on
+    // every request. Lookups take no lock. Once it holds jwt.claims-cache.max-size tokens, the expired ones are
+    // dropped, and if that isn't enough, a tenth of the others; one thread evicts while the rest carry on.
+    private final Map<String, VerifiedToken> verifiedTokens = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
 
-    public JwtTokenManager(TokenBlacklist tokenBlacklist) {
+    public JwtTokenManager(TokenBlacklist tokenBlacklist, UserTokenVersions tokenVersions,
+                           @Value("${secret}") String jwtSecret,
+                           @Value("${jwt.claims-cache.max-size:10000}") int cacheMaxSize) {
         this.tokenBlacklist = tokenBlacklist;
+        this.tokenVersions = tokenVersions;
+        // aha: jwtSecret is the server's private key. Which is used to generate new tokens. Length: Minimum 512 bits.
+        // Which corresponds to minimum 86 characters in cleartext.
+        this.signInKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtSecret));
+        this.parser = Jwts.parserBuilder().setSigningKey(signInKey).build();
+        this.cacheMaxSize = cacheMaxSize;
     }
 
     public static final long TOKEN_VALIDITY = 10 * 60 * 60 * 1000; // 10 timer
-    // aha: Below is the server's private key. Which is used to generate new tokens. Length: Minimum 512 bits.
-    // Which corresponds to minimum 86 characters in cleartext.
-    @Value("${secret}")
-    private String jwtSecret;
-    public String generateJwtToken(UserDetails userDetails, boolean isAdmin) {
-        System.out.println("TokenManager generateJwtToken(UserDetails) call: 7");
+
+    // The claims are all a request needs to know about the user, so authenticating it doesn't load the user
+    public String generateJwtToken(User user) {
         Map<String, Object> claims = new HashMap<>();
-        return Jwts.builder().setClaims(claims).setSubject(userDetails.getUsername())
-                .claim("isAdmin", isAdmin)
+        return Jwts.builder().setClaims(claims).setSubject(user.getUserEmail())
+                .claim("uid", user.getUserId())
+                .claim("isAdmin", user.isAdmin())
+                .claim("ver", user.getTokenVersion())
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + TOKEN_VALIDITY ))
-                .signWith(getSignInKey(),SignatureAlgorithm.HS512 )
+                .signWith(signInKey,SignatureAlgorithm.HS512 )
                 .compact();
                 //.signWith(SignatureAlgorithm.HS512, jwtSecret).compact(); // before Spring 3
     }
 
-    private Key getSignInKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(jwtSecret);
-        return Keys.hmacShaKeyFor(keyBytes);
-    }
-    public Boolean validateJwtToken(String token, UserDetails userDetails) {
-        System.out.println("Validating JWT token...");
-        String username = getUsernameFromToken(token);
+    // The token's claims if its signature is valid and it hasn't expired. Doesn't check revocation.
+    public Optional<VerifiedToken> verify(String token) {
+        long now = System.currentTimeMillis();
+        String key = hash(token);
+        VerifiedToken cached = verifiedTokens.get(key);
+        if (cached != null) {
+            if (!cached.isExpired(now)) {
+                return Optional.of(cached);
+            }
+            verifiedTokens.remove(key, cached);
+            return Optional.empty();
+        }
+
         Claims claims = getClaims(token);
+        // Tokens issued before they carried the user id are rejected; the user logs in again
+        if (claims == null || claims.getSubject() == null || claims.getExpiration() == null
+                || claims.get("uid", Integer.class) == null || claims.get("ver", Integer.class) == null) {
+            return Optional.empty();
+        }
+        VerifiedToken verified = new VerifiedToken(claims.get("uid", Integer.class), claims.getSubject(),
+                Boolean.TRUE.equals(claims.get("isAdmin", Boolean.class)), claims.get("ver", Integer.class),
+                claims.getExpiration().getTime());
+        if (verified.isExpired(now)) {
+            return Optional.empty();
+        }
+        cache(key, verified, now);
+        return Optional.of(verified);
+    }
 
-        Boolean isTokenExpired = claims.getExpiration().before(new Date());
-        Boolean isBlacklisted = tokenBlacklist.isTokenBlacklisted(token);
+    int cachedTokens() {
+        return verifiedTokens.size();
+    }
 
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired && !isBlacklisted);
+    private void cache(String key, VerifiedToken verified, long now) {
+        if (cacheMaxSize <= 0) {
+            return;
+        }
+        if (verifiedTokens.size() >= cacheMaxSize && evicting.compareAndSet(false, true)) {
+            try {
+                verifiedTokens.values().removeIf(token -> token.isExpired(now));
+                if (verifiedTokens.size() >= cacheMaxSize) {
+                    int toRemove = Math.max(1, cacheMaxSize / 10);
+                    Iterator<VerifiedToken> tokens = verifiedTokens.values().iterator();
+                    while (toRemove-- > 0 && tokens.hasNext()) {
+                        tokens.next();
+                        tokens.remove();
+                    }
+                }
+            } finally {
+                evicting.set(false);
+            }
+        }
+        verifiedTokens.put(key, verified);
     }
+
+    // Checked on every request, as a token can be revoked while its claims are cached
+    public boolean validateJwtToken(String token, VerifiedToken verified) {
+        return !verified.isExpired(System.currentTimeMillis())
+                && tokenVersions.isCurrent(verified.userId(), verified.tokenVersion())
+                && !tokenBlacklist.isTokenBlacklisted(token);
+    }
+
     public String getUsernameFromToken(String token) {
-        System.out.println("TokenManager getUsernameFromToken(String token) With token: Call: A");
-        //Claims claims = Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(token).getBody(); // before Spring 3
-        Claims claims = getClaims(token);
-        if(claims != null){
-            return claims.getSubject();
-        }else {
-            return "no user found";
-        }
+        return verify(token).map(VerifiedToken::username).orElse("no user found");
     }
+
     public Boolean getIsAdminFromToken(String token) {
-        return getClaims(token).get("isAdmin", Boolean.class);
+        return verify(token).map(VerifiedToken::isAdmin).orElse(null);
     }
 
     private Claims getClaims(String token){
         try{
-            Claims claims = Jwts
-                    .parserBuilder()
-                    .setSigningKey(getSignInKey())
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
-            return claims;
+            return parser.parseClaimsJws(token).getBody();
         }catch (Exception e){
             System.out.println("could not parse JWT token for claims");
         }
         return null;
     }
 
+    // Kept until the token would have expired; a token that doesn't verify can't be used anyway
     public void blacklistToken(String token) {
-        tokenBlacklist.addToken(token);
+        verify(token).ifPresent(verified -> tokenBlacklist.addToken(token, verified.expiresAt()));
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,100 @@
+package org.example.backendclerkio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+// This instance's local copy of the revoked tokens it knows of, one "tokenHash,expiresAt" line each. The
+// revoked_token table is dropped whenever ddl-auto recreates the schema; this file isn't, and TokenBlacklist puts
+// what the table lost back into it on startup and at every rebuild.
+final class RevocationLog implements Closeable {
+
+    private final Path path;
+    private FileChannel channel;
+
+    RevocationLog(Path path) throws IOException {
+        this.path = path;
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.channel = open();
+    }
+
+    synchronized void append(String tokenHash, long expiresAt) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((tokenHash + "," + expiresAt + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    synchronized void force() throws IOException {
+        channel.force(false);
+    }
+
+    // Adds the file's live entries to entries and rewrites the file with all of them, so a crash leaves either the
+    // old or the new file. Returns the entries that were only in the file. Appends wait until it is done.
+    synchronized Map<String, Long> merge(Map<String, Long> entries, long now) throws IOException {
+        Map<String, Long> onlyInFile = new HashMap<>();
+        read(now).forEach((tokenHash, expiresAt) -> {
+            if (!entries.containsKey(tokenHash)) {
+                onlyInFile.put(tokenHash, expiresAt);
+                entries.put(tokenHash, expiresAt);
+            }
+        });
+
+        channel.close();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        StringBuilder lines = new StringBuilder(entries.size() * 40);
+        entries.forEach((tokenHash, expiresAt) -> lines.append(tokenHash).append(',').append(expiresAt).append('\n'));
+        try (FileChannel tempChannel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                tempChannel.write(buffer);
+            }
+            tempChannel.force(false);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = open();
+        return onlyInFile;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private Map<String, Long> read(long now) throws IOException {
+        Map<String, Long> live = new HashMap<>();
+        String content = Files.readString(path, StandardCharsets.UTF_8);
+        // A line without its newline was cut short by a crash before the logout was answered
+        int end = content.lastIndexOf('\n');
+        for (String line : content.substring(0, end + 1).split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            try {
+                long expiresAt = Long.parseLong(fields[1]);
+                if (expiresAt > now) {
+                    live.merge(fields[0], expiresAt, Math::max);
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Skipping unreadable revocation log line: " + line);
+            }
+        }
+        return live;
+    }
+
+    private FileChannel open() throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+}
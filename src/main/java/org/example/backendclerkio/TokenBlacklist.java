@@ -1,19 +1,338 @@
 package org.example.backendclerkio;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.example.backendclerkio.dto.RevocationStatsDTO;
+import org.example.backendclerkio.entity.RevokedToken;
+import org.example.backendclerkio.repository.RevokedTokenRepository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.util.Set;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+// Logged out tokens, until they expire. The revoked_token table is shared by all instances and is what they check;
+// each instance keeps a Bloom filter of the revoked tokens, so the usual lookup, for a token that isn't revoked,
+// never leaves memory. Only tokens the filter lets through are looked up in the table.
+// The filter is refreshed every token.blacklist.refresh-interval-ms from the rows revoked since the last refresh,
+// reaching token.blacklist.refresh-overlap-ms further back so rows committed late or by an instance with a skewed
+// clock are still seen; adding a token twice is harmless. Bloom filters can't forget, so the filter is rebuilt
+// from the live rows every token.blacklist.rebuild-interval-minutes, or sooner once it holds more entries than it
+// was sized for, and the expired rows are deleted then.
+// The table doesn't survive ddl-auto recreating the schema, so every revocation this instance makes or refreshes is
+// also appended to the local file token.blacklist.path; a logout returns once its line is on disk. On startup and at
+// every rebuild the live lines the table is missing are inserted again, and the file is rewritten without the
+// expired ones. A restarted instance therefore puts back everything it knew of before the restart.
+// A token is kept as the first 16 bytes of its SHA-256. Tokens known to be revoked are kept in memory too, grouped
+// in one-minute buckets by expiry so eviction drops whole buckets instead of scanning every token.
 @Component
 public class TokenBlacklist {
-    private final Set<String> blacklistedTokens = ConcurrentHashMap.newKeySet();
+    private static final long BUCKET_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    // Tokens the filter let through that aren't revoked, so a request repeating one doesn't query every time
+    private static final int MAX_NOT_REVOKED = 10_000;
 
-    public void addToken(String token) {
-        blacklistedTokens.add(token);
+    private record Key(long high, long low) {}
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final long refreshIntervalMillis;
+    private final long refreshOverlapMillis;
+    private final long rebuildIntervalMillis;
+    private final int expectedRevocations;
+    private final double falsePositiveRate;
+    private final Path logPath;
+
+    private volatile BloomFilter filter;
+    private long filterCapacity;
+    private final Map<Key, Long> revoked = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, Set<Key>> buckets = new ConcurrentSkipListMap<>();
+    private final Set<Key> notRevoked = ConcurrentHashMap.newKeySet();
+    // Bumped whenever notRevoked is cleared, so a lookup that raced with a revocation doesn't put the token back
+    private final AtomicLong notRevokedGeneration = new AtomicLong();
+    private long lastRefreshAt;
+    private long lastRebuildAt;
+    private volatile RevocationLog log;
+    // Hashes put in the log lately, with when they were revoked, so rows a refresh reads again aren't logged again
+    private final Map<String, Long> logged = new ConcurrentHashMap<>();
+    private ScheduledExecutorService refresher;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder filterNegatives = new LongAdder();
+    private final LongAdder storeLookups = new LongAdder();
+    private final LongAdder revokedHits = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    public TokenBlacklist(RevokedTokenRepository revokedTokenRepository,
+                          @Value("${token.blacklist.refresh-interval-ms:1000}") long refreshIntervalMillis,
+                          @Value("${token.blacklist.refresh-overlap-ms:10000}") long refreshOverlapMillis,
+                          @Value("${token.blacklist.rebuild-interval-minutes:60}") long rebuildIntervalMinutes,
+                          @Value("${token.blacklist.expected-revocations:100000}") int expectedRevocations,
+                          @Value("${token.blacklist.false-positive-rate:0.01}") double falsePositiveRate,
+                          @Value("${token.blacklist.path:data/token-blacklist.log}") String logPath) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.refreshOverlapMillis = refreshOverlapMillis;
+        this.rebuildIntervalMillis = TimeUnit.MINUTES.toMillis(rebuildIntervalMinutes);
+        this.expectedRevocations = expectedRevocations;
+        this.falsePositiveRate = falsePositiveRate;
+        this.logPath = Path.of(logPath);
+        this.filterCapacity = expectedRevocations;
+        this.filter = BloomFilter.create(filterCapacity, falsePositiveRate);
+    }
+
+    // Built before the first request, so a logged out token is never accepted again after a restart
+    @PostConstruct
+    public synchronized void start() throws IOException {
+        if (refresher != null) {
+            return;
+        }
+        log = new RevocationLog(logPath);
+        rebuild();
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "token-blacklist-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                long now = System.currentTimeMillis();
+                if (now - lastRebuildAt >= rebuildIntervalMillis) {
+                    rebuild();
+                } else {
+                    refresh();
+                }
+                evictExpired(now);
+            } catch (RuntimeException e) {
+                System.err.println("Token blacklist refresh failed: " + e.getMessage());
+            }
+        }, refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public synchronized void stop() throws IOException {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+
+    // Returns once the token is in the local log on disk and the row is committed. If the row can't be written,
+    // the next rebuild inserts it from the log. A token that has already expired isn't kept.
+    public void addToken(String token, long expiresAt) {
+        long now = System.currentTimeMillis();
+        if (expiresAt <= now) {
+            return;
+        }
+        Key key = keyOf(token);
+        String hash = encode(key);
+        RevocationLog current = log;
+        if (current != null) {
+            try {
+                current.append(hash, expiresAt);
+                current.force();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not persist the logout", e);
+            }
+            logged.put(hash, now);
+        }
+        revokedTokenRepository.save(new RevokedToken(hash, expiresAt, now));
+        // Locked against rebuild: the row is either read by it or the token goes into the new filter
+        synchronized (this) {
+            remember(key, expiresAt);
+            filter.add(key.high(), key.low());
+            notRevoked.remove(key);
+        }
     }
 
     public boolean isTokenBlacklisted(String token) {
-        return blacklistedTokens.contains(token);
+        BloomFilter current = filter;
+        // Most of the time nobody is logged out, which saves hashing the token on every request
+        if (current.entries() == 0) {
+            return false;
+        }
+        lookups.increment();
+        Key key = keyOf(token);
+        if (!current.mightContain(key.high(), key.low())) {
+            filterNegatives.increment();
+            return false;
+        }
+        if (revoked.containsKey(key)) {
+            revokedHits.increment();
+            return true;
+        }
+        if (notRevoked.contains(key)) {
+            falsePositives.increment();
+            return false;
+        }
+
+        storeLookups.increment();
+        if (notRevoked.size() >= MAX_NOT_REVOKED) {
+            clearNotRevoked();
+        }
+        long generation = notRevokedGeneration.get();
+        Long expiresAt = revokedTokenRepository.findExpiry(encode(key), System.currentTimeMillis());
+        if (expiresAt != null) {
+            revokedHits.increment();
+            remember(key, expiresAt);
+            return true;
+        }
+        falsePositives.increment();
+        notRevoked.add(key);
+        if (notRevokedGeneration.get() != generation) {
+            notRevoked.remove(key);
+        }
+        return false;
+    }
+
+    public RevocationStatsDTO stats() {
+        BloomFilter current = filter;
+        long negatives = filterNegatives.sum();
+        long falsePositiveCount = falsePositives.sum();
+        long notRevokedLookups = negatives + falsePositiveCount;
+        return new RevocationStatsDTO(lookups.sum(), negatives, storeLookups.sum(), revokedHits.sum(),
+                falsePositiveCount, notRevokedLookups == 0 ? 0 : (double) falsePositiveCount / notRevokedLookups,
+                current.entries(), current.expectedFalsePositiveRate());
+    }
+
+    // Adds the tokens revoked by any instance since the last refresh, and logs the ones this instance hasn't yet
+    synchronized void refresh() {
+        long now = System.currentTimeMillis();
+        List<RevokedToken> rows = revokedTokenRepository.findRevokedSince(lastRefreshAt - refreshOverlapMillis, now);
+        BloomFilter current = filter;
+        boolean appended = false;
+        for (RevokedToken row : rows) {
+            Key key = decode(row.getTokenHash());
+            current.add(key.high(), key.low());
+            if (log != null && logged.putIfAbsent(row.getTokenHash(), row.getRevokedAt()) == null) {
+                appendQuietly(row.getTokenHash(), row.getExpiresAt());
+                appended = true;
+            }
+        }
+        if (appended) {
+            forceQuietly();
+        }
+        if (!rows.isEmpty()) {
+            // One of them may be a token that was let through as not revoked
+            clearNotRevoked();
+        }
+        lastRefreshAt = now;
+        // Rows revoked before this are outside the window the next refresh reads
+        logged.values().removeIf(revokedAt -> revokedAt < now - refreshOverlapMillis);
+        if (current.entries() > filterCapacity) {
+            rebuild();
+        }
+    }
+
+    // Puts the log's revocations the table lost back into it, then builds a new filter from the live ones, sized for
+    // twice as many, and swaps it in
+    synchronized void rebuild() {
+        long now = System.currentTimeMillis();
+        revokedTokenRepository.deleteExpired(now);
+        Map<String, Long> live = new HashMap<>();
+        for (RevokedToken row : revokedTokenRepository.findRevokedSince(0, now)) {
+            live.merge(row.getTokenHash(), row.getExpiresAt(), Math::max);
+        }
+        if (log != null) {
+            Map<String, Long> restored;
+            try {
+                restored = log.merge(live, now);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read the revocation log " + logPath, e);
+            }
+            if (!restored.isEmpty()) {
+                List<RevokedToken> rows = new ArrayList<>();
+                restored.forEach((hash, expiresAt) -> rows.add(new RevokedToken(hash, expiresAt, now)));
+                revokedTokenRepository.saveAll(rows);
+                System.out.println("Restored " + rows.size() + " revoked tokens from " + logPath + " to the revoked_token table.");
+            }
+        }
+        filterCapacity = Math.max(expectedRevocations, live.size() * 2);
+        BloomFilter rebuilt = BloomFilter.create(filterCapacity, falsePositiveRate);
+        for (String hash : live.keySet()) {
+            Key key = decode(hash);
+            rebuilt.add(key.high(), key.low());
+        }
+        filter = rebuilt;
+        clearNotRevoked();
+        lastRefreshAt = now;
+        lastRebuildAt = now;
+    }
+
+    // Drops the buckets of known revoked tokens that have fully expired
+    synchronized void evictExpired(long now) {
+        Map<Long, Set<Key>> expired = buckets.headMap(bucketOf(now));
+        for (Set<Key> bucket : expired.values()) {
+            bucket.forEach(revoked::remove);
+        }
+        expired.clear();
+    }
+
+    private void appendQuietly(String hash, long expiresAt) {
+        try {
+            log.append(hash, expiresAt);
+        } catch (IOException e) {
+            // Still in the table; the next rebuild writes the whole log again
+            System.err.println("Could not log revoked token: " + e.getMessage());
+        }
+    }
+
+    private void forceQuietly() {
+        try {
+            log.force();
+        } catch (IOException e) {
+            System.err.println("Could not force the revocation log: " + e.getMessage());
+        }
+    }
+
+    private void clearNotRevoked() {
+        notRevokedGeneration.incrementAndGet();
+        notRevoked.clear();
+    }
+
+    private synchronized void remember(Key key, long expiresAt) {
+        if (revoked.putIfAbsent(key, expiresAt) == null) {
+            buckets.computeIfAbsent(bucketOf(expiresAt), bucket -> new HashSet<>()).add(key);
+        }
+    }
+
+    // A token expiring in the current minute lands in a bucket that is only dropped once that minute is over
+    private static long bucketOf(long expiresAt) {
+        return expiresAt / BUCKET_MILLIS;
+    }
+
+    private static String encode(Key key) {
+        byte[] hash = ByteBuffer.allocate(16).putLong(key.high()).putLong(key.low()).array();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+    }
+
+    private static Key decode(String hash) {
+        ByteBuffer bytes = ByteBuffer.wrap(Base64.getUrlDecoder().decode(hash));
+        return new Key(bytes.getLong(), bytes.getLong());
+    }
+
+    private static Key keyOf(String token) {
+        try {
+            ByteBuffer hash = ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)));
+            return new Key(hash.getLong(), hash.getLong());
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,9 @@
+package org.example.backendclerkio;
+
+// Claims of a JWT whose signature and expiry JwtTokenManager has checked
+public record VerifiedToken(int userId, String username, boolean isAdmin, int tokenVersion, long expiresAt) {
+
+    public boolean isExpired(long now) {
+        return expiresAt <= now;
+    }
+}
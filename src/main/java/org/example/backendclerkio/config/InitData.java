@@ -7,6 +7,7 @@ import org.example.backendclerkio.dto.ProductsRequestDTO;
 import org.example.backendclerkio.dto.UserRequestDTO;
 import org.example.backendclerkio.entity.*;
 import org.example.backendclerkio.repository.*;
+import org.example.backendclerkio.service.CatalogNameResolver;
 import org.example.backendclerkio.service.OrderService;
 import org.example.backendclerkio.service.ProductService;
 import org.example.backendclerkio.service.UserService;
@@ -14,6 +15,7 @@ import org.springframework.context.annotation.Configuration;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -21,8 +23,7 @@ import java.util.stream.Collectors;
 public class InitData {
 
     private final ProductRepository productRepository;
-    private final CategoryRepository categoryRepository;
-    private final TagRepository tagRepository;
+    private final CatalogNameResolver nameResolver;
     private final ProductService productService;
     private final UserService userService;
     private final UserRepository userRepository;
@@ -31,10 +32,9 @@ public class InitData {
     private final OrderProductRepository orderProductRepository;
 
 
-    public InitData(ProductRepository productRepository, CategoryRepository categoryRepository, TagRepository tagRepository, UserService userService, UserRepository userRepository, ProductService productService, OrderService orderService,OrderRepository orderRepository, OrderProductRepository orderProductRepository) {
+    public InitData(ProductRepository productRepository, CatalogNameResolver nameResolver, UserService userService, UserRepository userRepository, ProductService productService, OrderService orderService,OrderRepository orderRepository, OrderProductRepository orderProductRepository) {
         this.productRepository = productRepository;
-        this.categoryRepository = categoryRepository;
-        this.tagRepository = tagRepository;
+        this.nameResolver = nameResolver;
         this.userService = userService;
         this.userRepository = userRepository;
         this.productService = productService;
@@ -61,8 +61,16 @@ public class InitData {
            ProductsRequestDTO response = productService.getAllProducts().block();
 
                 if (response != null && response.products() != null) {
+                    // Resolve every category and tag name up front instead of once per product
+                    Map<String, Category> categories = nameResolver.resolveCategories(response.products().stream()
+                            .map(ProductRequestDTO::category)
+                            .collect(Collectors.toSet()));
+                    Map<String, Tag> tags = nameResolver.resolveTagsByName(response.products().stream()
+                            .flatMap(productRequestDTO -> productRequestDTO.tags().stream())
+                            .collect(Collectors.toSet()));
+
                     List<Product> products = response.products().stream()
-                            .map(this::mapToEntity)
+                            .map(productRequestDTO -> mapToEntity(productRequestDTO, categories, tags))
                             .collect(Collectors.toList());
 
                     productRepository.saveAll(products);
@@ -97,17 +105,12 @@ public class InitData {
         productRepository.save(cola);
     }
 
-    private Product mapToEntity(ProductRequestDTO productRequestDTO) {
-        String categoryName = productRequestDTO.category();
-        Category category = categoryRepository.findByCategoryName(categoryName)
-                .orElseGet(() -> categoryRepository.save(new Category(categoryName)));
+    private Product mapToEntity(ProductRequestDTO productRequestDTO, Map<String, Category> categories, Map<String, Tag> tagsByName) {
+        Category category = categories.get(productRequestDTO.category());
 
         Set<Tag> tags = new HashSet<>();
         for (String tagName : productRequestDTO.tags()) {
-            Tag tag = tagRepository.findByTagName(tagName)
-                    .orElseGet(() -> tagRepository.save(new Tag(tagName)));
-
-            tags.add(tag);
+            tags.add(tagsByName.get(tagName));
         }
 
         Product product = new Product(
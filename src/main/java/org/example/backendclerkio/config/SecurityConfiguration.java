@@ -6,8 +6,6 @@ import org.example.backendclerkio.JwtFilter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
@@ -35,11 +33,14 @@ public class SecurityConfiguration implements WebMvcConfigurer {
 
         http.cors().and().csrf().disable()
                 .authorizeHttpRequests()
+                // Before the public rules, which would otherwise match it as /api/v1/products/{id}
+                .requestMatchers(HttpMethod.POST, "/api/v1/products/import").hasRole("ADMIN")
                 // Public endpoints
                 .requestMatchers(
                         "/api/v1/users/register",
                         "/api/v1/users/login",
                         "/api/v1/products",
+                        "/api/v1/products/scroll",
                         "/api/v1/products/{id}",
                         "/api/v1/categories/{categoryID}",
                         "/api/v1/category/categories"
@@ -51,9 +52,12 @@ public class SecurityConfiguration implements WebMvcConfigurer {
                 // Endpoints accessible to authenticated users
                 .requestMatchers(
                         "/api/v1/order/cart",
+                        "/api/v1/order/cart/batch",
                         "/api/v1/order/checkout",
+                        "/api/v1/order/checkout/**",
                         "/api/v1/order/validatePayment",
                         "/api/v1/order/myOrders",
+                        "/api/v1/order/myOrders/**",
                         "/api/v1/users/*/user"
 
                 ).authenticated()
@@ -62,6 +66,9 @@ public class SecurityConfiguration implements WebMvcConfigurer {
                 .requestMatchers(HttpMethod.POST, "/api/v1/products/create").hasRole("ADMIN")
                 .requestMatchers(HttpMethod.PUT, "/api/v1/products/*/update").hasRole("ADMIN")
                 .requestMatchers(HttpMethod.DELETE, "/api/v1/products/*/delete").hasRole("ADMIN")
+                .requestMatchers(HttpMethod.GET, "/api/v1/products/cache/stats").hasRole("ADMIN")
+                .requestMatchers(HttpMethod.GET, "/api/v1/users/token-blacklist/stats").hasRole("ADMIN")
+                .requestMatchers(HttpMethod.GET, "/api/v1/users/login/stats").hasRole("ADMIN")
                 .requestMatchers(HttpMethod.PUT, "/api/v1/users/{userId}/update").hasRole("ADMIN")
                 .requestMatchers(HttpMethod.DELETE, "/api/v1/users/{userId}/delete").hasRole("ADMIN")
                 .requestMatchers(HttpMethod.PUT, "api/v1/users/*/setadmin").hasRole("ADMIN")
@@ -83,12 +90,6 @@ public class SecurityConfiguration implements WebMvcConfigurer {
         return http.build();
     }
 
-    @Bean
-    public AuthenticationManager authenticationManager(AuthenticationConfiguration authenticationConfiguration)
-            throws Exception {
-        return authenticationConfiguration.getAuthenticationManager();
-    }
-
     @Override
     public void addCorsMappings(CorsRegistry registry) {
         System.out.println("addCorsMappings called");
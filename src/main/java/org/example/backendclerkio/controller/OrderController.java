@@ -2,19 +2,16 @@ package org.example.backendclerkio.controller;
 
 import org.example.backendclerkio.dto.*;
 import org.example.backendclerkio.entity.Order;
-import org.example.backendclerkio.entity.OrderProduct;
-import org.example.backendclerkio.entity.User;
+import org.example.backendclerkio.service.CheckoutQueue;
 import org.example.backendclerkio.service.EmailService;
 import org.example.backendclerkio.service.OrderService;
 import org.example.backendclerkio.service.UserService;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.security.Principal;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
 import java.util.List;
 import java.util.Optional;
 
@@ -26,34 +23,60 @@ public class OrderController {
     private final OrderService orderService;
     private final UserService userService;
     private final EmailService emailService;
+    private final CheckoutQueue checkoutQueue;
 
-    public OrderController(OrderService orderService, UserService userService, EmailService emailService) {
+    public OrderController(OrderService orderService, UserService userService, EmailService emailService,
+                           CheckoutQueue checkoutQueue) {
         this.orderService = orderService;
         this.userService = userService;
         this.emailService = emailService;
+        this.checkoutQueue = checkoutQueue;
     }
 
-    private UserResponseDTO getCurrentUserDTO(Principal principal) {
-        UserResponseDTO userResponseDTO = userService.getUserResponseDTOFromPrincipal(principal);
-        return userResponseDTO;
+    // Taken from the token by JwtFilter, without a user lookup
+    private int getCurrentUserId(Principal principal) {
+        return userService.getUserIdFromPrincipal(principal);
     }
 
     @GetMapping("/myOrders")
     public ResponseEntity<?> getAllOrdersForUser(Principal principal) {
         try {
-            UserResponseDTO userResponseDTO = getCurrentUserDTO(principal);
-            List<Order> allOrders = orderService.findOrdersByUserIdAndPaidTrue(userResponseDTO.userId());
+            int userId = getCurrentUserId(principal);
+            List<OrderResponseDTO> allOrders = orderService.findOrderViewsByUserIdAndPaidTrue(userId);
             return ResponseEntity.ok(allOrders);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(new ApiResponse("Error: " + e.getMessage()));
         }
     }
 
+    // Keyset paginated order summaries, newest first; pass nextCursor from the previous page to continue
+    @GetMapping("/myOrders/history")
+    public ResponseEntity<?> getOrderHistory(Principal principal,
+                                             @RequestParam(required = false) String cursor,
+                                             @RequestParam(defaultValue = "20") int size) {
+        try {
+            int userId = getCurrentUserId(principal);
+            return ResponseEntity.ok(orderService.findOrderHistory(userId, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ApiResponse("Error: " + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/myOrders/{orderId}")
+    public ResponseEntity<?> getOrderDetail(Principal principal, @PathVariable int orderId) {
+        int userId = getCurrentUserId(principal);
+        Optional<OrderResponseDTO> order = orderService.findOrderViewForUser(orderId, userId);
+        if (order.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ApiResponse("Order not found."));
+        }
+        return ResponseEntity.ok(order.get());
+    }
+
     @PostMapping("/cart")
     public ResponseEntity<ApiResponse> addToCart(@RequestBody CartItemRequestDTO cartItemRequestDTO, Principal principal) {
         try {
-            UserResponseDTO userDTO = getCurrentUserDTO(principal);
-            orderService.addToCart(userDTO, cartItemRequestDTO);
+            int userId = getCurrentUserId(principal);
+            orderService.addToCart(userId, cartItemRequestDTO);
             return ResponseEntity.ok(new ApiResponse("Product added to cart successfully."));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(new ApiResponse("Error: " + e.getMessage()));
@@ -63,22 +86,33 @@ public class OrderController {
     @GetMapping("/cart")
     public ResponseEntity<List<CartItemResponseDTO>> getAllProductsInCart(Principal principal) {
         try {
-            UserResponseDTO userDTO = getCurrentUserDTO(principal);
-            List<CartItemResponseDTO> cartItems = orderService.getAllProductsInCart(userDTO);
+            int userId = getCurrentUserId(principal);
+            List<CartItemResponseDTO> cartItems = orderService.getAllProductsInCart(userId);
             return ResponseEntity.ok(cartItems);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(null);
         }
     }
 
+    // Applies several add/set/remove operations at once and returns the resulting cart, e.g. to restore a cart
+    @PostMapping("/cart/batch")
+    public ResponseEntity<?> updateCart(@RequestBody List<CartOperationDTO> operations, Principal principal) {
+        try {
+            int userId = getCurrentUserId(principal);
+            return ResponseEntity.ok(orderService.updateCart(userId, operations));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(new ApiResponse("Error: " + e.getMessage()));
+        }
+    }
+
     @DeleteMapping("/delete")
     public ResponseEntity<?> deleteProductFromCart(Principal principal, @RequestBody CartItemResponseDTO cartItemResponseDTO) {
         try {
             // Delegate the user retrieval to the service
-            UserResponseDTO userDTO = getCurrentUserDTO(principal);
+            int userId = getCurrentUserId(principal);
 
             // Call the service to remove the product from the cart
-            orderService.removeItemFromCart(userDTO, cartItemResponseDTO);
+            orderService.removeItemFromCart(userId, cartItemResponseDTO);
 
             return ResponseEntity.ok("Product removed from cart successfully");
         } catch (Exception e) {
@@ -88,31 +122,55 @@ public class OrderController {
 
     @PostMapping("/checkout/{orderId}")
     public ResponseEntity<?> checkoutOrder(@PathVariable int orderId) {
-        Optional optionalOrder = orderService.findOrderById(orderId);
+        Optional optionalOrder = orderService.findOrderForCheckout(orderId);
         if (optionalOrder.isEmpty()) {
             return ResponseEntity.badRequest().body(new ApiResponse("Order not found."));
         }
         Order order = (Order) optionalOrder.get();
         try {
-            if (order == null || order.getUser() == null || order.getOrderProducts().isEmpty()) {
+            // An order without lines is rejected by checkout
+            if (order == null || order.getUser() == null) {
                 return ResponseEntity.badRequest().body("Invalid order details");
             }
 
+            // The confirmation email is queued by checkout and sent in the background
             orderService.checkout(order);
-
-            emailService.sendConfirmationEmail(
-                    order.getUser().getUserEmail(),
-                    "Order Confirmation for order: " + order.getId(),
-                    buildEmailBody(order)
-            );
             return ResponseEntity.ok("Order successfully checked out!");
 
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body("An error occurred while checking out the order: " + e.getMessage());
         }
     }
 
+    // Queues the checkout and answers once it is journaled; poll the Location for the outcome
+    @PostMapping("/checkout/{orderId}/async")
+    public ResponseEntity<?> checkoutOrderAsync(Principal principal, @PathVariable int orderId) {
+        try {
+            CheckoutStatusDTO status = checkoutQueue.submit(orderId, getCurrentUserId(principal));
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .header(HttpHeaders.LOCATION, "/api/v1/order/checkout/" + orderId + "/status")
+                    .body(status);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ApiResponse(e.getMessage()));
+        } catch (CheckoutQueue.CheckoutUnavailableException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .body(new ApiResponse(e.getMessage()));
+        }
+    }
+
+    @GetMapping("/checkout/{orderId}/status")
+    public ResponseEntity<?> getCheckoutStatus(Principal principal, @PathVariable int orderId) {
+        Optional<CheckoutStatusDTO> status = checkoutQueue.status(orderId, getCurrentUserId(principal));
+        if (status.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ApiResponse("No checkout found for the order."));
+        }
+        return ResponseEntity.ok(status.get());
+    }
+
     @GetMapping("/test-email")
     public ResponseEntity<String> testEmail() {
         try {
@@ -142,71 +200,14 @@ public class OrderController {
 
 
 
-    private String buildEmailBody(Order order) {
-        Optional<User> optionalUser = userService.findUserById(order.getUser().getUserId());
-        if (optionalUser.isEmpty()) {
-            throw new RuntimeException("No user found for email");
-        }
-        User user = optionalUser.get();
-        LocalDateTime orderDateTime = LocalDateTime.ofInstant(
-                Instant.ofEpochMilli(order.getOrderDate()), // Convert milliseconds to Instant
-                ZoneOffset.ofHours(1)                      // Specify GMT+1
-        );
-
-
-        StringBuilder stringBuilder = new StringBuilder();
-
-        stringBuilder.append("<h1>Hi ").append(user.getFirstName()).append(" ").append(user.getLastName()).append("</h1>")
-                .append("<h3>Your order was confirmed at ").append(orderDateTime).append("</h3>")
-                .append("<h4>Items you have ordered are listed below:</h4>")
-                .append("<table style='border-collapse: collapse; width: 100%;'>")
-                .append("<thead>")
-                .append("<tr>")
-                .append("<th style='border: 1px solid black; padding: 8px;'>Image</th>")
-                .append("<th style='border: 1px solid black; padding: 8px;'>Product</th>")
-                .append("<th style='border: 1px solid black; padding: 8px;'>Price</th>")
-                .append("<th style='border: 1px solid black; padding: 8px;'>Quantity</th>")
-                .append("<th style='border: 1px solid black; padding: 8px;'>Subtotal</th>")
-                .append("</tr>")
-                .append("</thead>")
-                .append("<tbody>");
-
-        double totalPrice = 0.0;
-
-        for (OrderProduct orderProduct : order.getOrderProducts()) {
-            double subtotal = orderProduct.getPriceAtTimeOfOrder() * orderProduct.getQuantity();
-            totalPrice += subtotal;
-
-            stringBuilder.append("<tr>")
-                    .append("<td style='border: 1px solid black; padding: 8px; text-align: center;'>")
-                    .append("<img src='").append(orderProduct.getProduct().getImages().get(0))
-                    .append("' style='width: auto; height: 50px;'>") // Maintain proportions
-                    .append("</td>")
-                    .append("<td style='border: 1px solid black; padding: 8px;'>").append(orderProduct.getProduct().getTitle()).append("</td>")
-                    .append("<td style='border: 1px solid black; padding: 8px;'>$")
-                    .append(String.format("%.2f", orderProduct.getPriceAtTimeOfOrder())).append("</td>")
-                    .append("<td style='border: 1px solid black; padding: 8px;'>").append(orderProduct.getQuantity()).append("</td>")
-                    .append("<td style='border: 1px solid black; padding: 8px;'>$")
-                    .append(String.format("%.2f", subtotal)).append("</td>")
-                    .append("</tr>");
-        }
-
-        stringBuilder.append("</tbody>")
-                .append("</table>")
-                .append("<h3 style='text-align: right;'>Total: $")
-                .append(String.format("%.2f", totalPrice)).append("</h3>");
-
-        return stringBuilder.toString();
-    }
-
     @GetMapping("/active")
     public ResponseEntity<?> getActiveOrder(Principal principal) {
         try {
             // Get the current user using Principal
-            UserResponseDTO userDTO = getCurrentUserDTO(principal);
+            int userId = getCurrentUserId(principal);
 
             // Find the active order for the user
-            Optional<Order> optionalOrder = orderService.findOrderByUserIdAndPaidFalse(userDTO.userId());
+            Optional<OrderResponseDTO> optionalOrder = orderService.findActiveOrderView(userId);
 
             if (optionalOrder.isPresent()) {
                 return ResponseEntity.ok(optionalOrder.get());
@@ -1,15 +1,26 @@
 package org.example.backendclerkio.controller;
 
 
+import org.example.backendclerkio.dto.CacheStatsDTO;
 import org.example.backendclerkio.dto.ProductRequestDTO;
+import org.example.backendclerkio.dto.ProductResponseDTO;
 import org.example.backendclerkio.entity.Product;
+import org.example.backendclerkio.service.CatalogVersion;
 import org.example.backendclerkio.service.CategoryService;
+import org.example.backendclerkio.service.ProductImportService;
 import org.example.backendclerkio.service.ProductService;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
 
 @RequestMapping("api/v1/products")
 @RestController
@@ -17,14 +28,28 @@ import org.springframework.web.bind.annotation.*;
 public class ProductController {
     private final ProductService productService;
     private final CategoryService categoryService;
+    private final CatalogVersion catalogVersion;
+    private final ProductImportService productImportService;
 
-    public ProductController(ProductService productService, CategoryService categoryService) {
+    public ProductController(ProductService productService, CategoryService categoryService, CatalogVersion catalogVersion, ProductImportService productImportService) {
         this.productService = productService;
         this.categoryService = categoryService;
+        this.catalogVersion = catalogVersion;
+        this.productImportService = productImportService;
+    }
+
+    // The ETag is read before the query runs, so a write racing the read can only make the tag older than the body, never newer
+    private ResponseEntity.BodyBuilder notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache());
+    }
+
+    private ResponseEntity.BodyBuilder current(String etag) {
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache());
     }
 
     @GetMapping("")
-    public Page<Product> findAll(
+    public ResponseEntity<Page<ProductResponseDTO>> findAll(
+            WebRequest webRequest,
             Pageable pageable,
             @RequestParam(required = false) String category,
             @RequestParam(required = false, defaultValue = "") String search,
@@ -32,13 +57,48 @@ public class ProductController {
             @RequestParam(defaultValue = "false") boolean outOfStock,
             @RequestParam(required = false) Integer minPrice,
             @RequestParam(required = false) Integer maxPrice) {
-        return productService.findProducts(category, search, lowStock, outOfStock, minPrice,maxPrice, pageable);
+        String etag = catalogVersion.etag();
+        if (webRequest.checkNotModified(etag)) {
+            return notModified(etag).build();
+        }
+        return current(etag).body(productService.findProducts(category, search, lowStock, outOfStock, minPrice,maxPrice, pageable));
+    }
+
+    @GetMapping("/scroll")
+    public ResponseEntity<?> scroll(
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false, defaultValue = "") String search,
+            @RequestParam(defaultValue = "false") boolean lowStock,
+            @RequestParam(defaultValue = "false") boolean outOfStock,
+            @RequestParam(required = false) Integer minPrice,
+            @RequestParam(required = false) Integer maxPrice,
+            @RequestParam(defaultValue = "id") String sort,
+            @RequestParam(defaultValue = "asc") String direction,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            return ResponseEntity.ok(productService.scrollProducts(category, search, lowStock, outOfStock, minPrice, maxPrice, sort, direction, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
     }
 
     @PostMapping("/create")
     public ResponseEntity<?> createProduct(@RequestBody ProductRequestDTO productRequestDTO) {
         Product createdProduct = productService.createProduct(productRequestDTO);
-        return ResponseEntity.status(HttpStatus.CREATED).body(createdProduct);
+        return ResponseEntity.status(HttpStatus.CREATED).body(productService.getProductView(createdProduct.getProductId()).orElse(null));
+    }
+
+    // Streams NDJSON (one ProductRequestDTO per line) or CSV with a header row
+    @PostMapping(value = "/import", consumes = {ProductImportService.NDJSON, ProductImportService.CSV})
+    public ResponseEntity<?> importProducts(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, InputStream body) {
+        try {
+            return ResponseEntity.ok(productImportService.importProducts(body, contentType));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Could not read the import: " + e.getMessage());
+        }
     }
 
     @DeleteMapping("/{id}/delete")
@@ -56,8 +116,8 @@ public class ProductController {
     @PutMapping("/{id}/update")
     public ResponseEntity<?> updateProduct(@PathVariable int id, @RequestBody ProductRequestDTO updatedProduct) {
         try {
-            Product updated = productService.updateProduct(id, updatedProduct);
-            return ResponseEntity.ok(updated);
+            productService.updateProduct(id, updatedProduct);
+            return ResponseEntity.ok(productService.getProductView(id).orElse(null));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
         } catch (Exception e) {
@@ -68,8 +128,8 @@ public class ProductController {
     @PutMapping("/{id}/update/stock")
     public ResponseEntity<?> updateStock(@PathVariable int id, @RequestBody int stock) {
         try {
-            Product updated = productService.updateStock(id, stock);
-            return ResponseEntity.ok(updated);
+            productService.updateStock(id, stock);
+            return ResponseEntity.ok(productService.getProductView(id).orElse(null));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
         } catch (Exception e) {
@@ -78,20 +138,33 @@ public class ProductController {
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<?> getProductById(@PathVariable int id) {
+    public ResponseEntity<?> getProductById(WebRequest webRequest, @PathVariable int id) {
         try {
-            Product product = productService.getProductById(id);
-            if (product == null) {
+            String etag = catalogVersion.etag();
+            if (webRequest.checkNotModified(etag)) {
+                return notModified(etag).build();
+            }
+            byte[] productJson = productService.getProductJsonById(id);
+            if (productJson == null) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body("product not found.");
             }
-            return ResponseEntity.ok(product);
+            return current(etag).contentType(MediaType.APPLICATION_JSON).body(productJson);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
         }
     }
 
+    @GetMapping("/cache/stats")
+    public ResponseEntity<CacheStatsDTO> getProductCacheStats() {
+        return ResponseEntity.ok(productService.getProductCacheStats());
+    }
+
     @GetMapping("/categories")
-    public ResponseEntity<?> getAllCategories() {
-        return ResponseEntity.ok(categoryService.findAllCategories());
+    public ResponseEntity<?> getAllCategories(WebRequest webRequest) {
+        String etag = catalogVersion.etag();
+        if (webRequest.checkNotModified(etag)) {
+            return notModified(etag).build();
+        }
+        return current(etag).body(categoryService.findAllCategories());
     }
 }
\ No newline at end of file
@@ -1,39 +1,39 @@
 package org.example.backendclerkio.controller;
 
 import org.example.backendclerkio.JwtTokenManager;
+import org.example.backendclerkio.TokenBlacklist;
 import org.example.backendclerkio.dto.JwtResponseModelDTO;
 import org.example.backendclerkio.dto.LoginRequestDTO;
+import org.example.backendclerkio.dto.LoginStatsDTO;
+import org.example.backendclerkio.dto.RevocationStatsDTO;
 import org.example.backendclerkio.dto.UserRequestDTO;
 import org.example.backendclerkio.dto.UserResponseDTO;
-import org.example.backendclerkio.service.JwtUserDetailsService;
+import org.example.backendclerkio.service.LoginService;
 import org.example.backendclerkio.service.UserService;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.BadCredentialsException;
-import org.springframework.security.authentication.DisabledException;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @RequestMapping("api/v1/users")
 @RestController
 public class UserController {
 
     private final UserService userService;
-    private final AuthenticationManager authenticationManager;
-    private final JwtUserDetailsService jwtUserDetailsService;
+    private final LoginService loginService;
     private final JwtTokenManager jwtTokenManager;
+    private final TokenBlacklist tokenBlacklist;
 
 
-    public UserController(UserService userService, AuthenticationManager authenticationManager, JwtUserDetailsService jwtUserDetailsService, JwtTokenManager jwtTokenManager) {
+    public UserController(UserService userService, LoginService loginService, JwtTokenManager jwtTokenManager, TokenBlacklist tokenBlacklist) {
         this.userService = userService;
-        this.authenticationManager = authenticationManager;
-        this.jwtUserDetailsService = jwtUserDetailsService;
+        this.loginService = loginService;
         this.jwtTokenManager = jwtTokenManager;
+        this.tokenBlacklist = tokenBlacklist;
     }
 
     @GetMapping("/{userId}")
@@ -77,22 +77,19 @@ public class UserController {
         return ResponseEntity.status(HttpStatus.CREATED).body(userResponseDTO);
     }
 
+    // The password is checked off the request thread; when too many logins are waiting the client is told to retry
     @PostMapping("/login")
-    public ResponseEntity<JwtResponseModelDTO> login(@RequestBody LoginRequestDTO loginRequestDTO) throws Exception {
+    public CompletableFuture<ResponseEntity<JwtResponseModelDTO>> login(@RequestBody LoginRequestDTO loginRequestDTO) {
         try {
-            authenticationManager.authenticate(
-                    new UsernamePasswordAuthenticationToken(loginRequestDTO.email(),
-                            loginRequestDTO.password())
-            );
-        } catch (DisabledException e) {
-            throw new Exception("USER_DISABLED", e);
-        } catch (BadCredentialsException e) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new JwtResponseModelDTO("Bad Credentials"));
+            return loginService.login(loginRequestDTO.email(), loginRequestDTO.password())
+                    .thenApply(token -> token
+                            .map(jwtToken -> ResponseEntity.ok(new JwtResponseModelDTO(jwtToken)))
+                            .orElseGet(() -> ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new JwtResponseModelDTO("Bad Credentials"))));
+        } catch (LoginService.LoginUnavailableException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(new JwtResponseModelDTO(e.getMessage())));
         }
-        boolean isAdmin = userService.findByUserEmail(loginRequestDTO.email()).get().isAdmin();
-        final UserDetails userDetails = jwtUserDetailsService.loadUserByUsername(loginRequestDTO.email());
-        final String jwtToken = jwtTokenManager.generateJwtToken(userDetails, isAdmin);
-        return ResponseEntity.ok(new JwtResponseModelDTO(jwtToken));
     }
 
     @PutMapping("/{userId}/update")
@@ -139,6 +136,18 @@ public class UserController {
         }
     }
 
+    // How often the revoked token filter answers alone, and how often it sends a token that isn't revoked to the table
+    @GetMapping("/token-blacklist/stats")
+    public ResponseEntity<RevocationStatsDTO> getTokenBlacklistStats() {
+        return ResponseEntity.ok(tokenBlacklist.stats());
+    }
+
+    // Time spent checking passwords against the whole login, queue wait included, and how many logins were turned away
+    @GetMapping("/login/stats")
+    public ResponseEntity<LoginStatsDTO> getLoginStats() {
+        return ResponseEntity.ok(loginService.stats());
+    }
+
     @PostMapping("/logout")
     public ResponseEntity<String> logout(@RequestHeader("Authorization") String token) {
         if (token != null && token.startsWith("Bearer ")) {
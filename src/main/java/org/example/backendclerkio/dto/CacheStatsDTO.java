@@ -0,0 +1,4 @@
+package org.example.backendclerkio.dto;
+
+public record CacheStatsDTO(long hits, long misses, long evictions, int size, int maxSize) {
+}
@@ -0,0 +1,11 @@
+package org.example.backendclerkio.dto;
+
+// One cart line with the product fields the cart view and checkout need, read in a single query
+public record CartLineDTO(int orderId,
+                          int productId,
+                          String productName,
+                          int quantity,
+                          double priceAtTimeOfOrder,
+                          double price,
+                          int stockCount,
+                          String imageUrl) {}
@@ -0,0 +1,8 @@
+package org.example.backendclerkio.dto;
+
+// One step of a batch cart update: ADD adds quantity to the line, SET replaces its quantity (0 removes it),
+// REMOVE removes the line. quantity is ignored for REMOVE.
+public record CartOperationDTO(Action action, int productId, int quantity) {
+
+    public enum Action { ADD, SET, REMOVE }
+}
@@ -0,0 +1,7 @@
+package org.example.backendclerkio.dto;
+
+// Progress of an asynchronous checkout; message is set when it failed
+public record CheckoutStatusDTO(int orderId, Status status, String message) {
+
+    public enum Status { QUEUED, PROCESSING, COMPLETED, FAILED }
+}
@@ -0,0 +1,6 @@
+package org.example.backendclerkio.dto;
+
+import java.util.List;
+
+public record CursorSliceDTO<T>(List<T> content, int size, boolean hasNext, String nextCursor) {
+}
@@ -0,0 +1,4 @@
+package org.example.backendclerkio.dto;
+
+public record ImportRowErrorDTO(long line, String message) {
+}
@@ -0,0 +1,9 @@
+package org.example.backendclerkio.dto;
+
+import java.util.List;
+
+// counts[i] is the number of samples up to upperBoundsMillis[i]; the last count is everything above the largest bound.
+// Percentiles are the upper bound of the bucket they fall in.
+public record LatencyHistogramDTO(long count, double meanMillis, long p50Millis, long p95Millis, long p99Millis,
+                                  List<Long> upperBoundsMillis, List<Long> counts) {
+}
@@ -0,0 +1,5 @@
+package org.example.backendclerkio.dto;
+
+public record LoginStatsDTO(LatencyHistogramDTO hashTime, LatencyHistogramDTO totalTime, long rejected,
+                            int queued, int queueCapacity, int hashingThreads) {
+}
@@ -0,0 +1,6 @@
+package org.example.backendclerkio.dto;
+
+public record OrderProductResponseDTO(int id,
+                                      ProductResponseDTO product,
+                                      double priceAtTimeOfOrder,
+                                      int quantity) {}
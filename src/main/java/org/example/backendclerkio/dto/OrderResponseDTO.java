@@ -0,0 +1,8 @@
+package org.example.backendclerkio.dto;
+
+import java.util.List;
+
+public record OrderResponseDTO(int id,
+                               long orderDate,
+                               boolean paid,
+                               List<OrderProductResponseDTO> orderProducts) {}
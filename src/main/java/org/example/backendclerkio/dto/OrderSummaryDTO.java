@@ -0,0 +1,7 @@
+package org.example.backendclerkio.dto;
+
+// One order in the order history; line count and total are computed by the query
+public record OrderSummaryDTO(int id,
+                              long orderDate,
+                              long lineCount,
+                              double total) {}
@@ -0,0 +1,6 @@
+package org.example.backendclerkio.dto;
+
+import java.util.List;
+
+public record ProductImportResultDTO(long rowsRead, long rowsImported, long rowsFailed, long elapsedMillis, double rowsPerSecond, List<ImportRowErrorDTO> errors) {
+}
@@ -0,0 +1,7 @@
+package org.example.backendclerkio.dto;
+
+// falsePositiveRate is the share of lookups for tokens that aren't revoked which the filter still let through
+public record RevocationStatsDTO(long lookups, long filterNegatives, long storeLookups, long revokedHits,
+                                 long falsePositives, double falsePositiveRate, int filterEntries,
+                                 double expectedFalsePositiveRate) {
+}
@@ -0,0 +1,28 @@
+package org.example.backendclerkio.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// A deleted user whose tokens may not have expired yet. The user row is gone, so this is what tells every
+// instance, and an instance after a restart, to reject them.
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "deleted_user", indexes = @Index(name = "idx_deleted_user_deleted_at", columnList = "deleted_at"))
+public class DeletedUser {
+
+    @Id
+    @Column(name = "user_id")
+    private int userId;
+
+    @Column(name = "deleted_at", nullable = false)
+    private long deletedAt;
+
+    public DeletedUser(int userId, long deletedAt) {
+        this.userId = userId;
+        this.deletedAt = deletedAt;
+    }
+}
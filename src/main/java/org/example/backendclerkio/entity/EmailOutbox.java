@@ -0,0 +1,56 @@
+package org.example.backendclerkio.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// An order confirmation email waiting to be sent. Rows are written in the checkout transaction, so an email exists
+// exactly for the orders that were checked out; EmailOutboxService sends them and rendering happens at send time.
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "email_outbox", indexes = @Index(name = "idx_email_outbox_status_next_attempt", columnList = "status, next_attempt_at"))
+public class EmailOutbox {
+
+    public enum Status { PENDING, SENT, FAILED }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "email_outbox_seq")
+    @SequenceGenerator(name = "email_outbox_seq", sequenceName = "email_outbox_seq", allocationSize = 50)
+    private int id;
+
+    @Column(name = "order_id", nullable = false)
+    private int orderId;
+
+    @Column(name = "recipient", nullable = false)
+    private String recipient;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private Status status = Status.PENDING;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    // Also the claim: a worker that picks the row up moves it into the future until it is done with it
+    @Column(name = "next_attempt_at", nullable = false)
+    private long nextAttemptAt;
+
+    @Column(name = "created_at", nullable = false)
+    private long createdAt;
+
+    @Column(name = "sent_at")
+    private Long sentAt;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    public EmailOutbox(int orderId, String recipient, long createdAt) {
+        this.orderId = orderId;
+        this.recipient = recipient;
+        this.createdAt = createdAt;
+        this.nextAttemptAt = createdAt;
+    }
+}
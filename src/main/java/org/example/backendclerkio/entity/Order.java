@@ -16,11 +16,16 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "order_")
+@Table(name = "order_", indexes = {
+        @Index(name = "idx_order_paid_date", columnList = "is_paid, order_date"),
+        // Order history (GET /api/v1/order/myOrders/history) seeks on the user's paid orders by date
+        @Index(name = "idx_order_user_paid_date", columnList = "user_id, is_paid, order_date")
+})
 public class Order {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_seq")
+    @SequenceGenerator(name = "order_seq", sequenceName = "order_seq", allocationSize = 50)
     @Column(name = "order_id", nullable = false)
     private int id;
 
@@ -15,7 +15,8 @@ import lombok.Setter;
 @Table(name = "order_product")
 public class OrderProduct {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_product_seq")
+    @SequenceGenerator(name = "order_product_seq", sequenceName = "order_product_seq", allocationSize = 50)
     private int id;
 
     @ManyToOne
@@ -7,6 +7,8 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.util.List;
 import java.util.Set;
@@ -16,10 +18,23 @@ import java.util.Set;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "product")
+// Updates only write the columns that changed. This only protects stock_count from being overwritten while the entity is
+// managed (ProductService.updateProduct is transactional); merging a detached copy compares against a fresh load and
+// would write its stale stock back.
+@DynamicUpdate
+@Table(name = "product", indexes = {
+        // Listing filters: category with a price range, and the low/out of stock filters
+        @Index(name = "idx_product_category_price", columnList = "category_id, product_discount_price"),
+        @Index(name = "idx_product_stock", columnList = "stock_count"),
+        // Keyset listing (GET /api/v1/products/scroll) seeks on (sort key, id)
+        @Index(name = "idx_product_price_id", columnList = "product_discount_price, product_id"),
+        @Index(name = "idx_product_name_id", columnList = "product_name, product_id")
+})
 public class Product {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled ids (50 per sequence call) let Hibernate batch inserts; on MySQL the sequence is emulated with a table
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_seq")
+    @SequenceGenerator(name = "product_seq", sequenceName = "product_seq", allocationSize = 50)
     @Column(name = "product_id")
     private int productId;
 
@@ -47,13 +62,18 @@ public class Product {
 
 
     // Change from single String to List<String>
+    // Batch size: a listing page initializes the images of up to 50 products with one query instead of one each
     @ElementCollection
+    @BatchSize(size = 50)
     @CollectionTable(name = "product_images", joinColumns = @JoinColumn(name = "product_id"))
     @Column(name = "image_url")
+    // Keeps the images in the order they were given; the first one is the product's thumbnail
+    @OrderColumn(name = "image_order")
     private List<String> images;
 
 
     @ManyToMany
+    @BatchSize(size = 50)
     @JoinTable(
             name = "product_tags",
             joinColumns = @JoinColumn(name = "product_id"),
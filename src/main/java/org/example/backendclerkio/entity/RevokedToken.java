@@ -0,0 +1,40 @@
+package org.example.backendclerkio.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// A logged out token, shared by all instances until it expires. Also the change log the instances refresh their
+// revocation filters from, by revoked_at.
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "revoked_token", indexes = {
+        @Index(name = "idx_revoked_token_hash", columnList = "token_hash"),
+        @Index(name = "idx_revoked_token_revoked_at", columnList = "revoked_at")
+})
+public class RevokedToken {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "revoked_token_seq")
+    @SequenceGenerator(name = "revoked_token_seq", sequenceName = "revoked_token_seq", allocationSize = 50)
+    private int id;
+
+    // First 16 bytes of the token's SHA-256, base64url without padding
+    @Column(name = "token_hash", nullable = false, length = 22)
+    private String tokenHash;
+
+    @Column(name = "expires_at", nullable = false)
+    private long expiresAt;
+
+    @Column(name = "revoked_at", nullable = false)
+    private long revokedAt;
+
+    public RevokedToken(String tokenHash, long expiresAt, long revokedAt) {
+        this.tokenHash = tokenHash;
+        this.expiresAt = expiresAt;
+        this.revokedAt = revokedAt;
+    }
+}
@@ -0,0 +1,41 @@
+package org.example.backendclerkio.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// Stock held for a cart line until expiresAt. StockReservationService keeps the live holds in memory;
+// these rows are only read back after a restart.
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "stock_reservation",
+        uniqueConstraints = @UniqueConstraint(name = "uk_stock_reservation_order_product", columnNames = {"order_id", "product_id"}),
+        indexes = @Index(name = "idx_stock_reservation_expires_at", columnList = "expires_at"))
+public class StockReservation {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "stock_reservation_seq")
+    @SequenceGenerator(name = "stock_reservation_seq", sequenceName = "stock_reservation_seq", allocationSize = 50)
+    private int id;
+
+    @Column(name = "order_id", nullable = false)
+    private int orderId;
+
+    @Column(name = "product_id", nullable = false)
+    private int productId;
+
+    @Column(name = "quantity", nullable = false)
+    private int quantity;
+
+    @Column(name = "expires_at", nullable = false)
+    private long expiresAt;
+
+    public StockReservation(int orderId, int productId, int quantity, long expiresAt) {
+        this.orderId = orderId;
+        this.productId = productId;
+        this.quantity = quantity;
+        this.expiresAt = expiresAt;
+    }
+}
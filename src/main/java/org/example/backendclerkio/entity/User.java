@@ -11,11 +11,12 @@ import lombok.Setter;
 @Setter
 @NoArgsConstructor
 @Entity
-@Table(name = "user")
+@Table(name = "user", indexes = @Index(name = "idx_user_token_revoked_at", columnList = "token_revoked_at"))
 public class User {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_seq")
+    @SequenceGenerator(name = "user_seq", sequenceName = "user_seq", allocationSize = 50)
     @Column(name = "user_id")
     private int userId;
 
@@ -34,6 +35,14 @@ public class User {
     @Column(name = "passwordHash", nullable = false)
     private String passwordHash;
 
+    // Tokens carry the version they were issued with; bumping it revokes all of the user's tokens
+    @Column(name = "token_version", nullable = false)
+    private int tokenVersion;
+
+    // When tokenVersion was last bumped, so the other instances can pick up the change
+    @Column(name = "token_revoked_at", nullable = false)
+    private long tokenRevokedAt;
+
     public User(String firstName, String lastName, String userEmail, String passwordHash) {
         this.firstName = firstName;
         this.lastName = lastName;
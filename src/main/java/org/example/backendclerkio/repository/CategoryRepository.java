@@ -4,10 +4,14 @@ import jakarta.persistence.criteria.CriteriaBuilder;
 import org.example.backendclerkio.entity.Category;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface CategoryRepository extends JpaRepository<Category, Integer> {
     Optional<Category> findByCategoryName(String name);
 
+    List<Category> findByCategoryNameIn(Collection<String> names);
+
     Optional<Category> findByCategoryId(int id);
 }
@@ -0,0 +1,21 @@
+package org.example.backendclerkio.repository;
+
+import org.example.backendclerkio.entity.DeletedUser;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface DeletedUserRepository extends JpaRepository<DeletedUser, Integer> {
+
+    @Query("SELECT d.userId FROM DeletedUser d WHERE d.deletedAt >= :since")
+    List<Integer> findDeletedSince(@Param("since") long since);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM DeletedUser d WHERE d.deletedAt < :before")
+    int deleteDeletedBefore(@Param("before") long before);
+}
@@ -0,0 +1,37 @@
+package org.example.backendclerkio.repository;
+
+import org.example.backendclerkio.entity.EmailOutbox;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface EmailOutboxRepository extends JpaRepository<EmailOutbox, Integer> {
+
+    @Query("SELECT e.id FROM EmailOutbox e WHERE e.status = org.example.backendclerkio.entity.EmailOutbox.Status.PENDING " +
+            "AND e.nextAttemptAt <= :now ORDER BY e.nextAttemptAt")
+    List<Integer> findDueIds(@Param("now") long now, Pageable pageable);
+
+    // Moves due rows to claimedUntil; rows another instance claimed since findDueIds are no longer due and stay out
+    @Modifying
+    @Query("UPDATE EmailOutbox e SET e.nextAttemptAt = :claimedUntil WHERE e.id IN :ids " +
+            "AND e.status = org.example.backendclerkio.entity.EmailOutbox.Status.PENDING AND e.nextAttemptAt <= :now")
+    int claim(@Param("ids") Collection<Integer> ids, @Param("now") long now, @Param("claimedUntil") long claimedUntil);
+
+    List<EmailOutbox> findByIdInAndNextAttemptAt(Collection<Integer> ids, long nextAttemptAt);
+
+    @Modifying
+    @Query("UPDATE EmailOutbox e SET e.status = org.example.backendclerkio.entity.EmailOutbox.Status.SENT, " +
+            "e.sentAt = :sentAt, e.attempts = e.attempts + 1, e.lastError = null WHERE e.id IN :ids")
+    int markSent(@Param("ids") Collection<Integer> ids, @Param("sentAt") long sentAt);
+
+    @Modifying
+    @Query("UPDATE EmailOutbox e SET e.status = :status, e.attempts = :attempts, e.nextAttemptAt = :nextAttemptAt, " +
+            "e.lastError = :lastError WHERE e.id = :id")
+    int recordFailure(@Param("id") int id, @Param("status") EmailOutbox.Status status, @Param("attempts") int attempts,
+                      @Param("nextAttemptAt") long nextAttemptAt, @Param("lastError") String lastError);
+}
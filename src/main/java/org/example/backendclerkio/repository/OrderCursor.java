@@ -0,0 +1,29 @@
+package org.example.backendclerkio.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Position of the last order on an order history page, newest first: its date plus its id as tie breaker
+public record OrderCursor(long lastOrderDate, int lastId) {
+
+    // Before every order, for the first page
+    public static final OrderCursor START = new OrderCursor(Long.MAX_VALUE, Integer.MAX_VALUE);
+
+    public String encode() {
+        String raw = lastOrderDate + "|" + lastId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static OrderCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new OrderCursor(Long.parseLong(parts[0]), Integer.parseInt(parts[1]));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
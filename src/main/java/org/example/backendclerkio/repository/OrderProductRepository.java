@@ -1,7 +1,35 @@
 package org.example.backendclerkio.repository;
 
+import org.example.backendclerkio.dto.CartLineDTO;
 import org.example.backendclerkio.entity.OrderProduct;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface OrderProductRepository extends JpaRepository<OrderProduct, Integer> {
+
+    // (orderId, id, productId, priceAtTimeOfOrder, quantity) rows for the order views
+    @Query("SELECT op.order.id, op.id, op.product.productId, op.priceAtTimeOfOrder, op.quantity FROM OrderProduct op " +
+            "WHERE op.order.id IN :orderIds ORDER BY op.id")
+    List<Object[]> findLineRowsByOrderIds(@Param("orderIds") Collection<Integer> orderIds);
+
+    // The thumbnail is the product's first image, the same one the product views and order emails show first
+    String CART_LINE = "SELECT new org.example.backendclerkio.dto.CartLineDTO(o.id, p.productId, p.title, op.quantity, " +
+            "op.priceAtTimeOfOrder, p.price, p.stockCount, (SELECT i FROM Product ip JOIN ip.images i WHERE ip = p AND INDEX(i) = 0)) " +
+            "FROM OrderProduct op JOIN op.order o JOIN op.product p ";
+
+    @Query(CART_LINE + "WHERE o.user.userId = :userId AND o.paid = false ORDER BY op.id")
+    List<CartLineDTO> findCartLinesByUserId(@Param("userId") int userId);
+
+    @Query(CART_LINE + "WHERE o.id = :orderId ORDER BY op.id")
+    List<CartLineDTO> findLinesByOrderId(@Param("orderId") int orderId);
+
+    @Modifying
+    @Query("DELETE FROM OrderProduct op WHERE op.order.id IN " +
+            "(SELECT o.id FROM Order o WHERE o.id IN :orderIds AND o.paid = false AND o.orderDate < :before)")
+    int deleteCartLines(@Param("orderIds") Collection<Integer> orderIds, @Param("before") long before);
 }
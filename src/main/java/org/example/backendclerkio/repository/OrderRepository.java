@@ -1,23 +1,72 @@
 package org.example.backendclerkio.repository;
 
+import org.example.backendclerkio.dto.OrderSummaryDTO;
 import org.example.backendclerkio.dto.UserResponseDTO;
 import org.example.backendclerkio.entity.Order;
 import org.example.backendclerkio.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 public interface OrderRepository extends JpaRepository<Order, Integer> {
 
-    @Query("SELECT o FROM Order o LEFT JOIN FETCH o.orderProducts WHERE o.user = :user AND o.paid = :paid")
+    // The lines' products are fetched too, so changing a cart doesn't load them one line at a time
+    @Query("SELECT o FROM Order o LEFT JOIN FETCH o.orderProducts op LEFT JOIN FETCH op.product WHERE o.user = :user AND o.paid = :paid")
     Optional<Order> findByUserAndPaidWithProducts(@Param("user") User user, @Param("paid") boolean paid);
-    Optional<Order> findOrderById(int orderId);
+
+    @Query("SELECT o FROM Order o LEFT JOIN FETCH o.orderProducts WHERE o.id = :orderId")
+    Optional<Order> findOrderById(@Param("orderId") int orderId);
+
+    // The order and its user for checkout; the lines are read separately with OrderProductRepository.findLinesByOrderId
+    @Query("SELECT o FROM Order o JOIN FETCH o.user WHERE o.id = :orderId")
+    Optional<Order> findWithUserById(@Param("orderId") int orderId);
 
     @Query("SELECT o FROM Order o WHERE o.user.userId = :userId AND o.paid = false")
     Optional<Order> findOrderByUserIdAndPaidFalse(int userId);
 
     @Query("SELECT o FROM Order o WHERE o.user.userId = :userId AND o.paid = true")
     Optional<List<Order>> findOrdersByUserIdAndPaidTrue(int userId);
+
+    // (id, orderDate, paid) rows for the order views
+    @Query("SELECT o.id, o.orderDate, o.paid FROM Order o WHERE o.user.userId = :userId AND o.paid = :paid ORDER BY o.orderDate DESC")
+    List<Object[]> findOrderRowsByUserIdAndPaid(@Param("userId") int userId, @Param("paid") boolean paid);
+
+    @Query("SELECT o.id, o.orderDate, o.paid FROM Order o WHERE o.id = :orderId")
+    List<Object[]> findOrderRowById(@Param("orderId") int orderId);
+
+    @Query("SELECT o.id, o.orderDate, o.paid FROM Order o WHERE o.id = :orderId AND o.user.userId = :userId AND o.paid = true")
+    List<Object[]> findPaidOrderRowByIdAndUserId(@Param("orderId") int orderId, @Param("userId") int userId);
+
+    // Order history, newest first, starting after the cursor; seeks on idx_order_user_paid_date
+    @Query("SELECT new org.example.backendclerkio.dto.OrderSummaryDTO(o.id, o.orderDate, COUNT(op), " +
+            "COALESCE(SUM(op.priceAtTimeOfOrder * op.quantity), 0.0)) " +
+            "FROM Order o LEFT JOIN o.orderProducts op " +
+            "WHERE o.user.userId = :userId AND o.paid = true " +
+            "AND (o.orderDate < :lastOrderDate OR (o.orderDate = :lastOrderDate AND o.id < :lastId)) " +
+            "GROUP BY o.id, o.orderDate ORDER BY o.orderDate DESC, o.id DESC")
+    List<OrderSummaryDTO> findOrderSummaries(@Param("userId") int userId, @Param("lastOrderDate") long lastOrderDate,
+                                             @Param("lastId") int lastId, Pageable pageable);
+
+    // Returns 0 if the order was already paid, so the same cart can't be checked out twice
+    @Modifying
+    @Query("UPDATE Order o SET o.paid = true, o.orderDate = :orderDate WHERE o.id = :orderId AND o.paid = false")
+    int markPaid(@Param("orderId") int orderId, @Param("orderDate") long orderDate);
+
+    // Carts left empty, e.g. after their last line was removed
+    @Query("SELECT o.id FROM Order o WHERE o.paid = false AND o.orderProducts IS EMPTY AND o.orderDate < :before")
+    List<Integer> findEmptyCartIds(@Param("before") long before, Pageable pageable);
+
+    // Carts nobody added to since before
+    @Query("SELECT o.id FROM Order o WHERE o.paid = false AND o.orderDate < :before")
+    List<Integer> findCartIdsInactiveSince(@Param("before") long before, Pageable pageable);
+
+    // The conditions are checked again, so a cart that was used or checked out since it was selected stays
+    @Modifying
+    @Query("DELETE FROM Order o WHERE o.id IN :ids AND o.paid = false AND o.orderDate < :before")
+    int deleteCarts(@Param("ids") Collection<Integer> ids, @Param("before") long before);
 }
@@ -0,0 +1,78 @@
+package org.example.backendclerkio.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Objects;
+
+// Position of the last product on a keyset page: the sort key value plus the product id as tie breaker, and a hash
+// of the filters the page was listed with, so a cursor can't be replayed against a different result set.
+// Clients only ever see the encoded form, so the layout can change without breaking them.
+public record ProductCursor(SortKey sortKey, boolean descending, String lastValue, int lastId, String filterHash) {
+
+    public enum SortKey {
+        ID("productId"),
+        PRICE("discountPrice"),
+        TITLE("title");
+
+        private final String attribute;
+
+        SortKey(String attribute) {
+            this.attribute = attribute;
+        }
+
+        public String attribute() {
+            return attribute;
+        }
+
+        public static SortKey fromParam(String param) {
+            if (param == null || param.isBlank()) {
+                return ID;
+            }
+            try {
+                return SortKey.valueOf(param.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unsupported sort key: " + param);
+            }
+        }
+    }
+
+    // Same filters, same hash, on every instance: only hash codes the JDK specifies are used
+    public static String filterHash(String category, String search, boolean lowStock, boolean outOfStock, Integer minPrice, Integer maxPrice) {
+        String normalizedSearch = search == null ? "" : search.trim().toLowerCase(Locale.ROOT);
+        return Integer.toHexString(Objects.hash(category, normalizedSearch, lowStock, outOfStock, minPrice, maxPrice));
+    }
+
+    public static ProductCursor after(ProductRow row, SortKey sortKey, boolean descending, String filterHash) {
+        String lastValue = switch (sortKey) {
+            case ID -> "";
+            case PRICE -> Double.toString(row.discountPrice());
+            case TITLE -> row.title();
+        };
+        return new ProductCursor(sortKey, descending, lastValue, row.id(), filterHash);
+    }
+
+    public String encode() {
+        String raw = sortKey.name() + "|" + (descending ? "desc" : "asc") + "|" + lastId + "|" + filterHash + "|" + lastValue;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ProductCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 5);
+            if (parts.length != 5) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            SortKey sortKey = SortKey.valueOf(parts[0]);
+            boolean descending = "desc".equals(parts[1]);
+            int lastId = Integer.parseInt(parts[2]);
+            if (sortKey == SortKey.PRICE) {
+                Double.parseDouble(parts[4]);
+            }
+            return new ProductCursor(sortKey, descending, parts[4], lastId, parts[3]);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
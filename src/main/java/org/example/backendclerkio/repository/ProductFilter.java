@@ -0,0 +1,13 @@
+package org.example.backendclerkio.repository;
+
+import java.util.Collection;
+
+// Listing filters accepted by GET /api/v1/products. A null productIds means "no search filter".
+public record ProductFilter(
+        String category,
+        Collection<Integer> productIds,
+        boolean lowStock,
+        boolean outOfStock,
+        Integer minPrice,
+        Integer maxPrice
+) {}
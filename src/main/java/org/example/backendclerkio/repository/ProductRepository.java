@@ -5,12 +5,15 @@ import org.example.backendclerkio.entity.Product;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
-public interface ProductRepository extends JpaRepository<Product, Integer> {
+public interface ProductRepository extends JpaRepository<Product, Integer>, ProductRepositoryCustom {
     Page<Product> findAllBy(Pageable pageable);
     Page<Product> findAllByCategory(Pageable pageable, Category category);
 
@@ -21,24 +24,23 @@ public interface ProductRepository extends JpaRepository<Product, Integer> {
     Page<Product> findByStockCount(int stock, Pageable pageable);
     Page<Product> findByTitleContainingIgnoreCase(String name, Pageable pageable);
 
-    @Query("SELECT p FROM Product p " +
-            "WHERE (:category IS NULL OR p.category.categoryName = :category) " +
-            "AND (:search = '' OR LOWER(p.title) LIKE LOWER(CONCAT('%', :search, '%'))) " +
-            "AND (:minPrice IS NULL OR p.discountPrice >= :minPrice) " + // New Filter
-            "AND (:maxPrice IS NULL OR p.discountPrice <= :maxPrice) " + // New Filter
-            "AND ( " +
-            "   (:lowStock = false AND :outOfStock = false) " +
-            "   OR (:lowStock = true AND p.stockCount > 0 and p.stockCount <= 5) " +
-            "   OR (:outOfStock = true AND p.stockCount = 0) " +
-            ")")
-    Page<Product> findProducts(
-            @Param("category") String category,
-            @Param("search") String search,
-            @Param("lowStock") boolean lowStock,
-            @Param("outOfStock") boolean outOfStock,
-            @Param("minPrice") Integer minPrice, // New Parameter
-            @Param("maxPrice") Integer maxPrice, // New Parameter
-            Pageable pageable
-    );
+    // (productId, imageUrl) pairs for a page of product views, in each product's image order
+    @Query("SELECT p.productId, i FROM Product p JOIN p.images i WHERE p.productId IN :ids ORDER BY p.productId, INDEX(i)")
+    List<Object[]> findImagesByProductIds(@Param("ids") Collection<Integer> ids);
+
+    // (productId, tagName) pairs for a page of product views
+    @Query("SELECT p.productId, t.tagName FROM Product p JOIN p.tags t WHERE p.productId IN :ids")
+    List<Object[]> findTagNamesByProductIds(@Param("ids") Collection<Integer> ids);
+
+    // Takes the stock only if enough is left besides what other carts hold (reserved), in one statement;
+    // returns 0 otherwise, so concurrent checkouts can't oversell
+    @Modifying
+    @Query("UPDATE Product p SET p.stockCount = p.stockCount - :quantity WHERE p.productId = :productId AND p.stockCount - :reserved >= :quantity")
+    int decrementStock(@Param("productId") int productId, @Param("quantity") int quantity, @Param("reserved") int reserved);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Product p SET p.stockCount = p.stockCount + :quantity WHERE p.productId = :productId")
+    int incrementStock(@Param("productId") int productId, @Param("quantity") int quantity);
 
 }
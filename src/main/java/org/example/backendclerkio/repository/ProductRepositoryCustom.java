@@ -0,0 +1,22 @@
+package org.example.backendclerkio.repository;
+
+import org.example.backendclerkio.entity.Product;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ProductRepositoryCustom {
+
+    // Entity listing with search as a case-insensitive title substring match. Only the filters that are set end up in the WHERE clause.
+    Page<Product> findProducts(String category, String search, boolean lowStock, boolean outOfStock, Integer minPrice, Integer maxPrice, Pageable pageable);
+
+    // Offset listing projected straight to rows, without materializing entities.
+    Page<ProductRow> findProductRows(ProductFilter filter, Pageable pageable);
+
+    // Keyset listing: returns at most limit rows sorted by sortKey then id, starting after the cursor (null = first page).
+    List<ProductRow> scrollProductRows(ProductFilter filter, ProductCursor.SortKey sortKey, boolean descending, ProductCursor after, int limit);
+
+    List<ProductRow> findProductRowsByIds(Collection<Integer> ids);
+}
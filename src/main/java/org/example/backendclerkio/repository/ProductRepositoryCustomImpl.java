@@ -0,0 +1,260 @@
+package org.example.backendclerkio.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.*;
+import org.example.backendclerkio.entity.Category;
+import org.example.backendclerkio.entity.Product;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+public class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+    // Search matches above this aren't bound as an IN list, which could exceed the database's placeholder limit
+    // after a bulk import. The other filters run in SQL over ids only and the matches are picked out in memory.
+    static final int MAX_IN_IDS = 1000;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Page<Product> findProducts(String category, String search, boolean lowStock, boolean outOfStock, Integer minPrice, Integer maxPrice, Pageable pageable) {
+        ProductFilter filter = new ProductFilter(category, null, lowStock, outOfStock, minPrice, maxPrice);
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Product> query = cb.createQuery(Product.class);
+        Root<Product> product = query.from(Product.class);
+        // Category is EAGER, so fetch it with the page instead of one select per product afterwards
+        product.fetch("category", JoinType.LEFT);
+        query.select(product)
+                .where(filterPredicates(cb, product, filter, search))
+                .orderBy(QueryUtils.toOrders(pageable.getSort(), product, cb));
+
+        List<Product> content = pagedResults(entityManager.createQuery(query), pageable);
+        // The count query is skipped when the first page already holds every match
+        return PageableExecutionUtils.getPage(content, pageable, () -> count(filter, search));
+    }
+
+    @Override
+    public Page<ProductRow> findProductRows(ProductFilter filter, Pageable pageable) {
+        if (tooManyIds(filter)) {
+            return findManyMatchingRows(filter, pageable);
+        }
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Product> product = query.from(Product.class);
+        query.multiselect(rowSelection(product))
+                .where(filterPredicates(cb, product, filter, null))
+                .orderBy(QueryUtils.toOrders(pageable.getSort(), product, cb));
+
+        List<ProductRow> content = toRows(pagedResults(entityManager.createQuery(query), pageable));
+        return PageableExecutionUtils.getPage(content, pageable, () -> count(filter, null));
+    }
+
+    @Override
+    public List<ProductRow> scrollProductRows(ProductFilter filter, ProductCursor.SortKey sortKey, boolean descending, ProductCursor after, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Product> product = query.from(Product.class);
+        query.multiselect(rowSelection(product));
+
+        List<Predicate> predicates = new ArrayList<>(List.of(filterPredicates(cb, product, filter, null)));
+        Path<Integer> id = product.get("productId");
+        if (after != null) {
+            predicates.add(switch (sortKey) {
+                case ID -> descending ? cb.lessThan(id, after.lastId()) : cb.greaterThan(id, after.lastId());
+                case PRICE -> keysetPredicate(cb, product.<Double>get("discountPrice"), Double.parseDouble(after.lastValue()), id, after.lastId(), descending);
+                case TITLE -> keysetPredicate(cb, product.<String>get("title"), after.lastValue(), id, after.lastId(), descending);
+            });
+        }
+
+        Path<?> sortPath = product.get(sortKey.attribute());
+        query.where(predicates.toArray(new Predicate[0]))
+                .orderBy(descending ? cb.desc(sortPath) : cb.asc(sortPath), descending ? cb.desc(id) : cb.asc(id));
+
+        if (tooManyIds(filter)) {
+            List<Integer> ids = matchingIds(query, product, filter, limit);
+            return orderedRows(ids);
+        }
+        return toRows(entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList());
+    }
+
+    @Override
+    public List<ProductRow> findProductRowsByIds(Collection<Integer> ids) {
+        List<Integer> idList = new ArrayList<>(ids);
+        List<ProductRow> rows = new ArrayList<>(idList.size());
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        for (int from = 0; from < idList.size(); from += MAX_IN_IDS) {
+            CriteriaQuery<Tuple> query = cb.createTupleQuery();
+            Root<Product> product = query.from(Product.class);
+            query.multiselect(rowSelection(product))
+                    .where(product.get("productId").in(idList.subList(from, Math.min(from + MAX_IN_IDS, idList.size()))));
+            rows.addAll(toRows(entityManager.createQuery(query).getResultList()));
+        }
+        return rows;
+    }
+
+    private static boolean tooManyIds(ProductFilter filter) {
+        return filter.productIds() != null && filter.productIds().size() > MAX_IN_IDS;
+    }
+
+    // The offset listing for a large search match set: every match in order is found first, for the total
+    private Page<ProductRow> findManyMatchingRows(ProductFilter filter, Pageable pageable) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Product> product = query.from(Product.class);
+        query.where(filterPredicates(cb, product, filter, null))
+                .orderBy(QueryUtils.toOrders(pageable.getSort(), product, cb));
+
+        List<Integer> ids = matchingIds(query, product, filter, Integer.MAX_VALUE);
+        List<Integer> pageIds = ids;
+        if (pageable.isPaged()) {
+            int from = (int) Math.min(pageable.getOffset(), ids.size());
+            pageIds = ids.subList(from, Math.min(from + pageable.getPageSize(), ids.size()));
+        }
+        return new PageImpl<>(orderedRows(pageIds), pageable, ids.size());
+    }
+
+    // Runs the query selecting only ids and keeps, in the query's order, at most limit of those in the search matches.
+    // The query's other filters and ordering are applied by the database as usual.
+    private List<Integer> matchingIds(CriteriaQuery<Tuple> query, Root<Product> product, ProductFilter filter, int limit) {
+        Set<Integer> matches = filter.productIds() instanceof Set<Integer> set ? set : new HashSet<>(filter.productIds());
+        query.multiselect(product.get("productId"));
+        List<Integer> ids = new ArrayList<>();
+        try (Stream<Tuple> stream = entityManager.createQuery(query).getResultStream()) {
+            Iterator<Tuple> iterator = stream.iterator();
+            while (iterator.hasNext() && ids.size() < limit) {
+                Integer id = iterator.next().get(0, Integer.class);
+                if (matches.contains(id)) {
+                    ids.add(id);
+                }
+            }
+        }
+        return ids;
+    }
+
+    private List<ProductRow> orderedRows(List<Integer> ids) {
+        Map<Integer, ProductRow> byId = new HashMap<>();
+        for (ProductRow row : findProductRowsByIds(ids)) {
+            byId.put(row.id(), row);
+        }
+        List<ProductRow> rows = new ArrayList<>(ids.size());
+        for (int id : ids) {
+            ProductRow row = byId.get(id);
+            if (row != null) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private long count(ProductFilter filter, String titleSearch) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<Product> product = query.from(Product.class);
+        query.select(cb.count(product))
+                .where(filterPredicates(cb, product, filter, titleSearch));
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    private static <T> List<T> pagedResults(TypedQuery<T> query, Pageable pageable) {
+        if (pageable.isPaged()) {
+            query.setFirstResult((int) pageable.getOffset());
+            query.setMaxResults(pageable.getPageSize());
+        }
+        return query.getResultList();
+    }
+
+    private static List<Selection<?>> rowSelection(Root<Product> product) {
+        Join<Product, Category> category = product.join("category", JoinType.LEFT);
+        return List.of(
+                product.get("productId"),
+                product.get("title"),
+                product.get("description"),
+                product.get("price"),
+                product.get("discountPrice"),
+                product.get("stockCount"),
+                category.get("categoryName"));
+    }
+
+    private static List<ProductRow> toRows(List<Tuple> tuples) {
+        List<ProductRow> rows = new ArrayList<>(tuples.size());
+        for (Tuple tuple : tuples) {
+            rows.add(new ProductRow(
+                    tuple.get(0, Integer.class),
+                    tuple.get(1, String.class),
+                    tuple.get(2, String.class),
+                    tuple.get(3, Double.class),
+                    tuple.get(4, Double.class),
+                    tuple.get(5, Integer.class),
+                    tuple.get(6, String.class)));
+        }
+        return rows;
+    }
+
+    // Emits a predicate only for filters that are set, so the database sees a plain conjunction it can match to an index
+    private static Predicate[] filterPredicates(CriteriaBuilder cb, Root<Product> product, ProductFilter filter, String titleSearch) {
+        List<Predicate> predicates = new ArrayList<>();
+        if (filter.category() != null) {
+            predicates.add(cb.equal(categoryName(product), filter.category()));
+        }
+        if (filter.productIds() != null && !tooManyIds(filter)) {
+            predicates.add(product.get("productId").in(filter.productIds()));
+        }
+        Path<Double> price = product.get("discountPrice");
+        if (filter.minPrice() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(price, filter.minPrice().doubleValue()));
+        }
+        if (filter.maxPrice() != null) {
+            predicates.add(cb.lessThanOrEqualTo(price, filter.maxPrice().doubleValue()));
+        }
+        Path<Integer> stock = product.get("stockCount");
+        if (filter.lowStock() && filter.outOfStock()) {
+            predicates.add(cb.between(stock, 0, 5));
+        } else if (filter.lowStock()) {
+            predicates.add(cb.between(stock, 1, 5));
+        } else if (filter.outOfStock()) {
+            predicates.add(cb.equal(stock, 0));
+        }
+        if (titleSearch != null && !titleSearch.isBlank()) {
+            predicates.add(cb.like(cb.lower(product.<String>get("title")), "%" + titleSearch.toLowerCase(Locale.ROOT) + "%"));
+        }
+        return predicates.toArray(new Predicate[0]);
+    }
+
+    // Reuses the category join of a row projection, or the category fetch of an entity query, instead of adding a
+    // second one; Hibernate refuses an inner join next to a left fetch of the same association
+    private static Path<String> categoryName(Root<Product> product) {
+        for (Join<Product, ?> join : product.getJoins()) {
+            if (join.getAttribute().getName().equals("category")) {
+                return join.get("categoryName");
+            }
+        }
+        for (Fetch<Product, ?> fetch : product.getFetches()) {
+            if (fetch.getAttribute().getName().equals("category")) {
+                return ((Join<?, ?>) fetch).get("categoryName");
+            }
+        }
+        return product.join("category").get("categoryName");
+    }
+
+    // (sort > last) OR (sort = last AND id > lastId), mirrored for descending order
+    private static <T extends Comparable<? super T>> Predicate keysetPredicate(CriteriaBuilder cb, Path<T> sortPath, T lastValue,
+                                                                              Path<Integer> id, int lastId, boolean descending) {
+        if (descending) {
+            return cb.or(cb.lessThan(sortPath, lastValue),
+                    cb.and(cb.equal(sortPath, lastValue), cb.lessThan(id, lastId)));
+        }
+        return cb.or(cb.greaterThan(sortPath, lastValue),
+                cb.and(cb.equal(sortPath, lastValue), cb.greaterThan(id, lastId)));
+    }
+}
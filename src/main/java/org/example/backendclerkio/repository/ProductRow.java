@@ -0,0 +1,12 @@
+package org.example.backendclerkio.repository;
+
+// Scalar columns of a product as read by the listing projections; images and tags are loaded separately per page.
+public record ProductRow(
+        int id,
+        String title,
+        String description,
+        double price,
+        double discountPrice,
+        int stockCount,
+        String category
+) {}
@@ -0,0 +1,27 @@
+package org.example.backendclerkio.repository;
+
+import org.example.backendclerkio.entity.RevokedToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, Integer> {
+
+    // Detached copies, so a rebuild reading every row doesn't fill a persistence context
+    @Query("SELECT new org.example.backendclerkio.entity.RevokedToken(r.tokenHash, r.expiresAt, r.revokedAt) " +
+            "FROM RevokedToken r WHERE r.revokedAt >= :since AND r.expiresAt > :now")
+    List<RevokedToken> findRevokedSince(@Param("since") long since, @Param("now") long now);
+
+    // Null if the token isn't revoked
+    @Query("SELECT MAX(r.expiresAt) FROM RevokedToken r WHERE r.tokenHash = :tokenHash AND r.expiresAt > :now")
+    Long findExpiry(@Param("tokenHash") String tokenHash, @Param("now") long now);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM RevokedToken r WHERE r.expiresAt <= :now")
+    int deleteExpired(@Param("now") long now);
+}
@@ -0,0 +1,40 @@
+package org.example.backendclerkio.repository;
+
+import org.example.backendclerkio.entity.StockReservation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface StockReservationRepository extends JpaRepository<StockReservation, Integer> {
+
+    Optional<StockReservation> findByOrderIdAndProductId(int orderId, int productId);
+
+    List<StockReservation> findByExpiresAtGreaterThan(long now);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM StockReservation r WHERE r.orderId = :orderId AND r.productId = :productId")
+    int deleteHold(@Param("orderId") int orderId, @Param("productId") int productId);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM StockReservation r WHERE r.orderId = :orderId")
+    int deleteByOrder(@Param("orderId") int orderId);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM StockReservation r WHERE r.expiresAt <= :now")
+    int deleteExpired(@Param("now") long now);
+
+    // Rows of the carts CartSweeper deletes; re-checks the cart like OrderRepository.deleteCarts
+    @Modifying
+    @Query("DELETE FROM StockReservation r WHERE r.orderId IN " +
+            "(SELECT o.id FROM Order o WHERE o.id IN :orderIds AND o.paid = false AND o.orderDate < :before)")
+    int deleteCartHolds(@Param("orderIds") Collection<Integer> orderIds, @Param("before") long before);
+}
@@ -2,6 +2,8 @@ package org.example.backendclerkio.repository;
 
 import org.example.backendclerkio.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 import java.util.Optional;
@@ -14,4 +16,8 @@ public interface UserRepository extends JpaRepository<User, Integer> {
     boolean existsByUserId(int userId);
 
     Optional<User> findUserByUserId(int userId);
+
+    // Only users that had their tokens revoked; everyone else is at version 0
+    @Query("SELECT u.userId, u.tokenVersion FROM User u WHERE u.tokenVersion > 0 AND u.tokenRevokedAt >= :since")
+    List<Object[]> findTokenVersionsRevokedSince(@Param("since") long since);
 }
\ No newline at end of file
@@ -0,0 +1,117 @@
+package org.example.backendclerkio.service;
+
+import jakarta.annotation.PreDestroy;
+import org.example.backendclerkio.repository.OrderProductRepository;
+import org.example.backendclerkio.repository.OrderRepository;
+import org.example.backendclerkio.repository.StockReservationRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Deletes carts (unpaid orders) nobody is using anymore: empty ones after cart.sweeper.empty-after-minutes and
+// any cart that wasn't added to for cart.sweeper.abandoned-after-days. An unpaid order's orderDate is its last
+// addToCart. Carts are deleted cart.sweeper.batch-size at a time, each batch in its own short transaction,
+// so a large backlog never holds locks on order_ for long.
+@Service
+public class CartSweeper {
+
+    private final OrderRepository orderRepository;
+    private final OrderProductRepository orderProductRepository;
+    private final StockReservationRepository reservationRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final long intervalMinutes;
+    private final long emptyAfterMillis;
+    private final long abandonedAfterMillis;
+    private final int batchSize;
+
+    private ScheduledExecutorService executor;
+
+    public CartSweeper(OrderRepository orderRepository, OrderProductRepository orderProductRepository,
+                       StockReservationRepository reservationRepository, PlatformTransactionManager transactionManager,
+                       @Value("${cart.sweeper.enabled:true}") boolean enabled,
+                       @Value("${cart.sweeper.interval-minutes:60}") long intervalMinutes,
+                       @Value("${cart.sweeper.empty-after-minutes:60}") long emptyAfterMinutes,
+                       @Value("${cart.sweeper.abandoned-after-days:30}") long abandonedAfterDays,
+                       @Value("${cart.sweeper.batch-size:500}") int batchSize) {
+        this.orderRepository = orderRepository;
+        this.orderProductRepository = orderProductRepository;
+        this.reservationRepository = reservationRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.intervalMinutes = intervalMinutes;
+        this.emptyAfterMillis = TimeUnit.MINUTES.toMillis(emptyAfterMinutes);
+        this.abandonedAfterMillis = TimeUnit.DAYS.toMillis(abandonedAfterDays);
+        this.batchSize = batchSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (!enabled || executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cart-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                sweep();
+            } catch (RuntimeException e) {
+                System.err.println("Cart sweep failed: " + e.getMessage());
+            }
+        }, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    // Returns the number of carts deleted
+    public int sweep() {
+        long now = System.currentTimeMillis();
+        int deleted = sweep(now - emptyAfterMillis, page -> orderRepository.findEmptyCartIds(now - emptyAfterMillis, page));
+        deleted += sweep(now - abandonedAfterMillis, page -> orderRepository.findCartIdsInactiveSince(now - abandonedAfterMillis, page));
+        if (deleted > 0) {
+            System.out.println("Cart sweeper deleted " + deleted + " carts.");
+        }
+        return deleted;
+    }
+
+    // Always reads the first page: the previous batch is gone, and carts skipped because they were used in the
+    // meantime no longer match. Stops after a short batch.
+    private int sweep(long before, Function<Pageable, List<Integer>> findIds) {
+        int deleted = 0;
+        while (true) {
+            int[] batch = transactionTemplate.execute(status -> {
+                List<Integer> ids = findIds.apply(PageRequest.of(0, batchSize));
+                if (ids.isEmpty()) {
+                    return new int[] {0, 0};
+                }
+                orderProductRepository.deleteCartLines(ids, before);
+                // Holds of a cart this old have expired already; only their rows may be left
+                reservationRepository.deleteCartHolds(ids, before);
+                return new int[] {ids.size(), orderRepository.deleteCarts(ids, before)};
+            });
+            deleted += batch[1];
+            if (batch[0] < batchSize) {
+                return deleted;
+            }
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
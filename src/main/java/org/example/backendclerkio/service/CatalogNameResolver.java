@@ -0,0 +1,138 @@
+package org.example.backendclerkio.service;
+
+import org.example.backendclerkio.entity.Category;
+import org.example.backendclerkio.entity.Tag;
+import org.example.backendclerkio.repository.CategoryRepository;
+import org.example.backendclerkio.repository.TagRepository;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// Resolves category and tag names to rows for product writes, creating the ones that don't exist yet.
+// Known ids are kept in memory, so after warm-up a product write costs no lookups at all; misses are
+// looked up with one IN query and created together in one transaction. tag_name and category_name are
+// unique, so when two writers create the same name at once the loser re-reads the winner's row.
+@Service
+public class CatalogNameResolver {
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final CategoryRepository categoryRepository;
+    private final TagRepository tagRepository;
+    private final TransactionTemplate newTransaction;
+
+    private final Map<String, Integer> categoryIds = new ConcurrentHashMap<>();
+    private final Map<String, Integer> tagIds = new ConcurrentHashMap<>();
+
+    public CatalogNameResolver(CategoryRepository categoryRepository, TagRepository tagRepository, PlatformTransactionManager transactionManager) {
+        this.categoryRepository = categoryRepository;
+        this.tagRepository = tagRepository;
+        // Lookups and inserts run in their own transaction: a caller's snapshot would hide rows another writer just committed,
+        // and a failed insert must not mark the caller's transaction rollback-only
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public Category resolveCategory(String name) {
+        if (name == null) {
+            return null;
+        }
+        return resolveCategories(List.of(name)).get(name);
+    }
+
+    public Map<String, Category> resolveCategories(Collection<String> names) {
+        Map<String, Integer> ids = resolveIds(names, categoryIds,
+                misses -> categoryIdsByName(categoryRepository.findByCategoryNameIn(misses)),
+                misses -> categoryIdsByName(categoryRepository.saveAllAndFlush(misses.stream().map(Category::new).toList())));
+
+        Map<String, Category> categories = new HashMap<>();
+        ids.forEach((name, id) -> categories.put(name, categoryRepository.getReferenceById(id)));
+        return categories;
+    }
+
+    public Set<Tag> resolveTags(Collection<String> names) {
+        return new HashSet<>(resolveTagsByName(names).values());
+    }
+
+    public Map<String, Tag> resolveTagsByName(Collection<String> names) {
+        Map<String, Integer> ids = resolveIds(names, tagIds,
+                misses -> tagIdsByName(tagRepository.findByTagNameIn(misses)),
+                misses -> tagIdsByName(tagRepository.saveAllAndFlush(misses.stream().map(Tag::new).toList())));
+
+        Map<String, Tag> tags = new HashMap<>();
+        ids.forEach((name, id) -> tags.put(name, tagRepository.getReferenceById(id)));
+        return tags;
+    }
+
+    private Map<String, Integer> resolveIds(Collection<String> names, Map<String, Integer> knownIds,
+                                            Function<List<String>, Map<String, Integer>> find,
+                                            Function<List<String>, Map<String, Integer>> create) {
+        Map<String, Integer> resolved = new HashMap<>();
+        Set<String> misses = new LinkedHashSet<>();
+        if (names != null) {
+            for (String name : names) {
+                if (name == null) {
+                    continue;
+                }
+                Integer id = knownIds.get(name);
+                if (id != null) {
+                    resolved.put(name, id);
+                } else {
+                    misses.add(name);
+                }
+            }
+        }
+
+        for (int attempt = 1; !misses.isEmpty(); attempt++) {
+            List<String> lookup = List.copyOf(misses);
+            remember(newTransaction.execute(status -> find.apply(lookup)), knownIds, resolved, misses);
+            if (misses.isEmpty()) {
+                break;
+            }
+
+            List<String> missing = List.copyOf(misses);
+            try {
+                remember(newTransaction.execute(status -> create.apply(missing)), knownIds, resolved, misses);
+            } catch (DataIntegrityViolationException e) {
+                // Someone else created some of these names in the meantime, the next lookup picks them up
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw new IllegalStateException("Could not resolve names " + missing, e);
+                }
+            }
+        }
+        return resolved;
+    }
+
+    private static void remember(Map<String, Integer> found, Map<String, Integer> knownIds, Map<String, Integer> resolved, Set<String> misses) {
+        if (found == null) {
+            return;
+        }
+        found.forEach((name, id) -> {
+            if (misses.remove(name)) {
+                knownIds.put(name, id);
+                resolved.put(name, id);
+            }
+        });
+    }
+
+    private static Map<String, Integer> categoryIdsByName(List<Category> categories) {
+        Map<String, Integer> ids = new HashMap<>();
+        for (Category category : categories) {
+            ids.put(category.getCategoryName(), category.getCategoryId());
+        }
+        return ids;
+    }
+
+    private static Map<String, Integer> tagIdsByName(List<Tag> tags) {
+        Map<String, Integer> ids = new HashMap<>();
+        for (Tag tag : tags) {
+            ids.put(tag.getTagName(), tag.getTagId());
+        }
+        return ids;
+    }
+}
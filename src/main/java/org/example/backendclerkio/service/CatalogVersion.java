@@ -0,0 +1,26 @@
+package org.example.backendclerkio.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Version of everything the catalog endpoints serve. Product, category and stock changes bump it,
+// and the catalog GETs derive their ETag from it so If-None-Match can be answered without a query.
+@Component
+public class CatalogVersion {
+
+    // Starts at boot time, so ETags handed out before a restart never match after it
+    private final AtomicLong version = new AtomicLong(System.currentTimeMillis());
+
+    public long current() {
+        return version.get();
+    }
+
+    public void bump() {
+        version.incrementAndGet();
+    }
+
+    public String etag() {
+        return "\"catalog-" + version.get() + "\"";
+    }
+}
@@ -0,0 +1,111 @@
+package org.example.backendclerkio.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Append-only log of the checkouts CheckoutQueue accepted, one "sequence,orderId,userId" line each, and a "D,sequence"
+// line once a checkout has been processed. Accepting waits for the line to be forced to disk, and whoever forces
+// covers every line written before it, so concurrent requests share one fsync. Done lines aren't forced: losing
+// one only replays a checkout, which then finds the order already paid.
+final class CheckoutJournal implements Closeable {
+
+    record Entry(long sequence, int orderId, int userId) {}
+
+    private final FileChannel channel;
+    private final Object forceLock = new Object();
+    // Accepted and not yet done, in the order they were accepted
+    private final Map<Long, Entry> open = new LinkedHashMap<>();
+    private long lastSequence;
+    private long durableSequence;
+
+    CheckoutJournal(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        if (Files.exists(path)) {
+            read(path);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.durableSequence = lastSequence;
+    }
+
+    synchronized List<Entry> openEntries() {
+        return new ArrayList<>(open.values());
+    }
+
+    synchronized long append(int orderId, int userId) throws IOException {
+        long sequence = ++lastSequence;
+        write(sequence + "," + orderId + "," + userId + "\n");
+        open.put(sequence, new Entry(sequence, orderId, userId));
+        return sequence;
+    }
+
+    void awaitDurable(long sequence) throws IOException {
+        synchronized (forceLock) {
+            if (durableSequence >= sequence) {
+                return;
+            }
+            long upTo = lastSequence();
+            channel.force(false);
+            durableSequence = upTo;
+        }
+    }
+
+    synchronized long lastSequence() {
+        return lastSequence;
+    }
+
+    // Once nothing is open the file starts over
+    synchronized void complete(long sequence) throws IOException {
+        open.remove(sequence);
+        if (open.isEmpty()) {
+            channel.truncate(0);
+        } else {
+            write("D," + sequence + "\n");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void write(String line) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void read(Path path) throws IOException {
+        String content = Files.readString(path, StandardCharsets.UTF_8);
+        // A line without its newline was cut short by a crash and never acknowledged to anyone
+        int end = content.lastIndexOf('\n');
+        for (String line : content.substring(0, end + 1).split("\n")) {
+            String[] fields = line.split(",");
+            try {
+                if (fields.length == 2 && fields[0].equals("D")) {
+                    open.remove(Long.parseLong(fields[1]));
+                } else if (fields.length == 3) {
+                    long sequence = Long.parseLong(fields[0]);
+                    open.put(sequence, new Entry(sequence, Integer.parseInt(fields[1]), Integer.parseInt(fields[2])));
+                    lastSequence = Math.max(lastSequence, sequence);
+                } else if (!line.isEmpty()) {
+                    System.err.println("Skipping unreadable checkout journal line: " + line);
+                }
+            } catch (NumberFormatException e) {
+                System.err.println("Skipping unreadable checkout journal line: " + line);
+            }
+        }
+    }
+}
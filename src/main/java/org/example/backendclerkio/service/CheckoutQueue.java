@@ -0,0 +1,259 @@
+package org.example.backendclerkio.service;
+
+import jakarta.annotation.PreDestroy;
+import org.example.backendclerkio.dto.CheckoutStatusDTO;
+import org.example.backendclerkio.entity.Order;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Asynchronous checkout (POST /api/v1/order/checkout/{orderId}/async). A request is validated, written to the
+// checkout journal on disk and queued; a fixed pool of checkout.async.workers threads runs OrderService.checkout
+// for queued orders, each in its own transaction. At most checkout.async.queue-capacity checkouts wait at a time;
+// beyond that submit fails fast instead of tying up request threads. Checkouts still in the journal when the
+// application stopped are queued again on startup, unless spring.jpa.hibernate.ddl-auto recreated the schema and
+// the order ids now belong to other orders; a replayed checkout is dropped if the order isn't its user's any more.
+// Only the order's own user can submit or see its checkout.
+// Statuses are kept in memory for checkout.async.status-ttl-seconds after a checkout finished; after that, or
+// after a restart, a paid order reports COMPLETED.
+@Service
+public class CheckoutQueue {
+
+    // Thrown when the queue is full or asynchronous checkout is off; the caller should retry later
+    public static class CheckoutUnavailableException extends RuntimeException {
+        public CheckoutUnavailableException(String message) {
+            super(message);
+        }
+    }
+
+    private record Queued(long sequence, int orderId, int userId, boolean replayed) {}
+
+    private record Tracked(CheckoutStatusDTO status, int userId, long updatedAt) {}
+
+    private final OrderService orderService;
+    private final boolean enabled;
+    private final int workers;
+    private final int capacity;
+    private final Path journalPath;
+    private final long statusTtlMillis;
+    private final boolean schemaRecreated;
+
+    private final BlockingQueue<Queued> queue = new LinkedBlockingQueue<>();
+    private final Map<Integer, Tracked> statuses = new ConcurrentHashMap<>();
+    // Orders queued or being checked out, so a double submit doesn't queue an order twice
+    private final Set<Integer> inFlight = ConcurrentHashMap.newKeySet();
+    private Semaphore slots;
+    private CheckoutJournal journal;
+    private ExecutorService workerPool;
+    private ScheduledExecutorService statusCleaner;
+
+    public CheckoutQueue(OrderService orderService,
+                         @Value("${checkout.async.enabled:true}") boolean enabled,
+                         @Value("${checkout.async.workers:4}") int workers,
+                         @Value("${checkout.async.queue-capacity:1000}") int capacity,
+                         @Value("${checkout.async.journal-path:data/checkout.journal}") String journalPath,
+                         @Value("${checkout.async.status-ttl-seconds:600}") long statusTtlSeconds,
+                         @Value("${spring.jpa.hibernate.ddl-auto:none}") String ddlAuto) {
+        this.orderService = orderService;
+        this.enabled = enabled;
+        this.workers = workers;
+        this.capacity = capacity;
+        this.journalPath = Path.of(journalPath);
+        this.statusTtlMillis = TimeUnit.SECONDS.toMillis(statusTtlSeconds);
+        this.schemaRecreated = ddlAuto.startsWith("create");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() throws IOException {
+        if (!enabled || journal != null) {
+            return;
+        }
+        journal = new CheckoutJournal(journalPath);
+        int replayed = 0;
+        for (CheckoutJournal.Entry entry : journal.openEntries()) {
+            if (schemaRecreated) {
+                journal.complete(entry.sequence());
+                continue;
+            }
+            queue.add(new Queued(entry.sequence(), entry.orderId(), entry.userId(), true));
+            inFlight.add(entry.orderId());
+            track(entry.orderId(), entry.userId(), CheckoutStatusDTO.Status.QUEUED, null);
+            replayed++;
+        }
+        // Replayed checkouts take slots too, so the queue can't grow past its capacity on top of them
+        slots = new Semaphore(capacity - replayed);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        workerPool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "checkout-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workers; i++) {
+            workerPool.execute(this::work);
+        }
+        statusCleaner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkout-status-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        statusCleaner.scheduleWithFixedDelay(this::removeFinishedStatuses, 1, 1, TimeUnit.MINUTES);
+        if (replayed > 0) {
+            System.out.println("Queued " + replayed + " checkouts from the checkout journal again.");
+        }
+    }
+
+    // Returns once the checkout is on disk. Submitting an order that is already queued returns its status.
+    // Another user's order is reported as not found.
+    public CheckoutStatusDTO submit(int orderId, int userId) {
+        if (journal == null) {
+            throw new CheckoutUnavailableException("Asynchronous checkout is not available");
+        }
+        if (!inFlight.add(orderId)) {
+            Tracked tracked = statuses.get(orderId);
+            if (tracked != null && tracked.userId() != userId) {
+                throw new IllegalArgumentException("Order not found.");
+            }
+            return tracked != null ? tracked.status() : new CheckoutStatusDTO(orderId, CheckoutStatusDTO.Status.QUEUED, null);
+        }
+        boolean queued = false;
+        try {
+            Order order = orderService.findOrderForCheckout(orderId)
+                    .filter(found -> found.getUser() == null || found.getUser().getUserId() == userId)
+                    .orElseThrow(() -> new IllegalArgumentException("Order not found."));
+            if (order.getUser() == null) {
+                throw new IllegalArgumentException("Invalid order details");
+            }
+            if (order.isPaid()) {
+                throw new IllegalArgumentException("Order is already checked out");
+            }
+            if (!slots.tryAcquire()) {
+                throw new CheckoutUnavailableException("Checkout queue is full");
+            }
+            long sequence;
+            try {
+                sequence = journal.append(orderId, userId);
+            } catch (IOException e) {
+                slots.release();
+                throw new UncheckedIOException("Could not journal checkout for order " + orderId, e);
+            }
+            try {
+                journal.awaitDurable(sequence);
+            } catch (IOException e) {
+                // The line may still reach the disk with a later fsync; the client is told it failed, so it must
+                // not run after a restart
+                try {
+                    journal.complete(sequence);
+                } catch (IOException completeFailed) {
+                    System.err.println("Could not mark failed checkout of order " + orderId + " done in the journal: " + completeFailed.getMessage());
+                }
+                slots.release();
+                throw new UncheckedIOException("Could not journal checkout for order " + orderId, e);
+            }
+            CheckoutStatusDTO status = track(orderId, userId, CheckoutStatusDTO.Status.QUEUED, null);
+            queue.add(new Queued(sequence, orderId, userId, false));
+            queued = true;
+            return status;
+        } finally {
+            if (!queued) {
+                inFlight.remove(orderId);
+            }
+        }
+    }
+
+    // Empty for another user's order
+    public Optional<CheckoutStatusDTO> status(int orderId, int userId) {
+        Tracked tracked = statuses.get(orderId);
+        if (tracked != null) {
+            return tracked.userId() == userId ? Optional.of(tracked.status()) : Optional.empty();
+        }
+        return orderService.findOrderForCheckout(orderId)
+                .filter(order -> order.getUser() != null && order.getUser().getUserId() == userId)
+                .filter(Order::isPaid)
+                .map(order -> new CheckoutStatusDTO(orderId, CheckoutStatusDTO.Status.COMPLETED, null));
+    }
+
+    @PreDestroy
+    public synchronized void stop() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        // Checkouts still queued or interrupted stay open in the journal and run again on the next start
+        workerPool.shutdownNow();
+        statusCleaner.shutdownNow();
+        try {
+            workerPool.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+        journal = null;
+    }
+
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Queued queued;
+            try {
+                queued = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            slots.release();
+            process(queued);
+        }
+    }
+
+    private void process(Queued queued) {
+        int orderId = queued.orderId();
+        int userId = queued.userId();
+        track(orderId, userId, CheckoutStatusDTO.Status.PROCESSING, null);
+        try {
+            Order order = orderService.findOrderForCheckout(orderId)
+                    .filter(found -> found.getUser() != null && found.getUser().getUserId() == userId)
+                    .orElseThrow(() -> new IllegalArgumentException("Order not found."));
+            if (queued.replayed() && order.isPaid()) {
+                // Checked out before the restart, only the done line was lost
+                track(orderId, userId, CheckoutStatusDTO.Status.COMPLETED, null);
+            } else {
+                orderService.checkout(order);
+                track(orderId, userId, CheckoutStatusDTO.Status.COMPLETED, null);
+            }
+        } catch (IllegalArgumentException e) {
+            track(orderId, userId, CheckoutStatusDTO.Status.FAILED, e.getMessage());
+        } catch (RuntimeException e) {
+            System.err.println("Checkout of order " + orderId + " failed: " + e.getMessage());
+            track(orderId, userId, CheckoutStatusDTO.Status.FAILED, "An error occurred while checking out the order");
+        }
+        inFlight.remove(orderId);
+        try {
+            journal.complete(queued.sequence());
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not mark checkout of order " + orderId + " done in the journal: " + e.getMessage());
+        }
+    }
+
+    private CheckoutStatusDTO track(int orderId, int userId, CheckoutStatusDTO.Status status, String message) {
+        CheckoutStatusDTO dto = new CheckoutStatusDTO(orderId, status, message);
+        statuses.put(orderId, new Tracked(dto, userId, System.currentTimeMillis()));
+        return dto;
+    }
+
+    private void removeFinishedStatuses() {
+        long before = System.currentTimeMillis() - statusTtlMillis;
+        statuses.values().removeIf(tracked -> !isPending(tracked.status()) && tracked.updatedAt() < before);
+    }
+
+    private static boolean isPending(CheckoutStatusDTO status) {
+        return status.status() == CheckoutStatusDTO.Status.QUEUED || status.status() == CheckoutStatusDTO.Status.PROCESSING;
+    }
+}
@@ -0,0 +1,224 @@
+package org.example.backendclerkio.service;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.internet.MimeMessage;
+import org.example.backendclerkio.dto.OrderResponseDTO;
+import org.example.backendclerkio.entity.EmailOutbox;
+import org.example.backendclerkio.entity.Order;
+import org.example.backendclerkio.repository.EmailOutboxRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Sends the emails queued in email_outbox, off the request path. One thread claims due rows, up to
+// email.outbox.batch-size per worker, and hands each batch to a fixed pool of email.outbox.workers threads.
+// A worker renders its batch and sends it over one SMTP connection. Failed emails are retried with exponential
+// backoff starting at email.outbox.backoff-ms, and marked FAILED after email.outbox.max-attempts.
+// A claim moves the row's next attempt email.outbox.lease-ms ahead, so rows claimed by an instance that died are
+// picked up again after that.
+@Service
+public class EmailOutboxDispatcher {
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final EmailOutboxRepository outboxRepository;
+    private final EmailOutboxService outbox;
+    private final OrderService orderService;
+    private final OrderEmailRenderer renderer;
+    private final EmailService emailService;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int workers;
+    private final int batchSize;
+    private final long pollIntervalMillis;
+    private final int maxAttempts;
+    private final long backoffMillis;
+    private final long leaseMillis;
+
+    private ExecutorService workerPool;
+    private Thread dispatcher;
+    private volatile boolean running;
+
+    public EmailOutboxDispatcher(EmailOutboxRepository outboxRepository, EmailOutboxService outbox,
+                                 OrderService orderService, OrderEmailRenderer renderer, EmailService emailService,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${email.outbox.enabled:true}") boolean enabled,
+                                 @Value("${email.outbox.workers:2}") int workers,
+                                 @Value("${email.outbox.batch-size:20}") int batchSize,
+                                 @Value("${email.outbox.poll-interval-ms:1000}") long pollIntervalMillis,
+                                 @Value("${email.outbox.max-attempts:8}") int maxAttempts,
+                                 @Value("${email.outbox.backoff-ms:5000}") long backoffMillis,
+                                 @Value("${email.outbox.lease-ms:300000}") long leaseMillis) {
+        this.outboxRepository = outboxRepository;
+        this.outbox = outbox;
+        this.orderService = orderService;
+        this.renderer = renderer;
+        this.emailService = emailService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.maxAttempts = maxAttempts;
+        this.backoffMillis = backoffMillis;
+        this.leaseMillis = leaseMillis;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        AtomicInteger threadNumber = new AtomicInteger();
+        workerPool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "email-outbox-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        dispatcher = new Thread(this::run, "email-outbox-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        dispatcher.interrupt();
+        workerPool.shutdownNow();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                // A full round means more may be due right away, so only wait once a round comes back short
+                int claimed;
+                do {
+                    claimed = dispatchDue();
+                } while (running && claimed == workers * batchSize);
+                outbox.awaitWork(pollIntervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("Email outbox dispatch failed: " + e.getMessage());
+                try {
+                    Thread.sleep(pollIntervalMillis);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Claims up to one batch per worker and waits until all of them are handled. Returns the number claimed.
+    int dispatchDue() throws InterruptedException {
+        List<EmailOutbox> claimed = claimDue();
+        if (claimed.isEmpty()) {
+            return 0;
+        }
+        List<Callable<Void>> batches = new ArrayList<>();
+        for (int from = 0; from < claimed.size(); from += batchSize) {
+            List<EmailOutbox> batch = claimed.subList(from, Math.min(from + batchSize, claimed.size()));
+            batches.add(() -> {
+                try {
+                    send(batch);
+                } catch (RuntimeException e) {
+                    // The batch stays claimed and is retried once the lease runs out
+                    System.err.println("Email outbox batch failed: " + e.getMessage());
+                }
+                return null;
+            });
+        }
+        if (workerPool != null) {
+            workerPool.invokeAll(batches);
+        } else {
+            // Not started, e.g. in tests: send on the calling thread
+            for (Callable<Void> batch : batches) {
+                try {
+                    batch.call();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        return claimed.size();
+    }
+
+    private List<EmailOutbox> claimDue() {
+        long now = System.currentTimeMillis();
+        // The jitter keeps two instances claiming in the same millisecond from reading back each other's rows
+        long claimedUntil = now + leaseMillis + ThreadLocalRandom.current().nextInt(1, 1000);
+        return transactionTemplate.execute(status -> {
+            List<Integer> ids = outboxRepository.findDueIds(now, PageRequest.of(0, workers * batchSize));
+            if (ids.isEmpty()) {
+                return List.of();
+            }
+            outboxRepository.claim(ids, now, claimedUntil);
+            return outboxRepository.findByIdInAndNextAttemptAt(ids, claimedUntil);
+        });
+    }
+
+    private void send(List<EmailOutbox> batch) {
+        Map<MimeMessage, EmailOutbox> emailsByMessage = new IdentityHashMap<>();
+        Map<EmailOutbox, Exception> failed = new HashMap<>();
+        List<MimeMessage> messages = new ArrayList<>();
+        for (EmailOutbox email : batch) {
+            try {
+                MimeMessage message = render(email);
+                emailsByMessage.put(message, email);
+                messages.add(message);
+            } catch (Exception e) {
+                failed.put(email, e);
+            }
+        }
+        emailService.sendAll(messages).forEach((message, error) -> failed.put(emailsByMessage.get(message), error));
+
+        long now = System.currentTimeMillis();
+        List<Integer> sentIds = batch.stream().filter(email -> !failed.containsKey(email)).map(EmailOutbox::getId).toList();
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!sentIds.isEmpty()) {
+                outboxRepository.markSent(sentIds, now);
+            }
+            failed.forEach((email, error) -> recordFailure(email, error, now));
+        });
+    }
+
+    private MimeMessage render(EmailOutbox email) throws Exception {
+        Order order = orderService.findOrderForCheckout(email.getOrderId())
+                .orElseThrow(() -> new IllegalStateException("Order not found: " + email.getOrderId()));
+        OrderResponseDTO view = orderService.findOrderView(email.getOrderId())
+                .orElseThrow(() -> new IllegalStateException("Order not found: " + email.getOrderId()));
+        return emailService.createHtmlMessage(email.getRecipient(),
+                "Order Confirmation for order: " + email.getOrderId(),
+                renderer.render(order.getUser(), view));
+    }
+
+    private void recordFailure(EmailOutbox email, Exception error, long now) {
+        int attempts = email.getAttempts() + 1;
+        String message = String.valueOf(error.getMessage());
+        if (message.length() > 1000) {
+            message = message.substring(0, 1000);
+        }
+        if (attempts >= maxAttempts) {
+            System.err.println("Giving up on confirmation email for order " + email.getOrderId() + ": " + message);
+            outboxRepository.recordFailure(email.getId(), EmailOutbox.Status.FAILED, attempts, now, message);
+        } else {
+            long backoff = Math.min(backoffMillis << Math.min(attempts - 1, 20), MAX_BACKOFF_MILLIS);
+            outboxRepository.recordFailure(email.getId(), EmailOutbox.Status.PENDING, attempts, now + backoff, message);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.example.backendclerkio.service;
+
+import org.example.backendclerkio.entity.EmailOutbox;
+import org.example.backendclerkio.repository.EmailOutboxRepository;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Queues order confirmation emails in the email_outbox table. enqueue writes the row in the caller's transaction;
+// EmailOutboxDispatcher sends it after that has committed.
+@Service
+public class EmailOutboxService {
+
+    private final EmailOutboxRepository outboxRepository;
+    private final Semaphore work = new Semaphore(0);
+
+    public EmailOutboxService(EmailOutboxRepository outboxRepository) {
+        this.outboxRepository = outboxRepository;
+    }
+
+    public void enqueue(int orderId, String recipient) {
+        outboxRepository.save(new EmailOutbox(orderId, recipient, System.currentTimeMillis()));
+    }
+
+    // Call once the enqueueing transaction has committed, so the dispatcher doesn't wait for its next poll
+    public void wakeUp() {
+        work.release();
+    }
+
+    // Returns early when woken up
+    boolean awaitWork(long timeoutMillis) throws InterruptedException {
+        boolean woken = work.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+        work.drainPermits();
+        return woken;
+    }
+}
@@ -2,28 +2,60 @@ package org.example.backendclerkio.service;
 
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
 
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
 @Service
 public class EmailService {
 
-    @Autowired
-    private JavaMailSender mailSender;
+    private final JavaMailSender mailSender;
 
-    public void sendConfirmationEmail(String toEmail, String subject, String body) {
-        MimeMessage message = mailSender.createMimeMessage();
+    public EmailService(JavaMailSender mailSender) {
+        this.mailSender = mailSender;
+    }
 
+    public void sendConfirmationEmail(String toEmail, String subject, String body) {
         try {
-            MimeMessageHelper helper = new MimeMessageHelper(message, true);
-            helper.setTo(toEmail);
-            helper.setSubject(subject);
-            helper.setText(body, true);
-            mailSender.send(message);
+            mailSender.send(createHtmlMessage(toEmail, subject, body));
         } catch (MessagingException e) {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+
+    public MimeMessage createHtmlMessage(String toEmail, String subject, String body) throws MessagingException {
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, true);
+        helper.setTo(toEmail);
+        helper.setSubject(subject);
+        helper.setText(body, true);
+        return message;
+    }
+
+    // Sends the messages over one SMTP connection instead of one connection each. Returns the messages that
+    // could not be sent with their error; empty if all were sent.
+    public Map<MimeMessage, Exception> sendAll(List<MimeMessage> messages) {
+        Map<MimeMessage, Exception> failed = new IdentityHashMap<>();
+        if (messages.isEmpty()) {
+            return failed;
+        }
+        try {
+            mailSender.send(messages.toArray(new MimeMessage[0]));
+        } catch (MailSendException e) {
+            e.getFailedMessages().forEach((message, error) -> failed.put((MimeMessage) message, error));
+            if (failed.isEmpty()) {
+                messages.forEach(message -> failed.put(message, e));
+            }
+        } catch (MailException e) {
+            // E.g. authentication: nothing was sent
+            messages.forEach(message -> failed.put(message, e));
+        }
+        return failed;
+    }
+}
@@ -0,0 +1,247 @@
+package org.example.backendclerkio.service;
+
+import jakarta.annotation.PreDestroy;
+import org.example.backendclerkio.entity.Product;
+import org.example.backendclerkio.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Optional inventory mode for the few products that take most stock writes during a promotion
+// (inventory.hot.enabled, inventory.hot.product-ids). Their stock is owned by sharded in-memory counters
+// instead of the product row, so checkouts don't queue on its row lock. Every change is journaled to local disk
+// before it is acknowledged, and the changes are written to the product table in coalesced batches every
+// inventory.hot.flush-interval-ms. After a crash the journal's unflushed changes are applied on startup, unless
+// spring.jpa.hibernate.ddl-auto recreated the product table, in which case there is nothing to apply them to.
+// Until a flush, product.stock_count for these products lags behind; the counters are the truth.
+@Service
+public class HotStockService {
+
+    private final ProductRepository productRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ProductCache productCache;
+    private final CatalogVersion catalogVersion;
+    private final boolean enabled;
+    private final Set<Integer> hotProductIds;
+    private final long flushIntervalMillis;
+    private final Path journalPath;
+    private final int shardCount;
+    private final boolean schemaRecreated;
+
+    private final Map<Integer, ShardedStockCounter> counters = new ConcurrentHashMap<>();
+    // Net change per product not yet written to the product table
+    private final Map<Integer, AtomicInteger> pending = new ConcurrentHashMap<>();
+    // Held while a change goes into pending and the journal, and while a flush drains pending, so a flush takes
+    // exactly the changes up to the journal sequence it checkpoints
+    private final Object journalLock = new Object();
+    private StockJournal journal;
+    private ScheduledExecutorService flusher;
+
+    public HotStockService(ProductRepository productRepository, PlatformTransactionManager transactionManager,
+                           ProductCache productCache, CatalogVersion catalogVersion,
+                           @Value("${inventory.hot.enabled:false}") boolean enabled,
+                           @Value("${inventory.hot.product-ids:}") String hotProductIds,
+                           @Value("${inventory.hot.flush-interval-ms:200}") long flushIntervalMillis,
+                           @Value("${inventory.hot.journal-path:data/hot-stock.journal}") String journalPath,
+                           @Value("${inventory.hot.shards:16}") int shardCount,
+                           @Value("${spring.jpa.hibernate.ddl-auto:none}") String ddlAuto) {
+        this.productRepository = productRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.productCache = productCache;
+        this.catalogVersion = catalogVersion;
+        this.enabled = enabled;
+        this.hotProductIds = parseIds(hotProductIds);
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.journalPath = Path.of(journalPath);
+        this.shardCount = shardCount;
+        this.schemaRecreated = ddlAuto.startsWith("create");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() throws IOException {
+        if (!enabled || hotProductIds.isEmpty() || journal != null) {
+            return;
+        }
+        journal = new StockJournal(journalPath);
+
+        Map<Integer, Integer> recovered = new HashMap<>();
+        for (StockJournal.Entry entry : journal.unflushedEntries()) {
+            recovered.merge(entry.productId(), entry.delta(), Integer::sum);
+        }
+        if (!recovered.isEmpty() && schemaRecreated) {
+            System.out.println("Discarded unflushed hot stock changes from the journal, the product table was recreated: " + recovered);
+        } else if (!recovered.isEmpty()) {
+            writeToDatabase(recovered);
+            System.out.println("Applied unflushed hot stock changes from the journal: " + recovered);
+        }
+        journal.checkpoint(journal.lastSequence());
+
+        for (Product product : productRepository.findAllById(hotProductIds)) {
+            counters.put(product.getProductId(), new ShardedStockCounter(shardCount, product.getStockCount()));
+            pending.put(product.getProductId(), new AtomicInteger());
+        }
+
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hot-stock-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        System.out.println("Hot stock counters active for products " + counters.keySet() + ".");
+    }
+
+    public boolean isHot(int productId) {
+        return counters.containsKey(productId);
+    }
+
+    public int available(int productId) {
+        ShardedStockCounter counter = counters.get(productId);
+        return counter != null ? counter.total() : 0;
+    }
+
+    // Takes quantity if at least reserved is left afterwards. Returns once the change is in the journal on disk.
+    public boolean tryTake(int productId, int quantity, int reserved) {
+        ShardedStockCounter counter = counter(productId);
+        if (!counter.tryTake(quantity, reserved)) {
+            return false;
+        }
+        try {
+            record(productId, -quantity);
+        } catch (UncheckedIOException e) {
+            counter.add(quantity);
+            throw e;
+        }
+        return true;
+    }
+
+    // Restocks, corrections and giving back a take whose checkout rolled back. Removing more than is left stops at
+    // zero, and only what was removed is journaled, so the product table ends up where the counter is.
+    public void adjust(int productId, int delta) {
+        ShardedStockCounter counter = counter(productId);
+        int applied = counter.add(delta);
+        if (applied == 0) {
+            return;
+        }
+        try {
+            record(productId, applied);
+        } catch (UncheckedIOException e) {
+            counter.add(-applied);
+            throw e;
+        }
+    }
+
+    // Writes every pending change to the product table in one transaction, then checkpoints the journal
+    public synchronized void flush() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        long upTo;
+        Map<Integer, Integer> deltas = new HashMap<>();
+        synchronized (journalLock) {
+            upTo = journal.lastSequence();
+            pending.forEach((productId, delta) -> {
+                int value = delta.getAndSet(0);
+                if (value != 0) {
+                    deltas.put(productId, value);
+                }
+            });
+        }
+
+        if (!deltas.isEmpty()) {
+            try {
+                writeToDatabase(deltas);
+            } catch (RuntimeException e) {
+                deltas.forEach((productId, delta) -> pending.get(productId).addAndGet(delta));
+                throw e;
+            }
+            for (int productId : deltas.keySet()) {
+                productCache.invalidate(productId);
+            }
+            catalogVersion.bump();
+        }
+        journal.checkpoint(upTo);
+    }
+
+    @PreDestroy
+    public synchronized void stop() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        if (journal != null) {
+            flush();
+            journal.close();
+            journal = null;
+        }
+    }
+
+    // Returns once the change is on disk. If it can't be, the change is undone and the caller undoes its counter.
+    private void record(int productId, int delta) {
+        long sequence;
+        synchronized (journalLock) {
+            try {
+                sequence = journal.append(productId, delta);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not journal stock change for product " + productId, e);
+            }
+            pending.get(productId).addAndGet(delta);
+        }
+        try {
+            journal.awaitDurable(sequence);
+        } catch (IOException e) {
+            // The line may still reach the disk with a later fsync, so it is cancelled by its inverse
+            synchronized (journalLock) {
+                pending.get(productId).addAndGet(-delta);
+                try {
+                    journal.append(productId, -delta);
+                } catch (IOException cancelFailed) {
+                    System.err.println("Could not cancel stock change for product " + productId + " in the journal: " + cancelFailed.getMessage());
+                }
+            }
+            throw new UncheckedIOException("Could not journal stock change for product " + productId, e);
+        }
+    }
+
+    private void writeToDatabase(Map<Integer, Integer> deltas) {
+        transactionTemplate.executeWithoutResult(status ->
+                deltas.forEach((productId, delta) -> productRepository.incrementStock(productId, delta)));
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not flush hot stock counters: " + e.getMessage());
+        }
+    }
+
+    private ShardedStockCounter counter(int productId) {
+        ShardedStockCounter counter = counters.get(productId);
+        if (counter == null) {
+            throw new IllegalArgumentException("Product " + productId + " is not a hot product");
+        }
+        return counter;
+    }
+
+    private static Set<Integer> parseIds(String ids) {
+        Set<Integer> parsed = new HashSet<>();
+        for (String id : ids.split(",")) {
+            if (!id.isBlank()) {
+                parsed.add(Integer.parseInt(id.trim()));
+            }
+        }
+        return parsed;
+    }
+}
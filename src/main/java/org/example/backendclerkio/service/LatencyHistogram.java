@@ -0,0 +1,64 @@
+package org.example.backendclerkio.service;
+
+import org.example.backendclerkio.dto.LatencyHistogramDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Fixed buckets from 1 ms to 10 s, cheap enough to record every request
+final class LatencyHistogram {
+    private static final long[] UPPER_BOUNDS_MILLIS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final LongAdder[] counts = new LongAdder[UPPER_BOUNDS_MILLIS.length + 1];
+    private final LongAdder totalNanos = new LongAdder();
+
+    LatencyHistogram() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    void record(long nanos) {
+        int bucket = 0;
+        while (bucket < UPPER_BOUNDS_MILLIS.length && nanos > TimeUnit.MILLISECONDS.toNanos(UPPER_BOUNDS_MILLIS[bucket])) {
+            bucket++;
+        }
+        counts[bucket].increment();
+        totalNanos.add(nanos);
+    }
+
+    LatencyHistogramDTO snapshot() {
+        List<Long> bounds = new ArrayList<>();
+        for (long bound : UPPER_BOUNDS_MILLIS) {
+            bounds.add(bound);
+        }
+        List<Long> snapshot = new ArrayList<>();
+        long count = 0;
+        for (LongAdder adder : counts) {
+            long bucketCount = adder.sum();
+            snapshot.add(bucketCount);
+            count += bucketCount;
+        }
+        double mean = count == 0 ? 0 : totalNanos.sum() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+        return new LatencyHistogramDTO(count, mean, percentile(snapshot, count, 0.50),
+                percentile(snapshot, count, 0.95), percentile(snapshot, count, 0.99), bounds, snapshot);
+    }
+
+    // Samples above the largest bound are reported as the largest bound
+    private static long percentile(List<Long> counts, long count, double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < UPPER_BOUNDS_MILLIS.length; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return UPPER_BOUNDS_MILLIS[i];
+            }
+        }
+        return UPPER_BOUNDS_MILLIS[UPPER_BOUNDS_MILLIS.length - 1];
+    }
+}
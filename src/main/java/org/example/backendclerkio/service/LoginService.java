@@ -0,0 +1,89 @@
+package org.example.backendclerkio.service;
+
+import jakarta.annotation.PreDestroy;
+import org.example.backendclerkio.JwtTokenManager;
+import org.example.backendclerkio.dto.LoginStatsDTO;
+import org.example.backendclerkio.entity.User;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Logins (POST /api/v1/users/login). The user is loaded once, on the request thread, and the password is checked on
+// a fixed pool of login.hashing.threads threads, so BCrypt can't take every request thread during a burst of logins.
+// At most login.hashing.queue-capacity logins wait for a hashing thread; beyond that login fails fast and the client
+// should retry later. Hash time and total login time, queue wait included, are kept as histograms.
+@Service
+public class LoginService {
+
+    // Thrown when every hashing thread is busy and the queue is full
+    public static class LoginUnavailableException extends RuntimeException {
+        public LoginUnavailableException(String message) {
+            super(message);
+        }
+    }
+
+    private final UserService userService;
+    private final JwtTokenManager jwtTokenManager;
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor hashingPool;
+    private final int queueCapacity;
+    // Checked against when the email is unknown, so that takes as long as a wrong password
+    private final String unknownUserHash;
+
+    private final LatencyHistogram hashTime = new LatencyHistogram();
+    private final LatencyHistogram totalTime = new LatencyHistogram();
+    private final LongAdder rejected = new LongAdder();
+
+    public LoginService(UserService userService, JwtTokenManager jwtTokenManager, PasswordEncoder passwordEncoder,
+                        @Value("${login.hashing.threads:0}") int threads,
+                        @Value("${login.hashing.queue-capacity:200}") int queueCapacity) {
+        this.userService = userService;
+        this.jwtTokenManager = jwtTokenManager;
+        this.passwordEncoder = passwordEncoder;
+        this.queueCapacity = queueCapacity;
+        this.unknownUserHash = passwordEncoder.encode(UUID.randomUUID().toString());
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.hashingPool = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "login-hashing-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // Completes with a token, or empty for a wrong email or password
+    public CompletableFuture<Optional<String>> login(String email, String password) {
+        long start = System.nanoTime();
+        Optional<User> user = email == null ? Optional.empty() : userService.findByUserEmail(email);
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long hashStart = System.nanoTime();
+                boolean matches = password != null
+                        && passwordEncoder.matches(password, user.map(User::getPasswordHash).orElse(unknownUserHash));
+                hashTime.record(System.nanoTime() - hashStart);
+                return user.filter(found -> matches).map(jwtTokenManager::generateJwtToken);
+            }, hashingPool).whenComplete((token, error) -> totalTime.record(System.nanoTime() - start));
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            totalTime.record(System.nanoTime() - start);
+            throw new LoginUnavailableException("Too many logins right now, please try again shortly");
+        }
+    }
+
+    public LoginStatsDTO stats() {
+        return new LoginStatsDTO(hashTime.snapshot(), totalTime.snapshot(), rejected.sum(),
+                hashingPool.getQueue().size(), queueCapacity, hashingPool.getCorePoolSize());
+    }
+
+    @PreDestroy
+    public void stop() {
+        hashingPool.shutdownNow();
+    }
+}
@@ -0,0 +1,172 @@
+package org.example.backendclerkio.service;
+
+import org.example.backendclerkio.dto.OrderProductResponseDTO;
+import org.example.backendclerkio.dto.OrderResponseDTO;
+import org.example.backendclerkio.entity.User;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// HTML body of the order confirmation email, from templates/order-confirmation.html. The template is split into
+// literal text and placeholders once, when the component is created; rendering only appends into a buffer sized
+// for the order. The {{#lines}}...{{/lines}} part is repeated per order line. Line breaks and indentation in the
+// template file are dropped.
+@Component
+public class OrderEmailRenderer {
+    static final String TEMPLATE = "templates/order-confirmation.html";
+    // Rough size of a line's values (image URL, title, amounts)
+    private static final int LINE_VALUES_LENGTH = 160;
+
+    private enum Field {
+        FIRST_NAME("firstName"), LAST_NAME("lastName"), CONFIRMED_AT("confirmedAt"), TOTAL("total"),
+        IMAGE("image"), TITLE("title"), PRICE("price"), QUANTITY("quantity"), SUBTOTAL("subtotal");
+
+        private final String placeholder;
+
+        Field(String placeholder) {
+            this.placeholder = placeholder;
+        }
+    }
+
+    // literals[i] comes before fields[i]; the last literal ends the part
+    private record Part(String[] literals, Field[] fields, int literalLength) {}
+
+    private final Part head;
+    private final Part line;
+    private final Part foot;
+
+    public OrderEmailRenderer() {
+        this(load(TEMPLATE));
+    }
+
+    OrderEmailRenderer(String template) {
+        String source = template.lines().map(String::trim).collect(Collectors.joining());
+        int linesStart = source.indexOf("{{#lines}}");
+        int linesEnd = source.indexOf("{{/lines}}");
+        if (linesStart < 0 || linesEnd < linesStart) {
+            throw new IllegalArgumentException("Template needs a {{#lines}}...{{/lines}} section");
+        }
+        head = compile(source.substring(0, linesStart));
+        line = compile(source.substring(linesStart + "{{#lines}}".length(), linesEnd));
+        foot = compile(source.substring(linesEnd + "{{/lines}}".length()));
+    }
+
+    // Uses the order's user as loaded with the order
+    public String render(User user, OrderResponseDTO order) {
+        List<OrderProductResponseDTO> lines = order.orderProducts();
+        String confirmedAt = LocalDateTime.ofInstant(
+                Instant.ofEpochMilli(order.orderDate()), // Convert milliseconds to Instant
+                ZoneOffset.ofHours(1)                      // Specify GMT+1
+        ).toString();
+
+        StringBuilder html = new StringBuilder(head.literalLength() + 128
+                + lines.size() * (line.literalLength() + LINE_VALUES_LENGTH) + foot.literalLength());
+        append(html, head, user, confirmedAt, null, 0, 0);
+        double totalPrice = 0.0;
+        for (OrderProductResponseDTO orderProduct : lines) {
+            double subtotal = orderProduct.priceAtTimeOfOrder() * orderProduct.quantity();
+            totalPrice += subtotal;
+            append(html, line, user, confirmedAt, orderProduct, subtotal, 0);
+        }
+        append(html, foot, user, confirmedAt, null, 0, totalPrice);
+        return html.toString();
+    }
+
+    private static void append(StringBuilder html, Part part, User user, String confirmedAt,
+                               OrderProductResponseDTO orderProduct, double subtotal, double total) {
+        Field[] fields = part.fields();
+        for (int i = 0; i < fields.length; i++) {
+            html.append(part.literals()[i]);
+            switch (fields[i]) {
+                case FIRST_NAME -> html.append(user.getFirstName());
+                case LAST_NAME -> html.append(user.getLastName());
+                case CONFIRMED_AT -> html.append(confirmedAt);
+                case TOTAL -> appendAmount(html, total);
+                case IMAGE -> {
+                    List<String> images = orderProduct.product().images();
+                    html.append(images != null && !images.isEmpty() ? images.get(0) : "");
+                }
+                case TITLE -> html.append(orderProduct.product().title());
+                case PRICE -> appendAmount(html, orderProduct.priceAtTimeOfOrder());
+                case QUANTITY -> html.append(orderProduct.quantity());
+                case SUBTOTAL -> appendAmount(html, subtotal);
+            }
+        }
+        html.append(part.literals()[fields.length]);
+    }
+
+    // Two decimals with a '.' separator, rounded half up like String.format("%.2f") in an English locale.
+    // Amounts that are whole cents, which prices and their multiples are, don't go through BigDecimal.
+    static void appendAmount(StringBuilder out, double amount) {
+        double cents = amount * 100;
+        double roundedCents = Math.rint(cents);
+        if (Math.abs(cents - roundedCents) > 1e-6 || Math.abs(roundedCents) >= 1e15) {
+            out.append(BigDecimal.valueOf(amount).setScale(2, RoundingMode.HALF_UP).toPlainString());
+            return;
+        }
+        long wholeCents = (long) roundedCents;
+        if (wholeCents < 0) {
+            out.append('-');
+            wholeCents = -wholeCents;
+        }
+        long fraction = wholeCents % 100;
+        out.append(wholeCents / 100).append('.');
+        if (fraction < 10) {
+            out.append('0');
+        }
+        out.append(fraction);
+    }
+
+    private static Part compile(String source) {
+        List<String> literals = new ArrayList<>();
+        List<Field> fields = new ArrayList<>();
+        int literalLength = 0;
+        int position = 0;
+        while (true) {
+            int start = source.indexOf("{{", position);
+            if (start < 0) {
+                break;
+            }
+            int end = source.indexOf("}}", start);
+            if (end < 0) {
+                throw new IllegalArgumentException("Unclosed placeholder in template: " + source.substring(start));
+            }
+            literals.add(source.substring(position, start));
+            literalLength += start - position;
+            fields.add(field(source.substring(start + 2, end)));
+            position = end + 2;
+        }
+        literals.add(source.substring(position));
+        literalLength += source.length() - position;
+        return new Part(literals.toArray(new String[0]), fields.toArray(new Field[0]), literalLength);
+    }
+
+    private static Field field(String placeholder) {
+        for (Field field : Field.values()) {
+            if (field.placeholder.equals(placeholder)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("Unknown placeholder in template: " + placeholder);
+    }
+
+    private static String load(String path) {
+        try (InputStream in = new ClassPathResource(path).getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read email template " + path, e);
+        }
+    }
+}
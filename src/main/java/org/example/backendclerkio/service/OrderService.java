@@ -1,76 +1,110 @@
 package org.example.backendclerkio.service;
 
 import org.example.backendclerkio.dto.CartItemRequestDTO;
+import org.example.backendclerkio.dto.CartLineDTO;
+import org.example.backendclerkio.dto.CartOperationDTO;
+import org.example.backendclerkio.dto.CursorSliceDTO;
 import org.example.backendclerkio.dto.CartItemResponseDTO;
+import org.example.backendclerkio.dto.OrderProductResponseDTO;
+import org.example.backendclerkio.dto.OrderResponseDTO;
+import org.example.backendclerkio.dto.OrderSummaryDTO;
 import org.example.backendclerkio.dto.PaymentRequestDTO;
-import org.example.backendclerkio.dto.UserResponseDTO;
+import org.example.backendclerkio.dto.ProductResponseDTO;
 import org.example.backendclerkio.entity.Order;
 import org.example.backendclerkio.entity.OrderProduct;
 import org.example.backendclerkio.entity.Product;
 import org.example.backendclerkio.entity.User;
+import org.example.backendclerkio.repository.OrderCursor;
 import org.example.backendclerkio.repository.OrderProductRepository;
 import org.example.backendclerkio.repository.OrderRepository;
 import org.example.backendclerkio.repository.ProductRepository;
 import org.example.backendclerkio.repository.UserRepository;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 
 @Service
 public class OrderService {
+    private static final int MAX_HISTORY_SIZE = 100;
 
     private final OrderRepository orderRepository;
     private final ProductRepository productRepository;
     private final OrderProductRepository orderProductRepository;
     private final UserRepository userRepository;
-
-    public OrderService(OrderRepository orderRepository, ProductRepository productRepository, OrderProductRepository orderProductRepository, UserRepository userRepository) {
+    private final ProductCache productCache;
+    private final ProductViewService productViewService;
+    private final CatalogVersion catalogVersion;
+    private final StockReservationService stockReservations;
+    private final HotStockService hotStock;
+    private final EmailOutboxService emailOutbox;
+
+    public OrderService(OrderRepository orderRepository, ProductRepository productRepository, OrderProductRepository orderProductRepository, UserRepository userRepository, ProductCache productCache, ProductViewService productViewService, CatalogVersion catalogVersion, StockReservationService stockReservations, HotStockService hotStock, EmailOutboxService emailOutbox) {
         this.orderRepository = orderRepository;
         this.orderProductRepository = orderProductRepository;
         this.productRepository = productRepository;
         this.userRepository = userRepository;
+        this.productCache = productCache;
+        this.productViewService = productViewService;
+        this.catalogVersion = catalogVersion;
+        this.stockReservations = stockReservations;
+        this.hotStock = hotStock;
+        this.emailOutbox = emailOutbox;
     }
 
 
-    private Order getCartForUser(User user) {
-        Optional<Order> optionalCart = orderRepository.findByUserAndPaidWithProducts(user, false);
+    // The user id comes from the request's token, so the user isn't loaded: the reference is only used to find and
+    // create the cart. A user deleted since the token was issued fails on the cart's foreign key.
+    private User userReference(int userId) {
+        return userRepository.getReferenceById(userId);
+    }
 
-        if (optionalCart.isPresent()) {
-            return optionalCart.get();
-        } else {
+    private Optional<Order> findCartForUser(User user) {
+        return orderRepository.findByUserAndPaidWithProducts(user, false);
+    }
+
+    // Only adding to the cart creates it, so reading an empty cart never writes
+    private Order getOrCreateCartForUser(User user) {
+        return findCartForUser(user).orElseGet(() -> {
             Order newCart = new Order();
             newCart.setUser(user);
             newCart.setOrderDate(System.currentTimeMillis());
             newCart.setPaid(false);
             return orderRepository.save(newCart);
-        }
+        });
     }
 
-    public void addToCart(UserResponseDTO userDTO, CartItemRequestDTO cartItemDTO) throws Exception {
-        // Fetch the user entity from the DTO
-        User user = userRepository.findById(userDTO.userId())
-                .orElseThrow(() -> new Exception("User not found"));
+    // Rolls back on the checked exceptions too, so a refused add doesn't leave a created cart or a changed hold
+    @Transactional(rollbackFor = Exception.class)
+    public void addToCart(int userId, CartItemRequestDTO cartItemDTO) throws Exception {
+        User user = userReference(userId);
 
         // Fetch the product entity
         Product product = productRepository.findById(cartItemDTO.productId())
                 .orElseThrow(() -> new Exception("Product not found"));
 
-        if (product.getStockCount() <= 0) {
+        if (stockCount(product) <= 0) {
             throw new Exception("Product is out of stock");
         }
 
         // Determine the price at time of order
-        double priceAtTimeOfOrder = product.getPrice();
-        if (product.getDiscountPrice() != 0 && product.getDiscountPrice() < product.getPrice()) {
-            priceAtTimeOfOrder = product.getDiscountPrice();
-        }
+        double priceAtTimeOfOrder = priceFor(product);
 
         // Get or create the cart (Order entity)
-        Order cart = getCartForUser(user);
+        Order cart = getOrCreateCartForUser(user);
+        // An unpaid order's date is its last activity, which CartSweeper uses to find abandoned carts
+        cart.setOrderDate(System.currentTimeMillis());
 
         // Check if the product is already in the cart
         Optional<OrderProduct> optionalOrderProduct = cart.getOrderProducts().stream()
@@ -78,7 +112,10 @@ public class OrderService {
                 .findFirst();
 
         int requestedQuantity = cartItemDTO.quantity();
-        int availableStock = product.getStockCount();
+
+        // Holds are changed in memory right away, so they are put back if the transaction rolls back
+        int previousHold = stockReservations.heldFor(cart.getId(), product.getProductId());
+        afterRollback(() -> stockReservations.restore(cart.getId(), product.getProductId(), previousHold));
 
         if (optionalOrderProduct.isPresent()) {
             // Update the quantity
@@ -86,7 +123,8 @@ public class OrderService {
             int currentQuantityInCart = orderProduct.getQuantity();
             int newTotalQuantity = currentQuantityInCart + requestedQuantity;
 
-            if (newTotalQuantity > availableStock) {
+            // Holds the stock for the line until checkout or until the reservation expires
+            if (!stockReservations.reserve(cart.getId(), product.getProductId(), newTotalQuantity, stockCount(product))) {
                 throw new Exception("Requested quantity exceeds available stock");
             }
 
@@ -97,8 +135,8 @@ public class OrderService {
                 orderProduct.setPriceAtTimeOfOrder(priceAtTimeOfOrder);
             }
         } else {
-            // Check if requested quantity exceeds available stock
-            if (requestedQuantity > availableStock) {
+            // Check if requested quantity exceeds available stock, and hold it if not
+            if (!stockReservations.reserve(cart.getId(), product.getProductId(), requestedQuantity, stockCount(product))) {
                 throw new Exception("Requested quantity exceeds available stock");
             }
 
@@ -116,40 +154,26 @@ public class OrderService {
         // Save the cart (cascades to OrderProduct)
         orderRepository.save(cart);
     }
-    public List<CartItemResponseDTO> getAllProductsInCart(UserResponseDTO userDTO) throws Exception {
-        User user = userRepository.findById(userDTO.userId())
-                .orElseThrow(() -> new Exception("User not found"));
-
-        Order cart = getCartForUser(user);
-
-        // Map OrderProduct entities to CartItemResponseDTOs
-        List<CartItemResponseDTO> cartItemsDTO = cart.getOrderProducts().stream()
-                .map(orderProduct -> {
-                    Product product = orderProduct.getProduct();
-                    String imageUrl = product.getImages() != null && !product.getImages().isEmpty()
-                            ? product.getImages().get(0)
-                            : null;
-                    double originalPrice = product.getPrice();
-                    return new CartItemResponseDTO(
-                            product.getProductId(),
-                            product.getTitle(),
-                            orderProduct.getQuantity(),
-                            orderProduct.getPriceAtTimeOfOrder(),
-                            originalPrice,                // Populate originalPrice
-                            imageUrl
-                    );
-                })
+    // One query for all lines with their product's name, current price and an image; no cart means an empty list
+    @Transactional(readOnly = true)
+    public List<CartItemResponseDTO> getAllProductsInCart(int userId) throws Exception {
+        return orderProductRepository.findCartLinesByUserId(userId).stream()
+                .map(line -> new CartItemResponseDTO(
+                        line.productId(),
+                        line.productName(),
+                        line.quantity(),
+                        line.priceAtTimeOfOrder(),
+                        line.price(),                // Populate originalPrice
+                        line.imageUrl()
+                ))
                 .toList();
-
-        return cartItemsDTO;
     }
-    public void removeItemFromCart(UserResponseDTO userDTO, CartItemResponseDTO cartItemResponseDTO) throws Exception {
-        // Fetch the user entity from the DTO
-        User user = userRepository.findById(userDTO.userId())
-                .orElseThrow(() -> new Exception("User not found"));
+    @Transactional(rollbackFor = Exception.class)
+    public void removeItemFromCart(int userId, CartItemResponseDTO cartItemResponseDTO) throws Exception {
+        User user = userReference(userId);
 
-        // Get or create the cart (Order entity)
-        Order cart = getCartForUser(user);
+        Order cart = findCartForUser(user)
+                .orElseThrow(() -> new Exception("Product not found in cart"));
 
         // Find the OrderProduct corresponding to the given product ID
         Optional<OrderProduct> optionalOrderProduct = cart.getOrderProducts().stream()
@@ -164,27 +188,223 @@ public class OrderService {
 
             // Since orphanRemoval = true, the OrderProduct will be deleted from the database
             orderRepository.save(cart);
+            int previousHold = stockReservations.heldFor(cart.getId(), cartItemResponseDTO.productId());
+            afterRollback(() -> stockReservations.restore(cart.getId(), cartItemResponseDTO.productId(), previousHold));
+            stockReservations.release(cart.getId(), cartItemResponseDTO.productId());
         } else {
             throw new Exception("Product not found in cart");
         }
     }
 
 
+    // Applies a list of cart changes with one load of the cart and its products, in one transaction, and returns
+    // the resulting cart. Operations are folded into a final quantity per product first, so holds are only changed
+    // once per product. If any line can't be covered by the stock, nothing is changed. Removing a product that is
+    // not in the cart is a no-op, so a client can replay the same batch.
+    @Transactional
+    public List<CartItemResponseDTO> updateCart(int userId, List<CartOperationDTO> operations) throws Exception {
+        User user = userReference(userId);
+
+        Optional<Order> existingCart = findCartForUser(user);
+        Map<Integer, OrderProduct> linesByProductId = new HashMap<>();
+        existingCart.ifPresent(cart -> cart.getOrderProducts()
+                .forEach(line -> linesByProductId.put(line.getProduct().getProductId(), line)));
+
+        Map<Integer, Integer> quantities = new TreeMap<>();
+        linesByProductId.forEach((productId, line) -> quantities.put(productId, line.getQuantity()));
+        for (CartOperationDTO operation : operations) {
+            if (operation.action() == null) {
+                throw new IllegalArgumentException("Missing action for product: " + operation.productId());
+            }
+            switch (operation.action()) {
+                case ADD -> {
+                    if (operation.quantity() <= 0) {
+                        throw new IllegalArgumentException("Quantity must be positive for product: " + operation.productId());
+                    }
+                    quantities.merge(operation.productId(), operation.quantity(), Integer::sum);
+                }
+                case SET -> {
+                    if (operation.quantity() < 0) {
+                        throw new IllegalArgumentException("Quantity can't be negative for product: " + operation.productId());
+                    }
+                    quantities.put(operation.productId(), operation.quantity());
+                }
+                case REMOVE -> quantities.put(operation.productId(), 0);
+            }
+        }
+
+        // Product id order, like checkout, so concurrent updates take the hold stripes in the same order
+        Map<Integer, Integer> changes = new TreeMap<>();
+        quantities.forEach((productId, quantity) -> {
+            OrderProduct line = linesByProductId.get(productId);
+            if (quantity != (line != null ? line.getQuantity() : 0)) {
+                changes.put(productId, quantity);
+            }
+        });
+        if (changes.isEmpty()) {
+            return getAllProductsInCart(userId);
+        }
+
+        List<Integer> neededProductIds = changes.entrySet().stream()
+                .filter(change -> change.getValue() > 0 && !linesByProductId.containsKey(change.getKey()))
+                .map(Map.Entry::getKey)
+                .toList();
+        Map<Integer, Product> productsById = new HashMap<>();
+        for (Product product : productRepository.findAllById(neededProductIds)) {
+            productsById.put(product.getProductId(), product);
+        }
+
+        Order cart = existingCart.orElseGet(() -> getOrCreateCartForUser(user));
+        cart.setOrderDate(System.currentTimeMillis());
+        for (Map.Entry<Integer, Integer> change : changes.entrySet()) {
+            int productId = change.getKey();
+            int quantity = change.getValue();
+            OrderProduct line = linesByProductId.get(productId);
+
+            // Holds are changed in memory right away, so they are put back if the transaction rolls back
+            int previousHold = stockReservations.heldFor(cart.getId(), productId);
+            afterRollback(() -> stockReservations.restore(cart.getId(), productId, previousHold));
+
+            if (quantity == 0) {
+                cart.getOrderProducts().remove(line);
+                stockReservations.release(cart.getId(), productId);
+                continue;
+            }
+
+            Product product = line != null ? line.getProduct() : productsById.get(productId);
+            if (product == null) {
+                throw new IllegalArgumentException("Product not found: " + productId);
+            }
+            if (!stockReservations.reserve(cart.getId(), productId, quantity, stockCount(product))) {
+                throw new IllegalArgumentException("Requested quantity exceeds available stock for product: " + product.getTitle());
+            }
+            if (line == null) {
+                line = new OrderProduct();
+                line.setOrder(cart);
+                line.setProduct(product);
+                line.setPriceAtTimeOfOrder(priceFor(product));
+                cart.getOrderProducts().add(line);
+            }
+            line.setQuantity(quantity);
+        }
+
+        orderRepository.save(cart);
+        // The cart query flushes the changes first
+        return getAllProductsInCart(userId);
+    }
+
+    // Stock is taken with one conditional UPDATE per line, so no row is read and written back and no lock is held
+    // outside the database. A line's own hold counts as available to it, other carts' holds don't; a line whose hold
+    // expired still goes through if the stock nobody holds covers it. A line without enough stock throws, which rolls
+    // back the lines before it and the payment.
+    // Once a line's stock is taken its hold is dropped right away rather than after the commit, and restored if the
+    // checkout rolls back, so a checkout of another cart holding the same product doesn't count stock twice.
+    @Transactional
     public void checkout(Order order) {
+        long orderDate = LocalDateTime.now().toInstant(ZoneOffset.ofHours(1)).toEpochMilli();
+        if (orderRepository.markPaid(order.getId(), orderDate) == 0) {
+            throw new IllegalArgumentException("Order is already checked out");
+        }
+
+        // The lines are read in one query rather than through the order's lazily loaded products.
+        // Product id order, so two checkouts sharing products lock their rows in the same order and can't deadlock
+        List<CartLineDTO> lines = new ArrayList<>(orderProductRepository.findLinesByOrderId(order.getId()));
+        if (lines.isEmpty()) {
+            throw new IllegalArgumentException("Invalid order details");
+        }
+        lines.sort(Comparator.comparingInt(CartLineDTO::productId));
+        for (CartLineDTO line : lines) {
+            int productId = line.productId();
+            int quantity = line.quantity();
+            int hold;
+            if (hotStock.isHot(productId)) {
+                // Taken from the in-memory counter right away, so it has to be given back if the checkout rolls back
+                hold = stockReservations.takeHeld(order.getId(), productId,
+                        reservedByOthers -> hotStock.tryTake(productId, quantity, reservedByOthers));
+                if (hold < 0) {
+                    throw new IllegalArgumentException("Insufficient stock for product: " + line.productName());
+                }
+                afterRollback(() -> hotStock.adjust(productId, quantity));
+            } else {
+                if (!decrementStock(order.getId(), productId, quantity)) {
+                    throw new IllegalArgumentException("Insufficient stock for product: " + line.productName());
+                }
+                hold = stockReservations.releaseTaken(order.getId(), productId);
+            }
+            afterRollback(() -> stockReservations.restore(order.getId(), productId, hold));
+        }
+
+        stockReservations.deleteRows(order.getId());
+        // Sent by EmailOutboxDispatcher once this commits; a rolled back checkout sends nothing
+        emailOutbox.enqueue(order.getId(), order.getUser().getUserEmail());
+
         order.setPaid(true);
-        order.setOrderDate(LocalDateTime.now().toInstant(ZoneOffset.ofHours(1)).toEpochMilli());
+        order.setOrderDate(orderDate);
 
-        for (OrderProduct orderProduct : order.getOrderProducts()) {
-            Product product = orderProduct.getProduct();
-            int newStockCount = product.getStockCount() - orderProduct.getQuantity();
+        List<Integer> productIds = lines.stream().map(CartLineDTO::productId).toList();
+        afterCommit(() -> {
+            stockReservations.releaseAll(order.getId(), productIds);
+            for (int productId : productIds) {
+                productCache.invalidate(productId);
+            }
+            catalogVersion.bump();
+            emailOutbox.wakeUp();
+        });
+    }
+
+    // The UPDATE may wait for another checkout of the product to commit. If that one took stock its cart held, the
+    // hold read before waiting is stale: it has become a decrement. So a refused UPDATE is tried again as long as
+    // other carts hold less than before.
+    private boolean decrementStock(int orderId, int productId, int quantity) {
+        int reservedByOthers = stockReservations.heldByOthers(orderId, productId);
+        while (productRepository.decrementStock(productId, quantity, reservedByOthers) == 0) {
+            int current = stockReservations.heldByOthers(orderId, productId);
+            if (current >= reservedByOthers) {
+                return false;
+            }
+            reservedByOthers = current;
+        }
+        return true;
+    }
 
-            if (newStockCount < 0) {
-                throw new IllegalArgumentException("Insufficient stock for product: " + product.getTitle());
+    private static void afterRollback(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    action.run();
+                }
             }
+        });
+    }
 
-            product.setStockCount(newStockCount);
+    private static double priceFor(Product product) {
+        if (product.getDiscountPrice() != 0 && product.getDiscountPrice() < product.getPrice()) {
+            return product.getDiscountPrice();
         }
-        orderRepository.save(order);
+        return product.getPrice();
+    }
+
+    // Stock for hot products is held by HotStockService, the product row lags behind it
+    private int stockCount(Product product) {
+        return hotStock.isHot(product.getProductId()) ? hotStock.available(product.getProductId()) : product.getStockCount();
+    }
+
+    // Readers must not see the new catalog version or refill the cache before the stock change is visible
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 
 
@@ -192,6 +412,11 @@ public class OrderService {
         return orderRepository.findOrderById(orderId);
     }
 
+    // The order and its user, without the lines, which checkout reads itself
+    public Optional<Order> findOrderForCheckout(int orderId) {
+        return orderRepository.findWithUserById(orderId);
+    }
+
 
 
     public boolean paymentIsValid(PaymentRequestDTO paymentRequestDTO){
@@ -205,6 +430,73 @@ public class OrderService {
     public List<Order> findOrdersByUserIdAndPaidTrue(int userId) {
         return orderRepository.findOrdersByUserIdAndPaidTrue(userId).get();
     }
+
+    @Transactional(readOnly = true)
+    public List<OrderResponseDTO> findOrderViewsByUserIdAndPaidTrue(int userId) {
+        return toOrderViews(orderRepository.findOrderRowsByUserIdAndPaid(userId, true));
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<OrderResponseDTO> findActiveOrderView(int userId) {
+        return toOrderViews(orderRepository.findOrderRowsByUserIdAndPaid(userId, false)).stream().findFirst();
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<OrderResponseDTO> findOrderView(int orderId) {
+        return toOrderViews(orderRepository.findOrderRowById(orderId)).stream().findFirst();
+    }
+
+    // Empty unless the order is paid and belongs to the user; the cart isn't an order yet
+    @Transactional(readOnly = true)
+    public Optional<OrderResponseDTO> findOrderViewForUser(int orderId, int userId) {
+        return toOrderViews(orderRepository.findPaidOrderRowByIdAndUserId(orderId, userId)).stream().findFirst();
+    }
+
+    // A page of the user's paid orders, newest first, as summaries; findOrderViewForUser has the lines
+    @Transactional(readOnly = true)
+    public CursorSliceDTO<OrderSummaryDTO> findOrderHistory(int userId, String cursor, int size) {
+        if (size < 1 || size > MAX_HISTORY_SIZE) {
+            throw new IllegalArgumentException("Size must be between 1 and " + MAX_HISTORY_SIZE);
+        }
+        OrderCursor after = cursor == null || cursor.isBlank() ? OrderCursor.START : OrderCursor.decode(cursor);
+        List<OrderSummaryDTO> rows = orderRepository.findOrderSummaries(userId, after.lastOrderDate(), after.lastId(),
+                PageRequest.of(0, size + 1));
+
+        boolean hasNext = rows.size() > size;
+        List<OrderSummaryDTO> content = hasNext ? rows.subList(0, size) : rows;
+        String nextCursor = null;
+        if (hasNext) {
+            OrderSummaryDTO last = content.get(content.size() - 1);
+            nextCursor = new OrderCursor(last.orderDate(), last.id()).encode();
+        }
+        return new CursorSliceDTO<>(content, size, hasNext, nextCursor);
+    }
+
+    // Orders, their lines and the line products are each read with one query, whatever the number of orders
+    private List<OrderResponseDTO> toOrderViews(List<Object[]> orderRows) {
+        if (orderRows.isEmpty()) {
+            return List.of();
+        }
+        List<Integer> orderIds = orderRows.stream().map(row -> (Integer) row[0]).toList();
+        List<Object[]> lineRows = orderProductRepository.findLineRowsByOrderIds(orderIds);
+
+        List<Integer> productIds = lineRows.stream().map(row -> (Integer) row[2]).distinct().toList();
+        Map<Integer, ProductResponseDTO> productsById = new HashMap<>();
+        for (ProductResponseDTO product : productViewService.findViewsByIds(productIds)) {
+            productsById.put(product.id(), product);
+        }
+
+        Map<Integer, List<OrderProductResponseDTO>> linesByOrderId = new HashMap<>();
+        for (Object[] row : lineRows) {
+            linesByOrderId.computeIfAbsent((Integer) row[0], id -> new ArrayList<>())
+                    .add(new OrderProductResponseDTO((Integer) row[1], productsById.get((Integer) row[2]), (Double) row[3], (Integer) row[4]));
+        }
+
+        return orderRows.stream()
+                .map(row -> new OrderResponseDTO((Integer) row[0], (Long) row[1], (Boolean) row[2],
+                        linesByOrderId.getOrDefault((Integer) row[0], List.of())))
+                .toList();
+    }
 }
 
 
@@ -0,0 +1,110 @@
+package org.example.backendclerkio.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.backendclerkio.dto.CacheStatsDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+// Read-through cache of serialized product views, bounded by size (LRU) and by age (TTL).
+@Component
+public class ProductCache {
+
+    private record Entry(byte[] json, long expiresAt) {}
+
+    private final ObjectMapper objectMapper;
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Map<Integer, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    // Bumped on every invalidation so a load that raced with a write doesn't put a stale view back
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public ProductCache(ObjectMapper objectMapper,
+                        @Value("${product.cache.max-size:10000}") int maxSize,
+                        @Value("${product.cache.ttl-seconds:60}") long ttlSeconds) {
+        this.objectMapper = objectMapper;
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                if (size() > ProductCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // Returns the cached JSON for the product, loading and serializing it on a miss. Returns null if the loader does.
+    public byte[] getOrLoad(int productId, IntFunction<?> loader) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(productId);
+            if (entry != null) {
+                if (entry.expiresAt() > now) {
+                    hits.increment();
+                    return entry.json();
+                }
+                entries.remove(productId);
+                evictions.increment();
+            }
+        }
+        misses.increment();
+
+        long invalidationsBeforeLoad = invalidations.get();
+        Object view = loader.apply(productId);
+        if (view == null) {
+            return null;
+        }
+        byte[] json = serialize(view);
+
+        synchronized (entries) {
+            if (invalidations.get() == invalidationsBeforeLoad) {
+                entries.put(productId, new Entry(json, now + ttlMillis));
+            }
+        }
+        return json;
+    }
+
+    public void invalidate(int productId) {
+        synchronized (entries) {
+            invalidations.incrementAndGet();
+            entries.remove(productId);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            invalidations.incrementAndGet();
+            entries.clear();
+        }
+    }
+
+    public CacheStatsDTO stats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new CacheStatsDTO(hits.sum(), misses.sum(), evictions.sum(), size, maxSize);
+    }
+
+    private byte[] serialize(Object view) {
+        try {
+            return objectMapper.writeValueAsBytes(view);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize product view", e);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package org.example.backendclerkio.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.example.backendclerkio.dto.ImportRowErrorDTO;
+import org.example.backendclerkio.dto.ProductImportResultDTO;
+import org.example.backendclerkio.dto.ProductRequestDTO;
+import org.example.backendclerkio.entity.Category;
+import org.example.backendclerkio.entity.Product;
+import org.example.backendclerkio.entity.Tag;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Bulk product import for POST /api/v1/products/import. The body is read line by line and written in chunks,
+// each chunk in its own transaction and persistence context, so neither the file nor the import is held in memory.
+// A chunk that fails is rolled back and reported; the chunks before and after it are kept.
+@Service
+public class ProductImportService {
+    public static final String NDJSON = "application/x-ndjson";
+    public static final String CSV = "text/csv";
+
+    // Only the first errors are returned, the rest are counted
+    private static final int MAX_REPORTED_ERRORS = 100;
+    private static final List<String> CSV_COLUMNS = List.of("title", "description", "price", "discountPrice", "stock", "category", "images", "tags");
+
+    private record ImportRow(long line, ProductRequestDTO product) {}
+
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final CatalogNameResolver nameResolver;
+    private final ProductSearchIndex searchIndex;
+    private final CatalogVersion catalogVersion;
+    private final int chunkSize;
+
+    public ProductImportService(EntityManager entityManager, PlatformTransactionManager transactionManager, ObjectMapper objectMapper,
+                                CatalogNameResolver nameResolver, ProductSearchIndex searchIndex, CatalogVersion catalogVersion,
+                                @Value("${product.import.chunk-size:1000}") int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("product.import.chunk-size must be positive");
+        }
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.nameResolver = nameResolver;
+        this.searchIndex = searchIndex;
+        this.catalogVersion = catalogVersion;
+        this.chunkSize = chunkSize;
+    }
+
+    public ProductImportResultDTO importProducts(InputStream body, String contentType) throws IOException {
+        boolean csv = isCsv(contentType);
+        long start = System.nanoTime();
+        long rowsRead = 0;
+        long rowsImported = 0;
+        long rowsFailed = 0;
+        List<ImportRowErrorDTO> errors = new ArrayList<>();
+        List<ImportRow> chunk = new ArrayList<>(chunkSize);
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            Map<String, Integer> csvHeader = null;
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (csv && csvHeader == null) {
+                    csvHeader = parseCsvHeader(line);
+                    continue;
+                }
+
+                rowsRead++;
+                try {
+                    ProductRequestDTO product = csv ? parseCsvRow(line, csvHeader) : parseJsonRow(line);
+                    validate(product);
+                    chunk.add(new ImportRow(lineNumber, product));
+                } catch (IllegalArgumentException e) {
+                    rowsFailed++;
+                    addError(errors, lineNumber, e.getMessage());
+                }
+
+                if (chunk.size() == chunkSize) {
+                    int imported = writeChunk(chunk, errors);
+                    rowsImported += imported;
+                    rowsFailed += chunk.size() - imported;
+                    chunk.clear();
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            int imported = writeChunk(chunk, errors);
+            rowsImported += imported;
+            rowsFailed += chunk.size() - imported;
+        }
+        if (rowsImported > 0) {
+            catalogVersion.bump();
+        }
+
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        double rowsPerSecond = elapsedMillis == 0 ? rowsImported : rowsImported * 1000.0 / elapsedMillis;
+        System.out.println("Imported " + rowsImported + " of " + rowsRead + " products in " + elapsedMillis + " ms (" + Math.round(rowsPerSecond) + " rows/s).");
+        return new ProductImportResultDTO(rowsRead, rowsImported, rowsFailed, elapsedMillis, rowsPerSecond, errors);
+    }
+
+    // Returns the number of rows written: the whole chunk, or none if it was rolled back
+    private int writeChunk(List<ImportRow> chunk, List<ImportRowErrorDTO> errors) {
+        Set<String> categoryNames = new HashSet<>();
+        Set<String> tagNames = new HashSet<>();
+        for (ImportRow row : chunk) {
+            categoryNames.add(row.product().category());
+            if (row.product().tags() != null) {
+                tagNames.addAll(row.product().tags());
+            }
+        }
+
+        try {
+            Map<String, Category> categories = nameResolver.resolveCategories(categoryNames);
+            Map<String, Tag> tags = nameResolver.resolveTagsByName(tagNames);
+            int[] ids = transactionTemplate.execute(status -> insertChunk(chunk, categories, tags));
+
+            for (int i = 0; i < chunk.size(); i++) {
+                ProductRequestDTO product = chunk.get(i).product();
+                searchIndex.index(ids[i], product.title(), product.description(), product.category(), product.tags());
+            }
+            return chunk.size();
+        } catch (RuntimeException e) {
+            addError(errors, chunk.get(0).line(), "Rows on lines " + chunk.get(0).line() + "-" + chunk.get(chunk.size() - 1).line()
+                    + " were not imported: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private int[] insertChunk(List<ImportRow> chunk, Map<String, Category> categories, Map<String, Tag> tags) {
+        List<Product> products = new ArrayList<>(chunk.size());
+        for (ImportRow row : chunk) {
+            ProductRequestDTO productRequestDTO = row.product();
+            Set<Tag> productTags = new HashSet<>();
+            if (productRequestDTO.tags() != null) {
+                for (String tagName : productRequestDTO.tags()) {
+                    if (tagName != null) {
+                        productTags.add(tags.get(tagName));
+                    }
+                }
+            }
+            Product product = new Product(
+                    productRequestDTO.title(),
+                    productRequestDTO.description(),
+                    productRequestDTO.price(),
+                    productRequestDTO.discountPrice(),
+                    productRequestDTO.stockCount(),
+                    categories.get(productRequestDTO.category()),
+                    productRequestDTO.images() == null ? new ArrayList<>() : new ArrayList<>(productRequestDTO.images()),
+                    productTags);
+            entityManager.persist(product);
+            products.add(product);
+        }
+        // Ids come from the pooled sequence, so the flush goes out as JDBC batches of hibernate.jdbc.batch_size rows
+        entityManager.flush();
+        entityManager.clear();
+
+        int[] ids = new int[products.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = products.get(i).getProductId();
+        }
+        return ids;
+    }
+
+    private static boolean isCsv(String contentType) {
+        if (contentType != null) {
+            String mediaType = contentType.split(";")[0].trim().toLowerCase(Locale.ROOT);
+            if (mediaType.equals(CSV)) {
+                return true;
+            }
+            if (mediaType.equals(NDJSON)) {
+                return false;
+            }
+        }
+        throw new IllegalArgumentException("Content type must be " + NDJSON + " or " + CSV);
+    }
+
+    private ProductRequestDTO parseJsonRow(String line) {
+        try {
+            return objectMapper.readValue(line, ProductRequestDTO.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid JSON: " + e.getOriginalMessage());
+        }
+    }
+
+    private static void validate(ProductRequestDTO product) {
+        if (product.title() == null || product.title().isBlank()) {
+            throw new IllegalArgumentException("Title is required");
+        }
+        if (product.price() < 0 || product.discountPrice() < 0) {
+            throw new IllegalArgumentException("Price must be non-negative");
+        }
+        if (product.stockCount() < 0) {
+            throw new IllegalArgumentException("Stock must be non-negative");
+        }
+    }
+
+    private static Map<String, Integer> parseCsvHeader(String line) {
+        Map<String, Integer> header = new HashMap<>();
+        List<String> names = splitCsvLine(line);
+        for (int i = 0; i < names.size(); i++) {
+            header.put(names.get(i).trim(), i);
+        }
+        for (String column : List.of("title", "price")) {
+            if (!header.containsKey(column)) {
+                throw new IllegalArgumentException("CSV header must contain " + CSV_COLUMNS + ", missing " + column);
+            }
+        }
+        return header;
+    }
+
+    // Images and tags are '|' separated inside their column
+    private static ProductRequestDTO parseCsvRow(String line, Map<String, Integer> header) {
+        List<String> values = splitCsvLine(line);
+        String price = csvValue(values, header, "price");
+        if (price == null) {
+            throw new IllegalArgumentException("Price is required");
+        }
+        try {
+            String discountPrice = csvValue(values, header, "discountPrice");
+            String stock = csvValue(values, header, "stock");
+            return new ProductRequestDTO(
+                    csvValue(values, header, "title"),
+                    csvValue(values, header, "description"),
+                    Double.parseDouble(price),
+                    discountPrice == null ? Double.parseDouble(price) : Double.parseDouble(discountPrice),
+                    stock == null ? 0 : Integer.parseInt(stock),
+                    csvValue(values, header, "category"),
+                    splitList(csvValue(values, header, "images")),
+                    new HashSet<>(splitList(csvValue(values, header, "tags"))));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number in CSV row");
+        }
+    }
+
+    private static String csvValue(List<String> values, Map<String, Integer> header, String column) {
+        Integer index = header.get(column);
+        if (index == null || index >= values.size() || values.get(index).isEmpty()) {
+            return null;
+        }
+        return values.get(index);
+    }
+
+    private static List<String> splitList(String value) {
+        if (value == null) {
+            return List.of();
+        }
+        List<String> items = new ArrayList<>();
+        for (String item : value.split("\\|")) {
+            if (!item.isBlank()) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+
+    // RFC 4180 fields on a single line: commas inside quotes and "" for a literal quote
+    static List<String> splitCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote in CSV row");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static void addError(List<ImportRowErrorDTO> errors, long line, String message) {
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(new ImportRowErrorDTO(line, message));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.example.backendclerkio.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+// In-memory inverted index over product title, description, tags and category name.
+// Every query token is matched as a prefix, so the storefront search box can ask it on every keystroke.
+@Component
+public class ProductSearchIndex {
+
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final NavigableMap<String, Set<Integer>> postings = new TreeMap<>();
+    private final Map<Integer, Set<String>> tokensByProduct = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public void index(int productId, String title, String description, String category, Collection<String> tags) {
+        Set<String> tokens = new HashSet<>();
+        tokens.addAll(tokenize(title));
+        tokens.addAll(tokenize(description));
+        tokens.addAll(tokenize(category));
+        if (tags != null) {
+            for (String tag : tags) {
+                tokens.addAll(tokenize(tag));
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(productId);
+            for (String token : tokens) {
+                postings.computeIfAbsent(token, t -> new HashSet<>()).add(productId);
+            }
+            tokensByProduct.put(productId, tokens);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int productId) {
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            tokensByProduct.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Returns the ids of products matching every token of the query, in ascending id order.
+    public SortedSet<Integer> search(String query) {
+        List<String> queryTokens = tokenize(query);
+        if (queryTokens.isEmpty()) {
+            return new TreeSet<>();
+        }
+
+        lock.readLock().lock();
+        try {
+            SortedSet<Integer> result = null;
+            for (String queryToken : queryTokens) {
+                SortedSet<Integer> matches = new TreeSet<>();
+                for (Set<Integer> ids : postings.subMap(queryToken, true, queryToken + Character.MAX_VALUE, false).values()) {
+                    matches.addAll(ids);
+                }
+                if (result == null) {
+                    result = matches;
+                } else {
+                    result.retainAll(matches);
+                }
+                if (result.isEmpty()) {
+                    break;
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return tokensByProduct.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeUnlocked(int productId) {
+        Set<String> tokens = tokensByProduct.remove(productId);
+        if (tokens == null) {
+            return;
+        }
+        for (String token : tokens) {
+            Set<Integer> ids = postings.get(token);
+            if (ids != null) {
+                ids.remove(productId);
+                if (ids.isEmpty()) {
+                    postings.remove(token);
+                }
+            }
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        List<String> tokens = new ArrayList<>();
+        for (String token : TOKEN_SEPARATOR.split(text.toLowerCase(Locale.ROOT))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
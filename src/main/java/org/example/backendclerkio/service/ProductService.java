@@ -1,16 +1,26 @@
 package org.example.backendclerkio.service;
 
+import org.example.backendclerkio.dto.CacheStatsDTO;
+import org.example.backendclerkio.dto.CursorSliceDTO;
 import org.example.backendclerkio.dto.ProductRequestDTO;
+import org.example.backendclerkio.dto.ProductResponseDTO;
 import org.example.backendclerkio.dto.ProductsRequestDTO;
 import org.example.backendclerkio.entity.Category;
 import org.example.backendclerkio.entity.Product;
 import org.example.backendclerkio.entity.Tag;
-import org.example.backendclerkio.repository.CategoryRepository;
+import org.example.backendclerkio.repository.ProductCursor;
+import org.example.backendclerkio.repository.ProductFilter;
 import org.example.backendclerkio.repository.ProductRepository;
-import org.example.backendclerkio.repository.TagRepository;
+import org.example.backendclerkio.repository.ProductRow;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
@@ -18,17 +28,27 @@ import java.util.*;
 
 @Service
 public class ProductService {
+    private static final int MAX_SCROLL_SIZE = 100;
+
     private final WebClient webClient;
 
     private final ProductRepository productRepository;
-    private final CategoryRepository categoryRepository;
-    private final TagRepository tagRepository;
-
-    public ProductService(ProductRepository productRepository, CategoryRepository categoryRepository, TagRepository tagRepository, WebClient.Builder webClient) {
+    private final CatalogNameResolver nameResolver;
+    private final ProductSearchIndex searchIndex;
+    private final ProductCache productCache;
+    private final ProductViewService productViewService;
+    private final CatalogVersion catalogVersion;
+    private final HotStockService hotStock;
+
+    public ProductService(ProductRepository productRepository, CatalogNameResolver nameResolver, WebClient.Builder webClient, ProductSearchIndex searchIndex, ProductCache productCache, ProductViewService productViewService, CatalogVersion catalogVersion, HotStockService hotStock) {
         this.productRepository = productRepository;
-        this.categoryRepository = categoryRepository;
-        this.tagRepository = tagRepository;
+        this.nameResolver = nameResolver;
         this.webClient = webClient.build();
+        this.searchIndex = searchIndex;
+        this.productCache = productCache;
+        this.productViewService = productViewService;
+        this.catalogVersion = catalogVersion;
+        this.hotStock = hotStock;
     }
 
     public Mono<ProductsRequestDTO> getProductsFromDummy() {
@@ -79,16 +99,8 @@ public class ProductService {
     public Product createProduct(ProductRequestDTO productRequestDTO) {
         String categoryName = productRequestDTO.category();
 
-        Category category = categoryRepository.findByCategoryName(categoryName)
-                .orElseGet(() -> categoryRepository.save(new Category(categoryName)));
-
-        Set<Tag> tags = new HashSet<>();
-        for (String tagName : productRequestDTO.tags()) {
-            Tag tag = tagRepository.findByTagName(tagName)
-                    .orElseGet(() -> tagRepository.save(new Tag(tagName)));
-
-            tags.add(tag);
-        }
+        Category category = nameResolver.resolveCategory(categoryName);
+        Set<Tag> tags = nameResolver.resolveTags(productRequestDTO.tags());
 
         Product product = new Product(
                 productRequestDTO.title(),
@@ -101,6 +113,8 @@ public class ProductService {
                 tags
         );
         productRepository.save(product);
+        searchIndex.index(product.getProductId(), productRequestDTO.title(), productRequestDTO.description(), categoryName, productRequestDTO.tags());
+        catalogVersion.bump();
 
         return product;
     }
@@ -110,27 +124,30 @@ public class ProductService {
         throw new IllegalArgumentException("Product not found");
     }
         productRepository.deleteById(id);
-
+        searchIndex.remove(id);
+        productCache.invalidate(id);
+        catalogVersion.bump();
     }
 
+    // Added in the database rather than read and written back, so a restock can't undo a concurrent checkout
     public Product updateStock(int id, int quantityToAdd) {
-        Product productToUpdate = productRepository.findById(id)
-                .orElseThrow(() -> new IllegalArgumentException("Product not found with ID: " + id));
-
         if (quantityToAdd < 0) {
             throw new IllegalArgumentException("Quantity to add must be non-negative");
         }
+        if (hotStock.isHot(id)) {
+            hotStock.adjust(id, quantityToAdd);
+        } else if (productRepository.incrementStock(id, quantityToAdd) == 0) {
+            throw new IllegalArgumentException("Product not found with ID: " + id);
+        }
 
-        int currentStock = productToUpdate.getStockCount();
-
-        int updatedStock = currentStock + quantityToAdd;
-
-
-        productToUpdate.setStockCount(updatedStock);
-
-        return productRepository.save(productToUpdate);
+        productCache.invalidate(id);
+        catalogVersion.bump();
+        return productRepository.findById(id).orElseThrow();
     }
 
+    // Runs in a transaction so the product stays managed: with @DynamicUpdate only the edited columns are written,
+    // and a hot product's stock_count, which the flusher changes underneath us, is left out of the UPDATE
+    @Transactional(rollbackFor = Exception.class)
     public Product updateProduct(int id, ProductRequestDTO productRequestDTO) {
         Product existingProduct = productRepository.findById(id).orElse(null);
         if (existingProduct == null) {
@@ -139,33 +156,160 @@ public class ProductService {
 
         String categoryName = productRequestDTO.category();
 
-        Category category = categoryRepository.findByCategoryName(categoryName)
-                .orElseGet(() -> categoryRepository.save(new Category(categoryName)));
-
-        Set<Tag> tags = new HashSet<>();
-        for (String tagName : productRequestDTO.tags()) {
-            Tag tag = tagRepository.findByTagName(tagName)
-                    .orElseGet(() -> tagRepository.save(new Tag(tagName)));
-            tags.add(tag);
-        }
+        Category category = nameResolver.resolveCategory(categoryName);
+        Set<Tag> tags = nameResolver.resolveTags(productRequestDTO.tags());
 
         existingProduct.setTitle(productRequestDTO.title());
         existingProduct.setDescription(productRequestDTO.description());
         existingProduct.setPrice(productRequestDTO.price());
         existingProduct.setDiscountPrice(productRequestDTO.discountPrice());
-        existingProduct.setStockCount(productRequestDTO.stockCount());
+        if (hotStock.isHot(id)) {
+            // The counter owns this product's stock; move it to the new level and let the flusher write it
+            int delta = productRequestDTO.stockCount() - hotStock.available(id);
+            hotStock.adjust(id, delta);
+            afterRollback(() -> hotStock.adjust(id, -delta));
+        } else {
+            existingProduct.setStockCount(productRequestDTO.stockCount());
+        }
         existingProduct.setCategory(category);
         existingProduct.setImages(productRequestDTO.images());
         existingProduct.setTags(tags);
 
-        return productRepository.save(existingProduct);
+        afterCommit(() -> {
+            searchIndex.index(id, productRequestDTO.title(), productRequestDTO.description(), categoryName, productRequestDTO.tags());
+            productCache.invalidate(id);
+            catalogVersion.bump();
+        });
+        return existingProduct;
     }
 
     public Product getProductById(int id) {
         return productRepository.findById(id).orElse(null);
     }
 
-    public Page<Product> findProducts(String category, String search, boolean lowStock, boolean outOfStock, Integer minPrice, Integer maxPrice, Pageable pageable) {
-        return productRepository.findProducts(category, search, lowStock, outOfStock, minPrice, maxPrice, pageable);
+    public Optional<ProductResponseDTO> getProductView(int id) {
+        return productViewService.findViewById(id);
+    }
+
+    // Serialized product for GET /api/v1/products/{id}, served from ProductCache. Returns null if the product doesn't exist.
+    public byte[] getProductJsonById(int id) {
+        return productCache.getOrLoad(id, productId -> productViewService.findViewById(productId).orElse(null));
+    }
+
+    public CacheStatsDTO getProductCacheStats() {
+        return productCache.stats();
+    }
+
+    @Transactional(readOnly = true)
+    public Page<ProductResponseDTO> findProducts(String category, String search, boolean lowStock, boolean outOfStock, Integer minPrice, Integer maxPrice, Pageable pageable) {
+        if (search == null || search.isBlank()) {
+            return toViewPage(productRepository.findProductRows(new ProductFilter(category, null, lowStock, outOfStock, minPrice, maxPrice), pageable));
+        }
+
+        SortedSet<Integer> matchingIds = searchIndex.search(search);
+        if (matchingIds.isEmpty()) {
+            return Page.empty(pageable);
+        }
+
+        boolean onlySearch = category == null && !lowStock && !outOfStock && minPrice == null && maxPrice == null;
+        if (!onlySearch || pageable.getSort().isSorted()) {
+            return toViewPage(productRepository.findProductRows(new ProductFilter(category, matchingIds, lowStock, outOfStock, minPrice, maxPrice), pageable));
+        }
+
+        // Only the search filter is set, so page through the ids in memory and hydrate just that page
+        List<Integer> ids = new ArrayList<>(matchingIds);
+        List<Integer> pageIds = ids;
+        if (pageable.isPaged()) {
+            int from = (int) Math.min(pageable.getOffset(), ids.size());
+            int to = Math.min(from + pageable.getPageSize(), ids.size());
+            pageIds = ids.subList(from, to);
+        }
+
+        return new PageImpl<>(productViewService.findViewsByIds(pageIds), pageable, ids.size());
+    }
+
+    @Transactional(readOnly = true)
+    public CursorSliceDTO<ProductResponseDTO> scrollProducts(String category, String search, boolean lowStock, boolean outOfStock, Integer minPrice, Integer maxPrice,
+                                                             String sort, String direction, String cursor, int size) {
+        if (size < 1 || size > MAX_SCROLL_SIZE) {
+            throw new IllegalArgumentException("Size must be between 1 and " + MAX_SCROLL_SIZE);
+        }
+
+        // A cursor carries its own sort key and direction, so follow-up requests can't switch ordering mid-scroll.
+        // It also carries a hash of the filters; a cursor from a listing with other filters would skip or repeat rows.
+        String filterHash = ProductCursor.filterHash(category, search, lowStock, outOfStock, minPrice, maxPrice);
+        ProductCursor after = cursor == null || cursor.isBlank() ? null : ProductCursor.decode(cursor);
+        if (after != null && !after.filterHash().equals(filterHash)) {
+            throw new IllegalArgumentException("The cursor belongs to a listing with different filters");
+        }
+        ProductCursor.SortKey sortKey = after != null ? after.sortKey() : ProductCursor.SortKey.fromParam(sort);
+        boolean descending = after != null ? after.descending() : "desc".equalsIgnoreCase(direction);
+
+        Collection<Integer> productIds = null;
+        if (search != null && !search.isBlank()) {
+            productIds = searchIndex.search(search);
+            if (productIds.isEmpty()) {
+                return new CursorSliceDTO<>(List.of(), size, false, null);
+            }
+        }
+
+        ProductFilter filter = new ProductFilter(category, productIds, lowStock, outOfStock, minPrice, maxPrice);
+        List<ProductRow> rows = productRepository.scrollProductRows(filter, sortKey, descending, after, size + 1);
+
+        boolean hasNext = rows.size() > size;
+        List<ProductRow> content = hasNext ? rows.subList(0, size) : rows;
+        String nextCursor = hasNext
+                ? ProductCursor.after(content.get(content.size() - 1), sortKey, descending, filterHash).encode()
+                : null;
+
+        return new CursorSliceDTO<>(productViewService.toViews(content), size, hasNext, nextCursor);
+    }
+
+    private Page<ProductResponseDTO> toViewPage(Page<ProductRow> rows) {
+        return new PageImpl<>(productViewService.toViews(rows.getContent()), rows.getPageable(), rows.getTotalElements());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuildSearchIndex() {
+        searchIndex.clear();
+        for (Product product : productRepository.findAll()) {
+            Set<String> tagNames = new HashSet<>();
+            if (product.getTags() != null) {
+                for (Tag tag : product.getTags()) {
+                    tagNames.add(tag.getTagName());
+                }
+            }
+            String categoryName = product.getCategory() != null ? product.getCategory().getCategoryName() : null;
+            searchIndex.index(product.getProductId(), product.getTitle(), product.getDescription(), categoryName, tagNames);
+        }
+        System.out.println("Product search index built with " + searchIndex.size() + " products.");
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static void afterRollback(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    action.run();
+                }
+            }
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,75 @@
+package org.example.backendclerkio.service;
+
+import org.example.backendclerkio.dto.ProductResponseDTO;
+import org.example.backendclerkio.repository.ProductRepository;
+import org.example.backendclerkio.repository.ProductRow;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+
+// Builds ProductResponseDTOs straight from projection queries: one query for the rows, one for images, one for tags.
+// Nothing lazy is left for Jackson, so the connection is released before the response is written.
+@Service
+public class ProductViewService {
+
+    private final ProductRepository productRepository;
+
+    public ProductViewService(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<ProductResponseDTO> findViewById(int id) {
+        return findViewsByIds(List.of(id)).stream().findFirst();
+    }
+
+    // Views in the order of the given ids; ids without a product are skipped
+    @Transactional(readOnly = true)
+    public List<ProductResponseDTO> findViewsByIds(List<Integer> ids) {
+        Map<Integer, ProductResponseDTO> viewsById = new HashMap<>();
+        for (ProductResponseDTO view : toViews(productRepository.findProductRowsByIds(ids))) {
+            viewsById.put(view.id(), view);
+        }
+        List<ProductResponseDTO> views = new ArrayList<>(viewsById.size());
+        for (Integer id : ids) {
+            ProductResponseDTO view = viewsById.get(id);
+            if (view != null) {
+                views.add(view);
+            }
+        }
+        return views;
+    }
+
+    @Transactional(readOnly = true)
+    public List<ProductResponseDTO> toViews(List<ProductRow> rows) {
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+        List<Integer> ids = rows.stream().map(ProductRow::id).toList();
+
+        Map<Integer, List<String>> imagesById = new HashMap<>();
+        for (Object[] image : productRepository.findImagesByProductIds(ids)) {
+            imagesById.computeIfAbsent((Integer) image[0], id -> new ArrayList<>()).add((String) image[1]);
+        }
+        Map<Integer, Set<String>> tagsById = new HashMap<>();
+        for (Object[] tag : productRepository.findTagNamesByProductIds(ids)) {
+            tagsById.computeIfAbsent((Integer) tag[0], id -> new HashSet<>()).add((String) tag[1]);
+        }
+
+        List<ProductResponseDTO> views = new ArrayList<>(rows.size());
+        for (ProductRow row : rows) {
+            views.add(new ProductResponseDTO(
+                    row.id(),
+                    row.title(),
+                    row.description(),
+                    row.price(),
+                    row.discountPrice(),
+                    row.stockCount(),
+                    row.category(),
+                    imagesById.getOrDefault(row.id(), List.of()),
+                    tagsById.getOrDefault(row.id(), Set.of())));
+        }
+        return views;
+    }
+}
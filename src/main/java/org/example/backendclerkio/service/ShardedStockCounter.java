@@ -0,0 +1,79 @@
+package org.example.backendclerkio.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Stock of one hot product split over several shards, so concurrent takes mostly CAS different slots.
+// A take succeeds from a single shard when that shard alone leaves the floor covered; otherwise the shards are
+// gathered under a lock and the total decides. Shard values never go negative.
+final class ShardedStockCounter {
+    private final AtomicIntegerArray shards;
+
+    ShardedStockCounter(int shardCount, int stock) {
+        this.shards = new AtomicIntegerArray(shardCount);
+        spread(stock);
+    }
+
+    // Takes quantity if at least floor is left afterwards
+    boolean tryTake(int quantity, int floor) {
+        int start = ThreadLocalRandom.current().nextInt(shards.length());
+        for (int i = 0; i < shards.length(); i++) {
+            int shard = (start + i) % shards.length();
+            int value = shards.get(shard);
+            // A single shard holding quantity + floor proves the total does too
+            while (value >= quantity + floor) {
+                if (shards.compareAndSet(shard, value, value - quantity)) {
+                    return true;
+                }
+                value = shards.get(shard);
+            }
+        }
+        return takeFromTotal(quantity, floor);
+    }
+
+    // A negative quantity removes stock, but never below zero. Returns the change actually made.
+    int add(int quantity) {
+        if (quantity >= 0) {
+            shards.addAndGet(ThreadLocalRandom.current().nextInt(shards.length()), quantity);
+            return quantity;
+        }
+        return -removeUpTo(-quantity);
+    }
+
+    int total() {
+        int total = 0;
+        for (int i = 0; i < shards.length(); i++) {
+            total += shards.get(i);
+        }
+        return total;
+    }
+
+    private synchronized boolean takeFromTotal(int quantity, int floor) {
+        int total = drain();
+        boolean taken = total - quantity >= floor;
+        spread(taken ? total - quantity : total);
+        return taken;
+    }
+
+    private synchronized int removeUpTo(int quantity) {
+        int total = drain();
+        int removed = Math.min(total, quantity);
+        spread(total - removed);
+        return removed;
+    }
+
+    private int drain() {
+        int total = 0;
+        for (int i = 0; i < shards.length(); i++) {
+            total += shards.getAndSet(i, 0);
+        }
+        return total;
+    }
+
+    private void spread(int stock) {
+        int share = stock / shards.length();
+        for (int i = 0; i < shards.length(); i++) {
+            shards.addAndGet(i, i == 0 ? stock - share * (shards.length() - 1) : share);
+        }
+    }
+}
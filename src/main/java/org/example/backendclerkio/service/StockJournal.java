@@ -0,0 +1,110 @@
+package org.example.backendclerkio.service;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Append-only log of stock changes made in memory by HotStockService, one "sequence,productId,delta" line each.
+// A "C,sequence" line records that every change up to that sequence has reached the product table.
+// Callers wait for their line to be forced to disk; whoever forces covers every line written before it, so
+// concurrent checkouts share one fsync.
+final class StockJournal implements Closeable {
+
+    record Entry(long sequence, int productId, int delta) {}
+
+    private final FileChannel channel;
+    private final Object forceLock = new Object();
+    private final List<Entry> unflushed;
+    private long lastSequence;
+    private long durableSequence;
+
+    StockJournal(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.unflushed = new ArrayList<>();
+        if (Files.exists(path)) {
+            read(path);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.durableSequence = lastSequence;
+    }
+
+    // Changes written after the last checkpoint, i.e. the ones a crash may have kept from the product table
+    List<Entry> unflushedEntries() {
+        return List.copyOf(unflushed);
+    }
+
+    synchronized long append(int productId, int delta) throws IOException {
+        long sequence = ++lastSequence;
+        write(sequence + "," + productId + "," + delta + "\n");
+        return sequence;
+    }
+
+    void awaitDurable(long sequence) throws IOException {
+        synchronized (forceLock) {
+            if (durableSequence >= sequence) {
+                return;
+            }
+            long upTo = lastSequence();
+            channel.force(false);
+            durableSequence = upTo;
+        }
+    }
+
+    synchronized long lastSequence() {
+        return lastSequence;
+    }
+
+    // Everything up to sequence is in the database. If nothing was written since, the file starts over.
+    synchronized void checkpoint(long sequence) throws IOException {
+        if (sequence == lastSequence) {
+            channel.truncate(0);
+        }
+        write("C," + sequence + "\n");
+        channel.force(false);
+        unflushed.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void write(String line) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void read(Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                try {
+                    if (fields.length == 2 && fields[0].equals("C")) {
+                        long checkpoint = Long.parseLong(fields[1]);
+                        unflushed.removeIf(entry -> entry.sequence() <= checkpoint);
+                        lastSequence = Math.max(lastSequence, checkpoint);
+                    } else if (fields.length == 3) {
+                        Entry entry = new Entry(Long.parseLong(fields[0]), Integer.parseInt(fields[1]), Integer.parseInt(fields[2]));
+                        unflushed.add(entry);
+                        lastSequence = Math.max(lastSequence, entry.sequence());
+                    }
+                } catch (NumberFormatException e) {
+                    // A line cut short by a crash was never acknowledged to anyone
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package org.example.backendclerkio.service;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import jakarta.annotation.PreDestroy;
+import org.example.backendclerkio.entity.StockReservation;
+import org.example.backendclerkio.repository.StockReservationRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntPredicate;
+
+// Holds stock for cart lines for a limited time, so a cart that got its items can also check them out.
+// The ledger lives in memory with one lock stripe per group of product ids; every hold is also written to
+// stock_reservation so it survives a restart. Expired holds are dropped by a timer wheel, one timeout per hold,
+// instead of scanning the ledger on every request.
+// Available stock for a product is its stock_count minus everything held for it by other carts.
+@Service
+public class StockReservationService {
+    private static final int STRIPES = 64;
+
+    private record HoldKey(int orderId, int productId) {}
+
+    private record Hold(int quantity, long expiresAt) {}
+
+    private final StockReservationRepository reservationRepository;
+    private final long ttlMillis;
+
+    private final Map<HoldKey, Hold> holds = new ConcurrentHashMap<>();
+    private final Map<Integer, Integer> heldByProduct = new ConcurrentHashMap<>();
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    private final Timer expiryTimer = new HashedWheelTimer(runnable -> {
+        Thread thread = new Thread(runnable, "stock-reservation-expiry");
+        thread.setDaemon(true);
+        return thread;
+    }, 1, TimeUnit.SECONDS, 512);
+    // Database cleanup runs off the timer thread, so a slow delete can't delay the next expiries
+    private final ExecutorService cleanupExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "stock-reservation-cleanup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public StockReservationService(StockReservationRepository reservationRepository,
+                                   @Value("${cart.reservation.ttl-seconds:900}") long ttlSeconds) {
+        this.reservationRepository = reservationRepository;
+        this.ttlMillis = ttlSeconds * 1000;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        scheduleCleanup();
+    }
+
+    // Sets the hold for a cart line to quantity (the line's total, not an increment) and restarts its TTL.
+    // Returns false, and leaves any existing hold alone, if stockCount minus other carts' holds can't cover it.
+    // The row is written in the caller's transaction.
+    public boolean reserve(int orderId, int productId, int quantity, int stockCount) {
+        HoldKey key = new HoldKey(orderId, productId);
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+
+        ReentrantLock stripe = stripe(productId);
+        stripe.lock();
+        try {
+            if (stockCount - heldByOthersUnlocked(key) < quantity) {
+                return false;
+            }
+            putUnlocked(key, new Hold(quantity, expiresAt));
+        } finally {
+            stripe.unlock();
+        }
+
+        StockReservation reservation = reservationRepository.findByOrderIdAndProductId(orderId, productId)
+                .orElseGet(() -> new StockReservation(orderId, productId, quantity, expiresAt));
+        reservation.setQuantity(quantity);
+        reservation.setExpiresAt(expiresAt);
+        reservationRepository.save(reservation);
+
+        scheduleExpiry(key, expiresAt);
+        return true;
+    }
+
+    // Stock held for productId by every cart except orderId
+    public int heldByOthers(int orderId, int productId) {
+        ReentrantLock stripe = stripe(productId);
+        stripe.lock();
+        try {
+            return heldByOthersUnlocked(new HoldKey(orderId, productId));
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    // Calls take with the stock other carts hold for productId and, if it took the stock, drops this cart's hold, all
+    // under the product's stripe. A concurrent checkout therefore never counts a hold whose stock is already taken.
+    // Returns the hold that was dropped, 0 if none, or -1 if take refused. Only for takes that don't wait on the
+    // database: the stripe is held throughout.
+    public int takeHeld(int orderId, int productId, IntPredicate take) {
+        HoldKey key = new HoldKey(orderId, productId);
+        ReentrantLock stripe = stripe(productId);
+        stripe.lock();
+        try {
+            if (!take.test(heldByOthersUnlocked(key))) {
+                return -1;
+            }
+            Hold own = holds.get(key);
+            removeUnlocked(key);
+            return own != null ? own.quantity() : 0;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    // Drops a cart line's hold in memory once its stock has been taken, ahead of the commit, so checkouts waiting
+    // for the same product stop counting it. Returns the hold, 0 if none, for restore if the checkout rolls back.
+    public int releaseTaken(int orderId, int productId) {
+        HoldKey key = new HoldKey(orderId, productId);
+        ReentrantLock stripe = stripe(productId);
+        stripe.lock();
+        try {
+            Hold own = holds.get(key);
+            removeUnlocked(key);
+            return own != null ? own.quantity() : 0;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    // Quantity held for one cart line, 0 if it has no hold
+    public int heldFor(int orderId, int productId) {
+        Hold hold = holds.get(new HoldKey(orderId, productId));
+        return hold != null ? hold.quantity() : 0;
+    }
+
+    // Puts a cart line's hold back in memory as it was before a change that rolled back; the row rolls back with
+    // the transaction. A quantity of 0 means the line had no hold.
+    public void restore(int orderId, int productId, int quantity) {
+        HoldKey key = new HoldKey(orderId, productId);
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+        ReentrantLock stripe = stripe(productId);
+        stripe.lock();
+        try {
+            if (quantity > 0) {
+                putUnlocked(key, new Hold(quantity, expiresAt));
+            } else {
+                removeUnlocked(key);
+            }
+        } finally {
+            stripe.unlock();
+        }
+        if (quantity > 0) {
+            scheduleExpiry(key, expiresAt);
+        }
+    }
+
+    public int held(int productId) {
+        return heldByProduct.getOrDefault(productId, 0);
+    }
+
+    public void release(int orderId, int productId) {
+        releaseInMemory(orderId, productId);
+        reservationRepository.deleteHold(orderId, productId);
+    }
+
+    // After a checkout: the held stock has become a decrement, so the holds go away.
+    // Call deleteRows inside the checkout transaction and releaseAll once it has committed.
+    public void releaseAll(int orderId, Collection<Integer> productIds) {
+        for (int productId : productIds) {
+            releaseInMemory(orderId, productId);
+        }
+    }
+
+    public void deleteRows(int orderId) {
+        reservationRepository.deleteByOrder(orderId);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        long now = System.currentTimeMillis();
+        int recovered = 0;
+        for (StockReservation reservation : reservationRepository.findByExpiresAtGreaterThan(now)) {
+            HoldKey key = new HoldKey(reservation.getOrderId(), reservation.getProductId());
+            ReentrantLock stripe = stripe(key.productId());
+            stripe.lock();
+            try {
+                putUnlocked(key, new Hold(reservation.getQuantity(), reservation.getExpiresAt()));
+            } finally {
+                stripe.unlock();
+            }
+            scheduleExpiry(key, reservation.getExpiresAt());
+            recovered++;
+        }
+        reservationRepository.deleteExpired(now);
+        System.out.println("Recovered " + recovered + " stock reservations.");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        expiryTimer.stop();
+        cleanupExecutor.shutdown();
+    }
+
+    private void scheduleExpiry(HoldKey key, long expiresAt) {
+        long delay = Math.max(0, expiresAt - System.currentTimeMillis());
+        expiryTimer.newTimeout(timeout -> expire(key, expiresAt), delay, TimeUnit.MILLISECONDS);
+    }
+
+    // A hold that was refreshed after this timeout was scheduled has a later expiresAt and its own timeout
+    private void expire(HoldKey key, long expiresAt) {
+        ReentrantLock stripe = stripe(key.productId());
+        stripe.lock();
+        try {
+            Hold hold = holds.get(key);
+            if (hold != null && hold.expiresAt() <= expiresAt) {
+                removeUnlocked(key);
+            }
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    // Expired rows are only needed until their hold has left memory, so they are deleted in bulk once per TTL
+    private void scheduleCleanup() {
+        expiryTimer.newTimeout(this::cleanup, Math.max(ttlMillis, 1000), TimeUnit.MILLISECONDS);
+    }
+
+    private void cleanup(Timeout timeout) {
+        cleanupExecutor.execute(() -> {
+            try {
+                reservationRepository.deleteExpired(System.currentTimeMillis());
+            } catch (RuntimeException e) {
+                System.err.println("Could not delete expired stock reservations: " + e.getMessage());
+            }
+        });
+        scheduleCleanup();
+    }
+
+    private void releaseInMemory(int orderId, int productId) {
+        ReentrantLock stripe = stripe(productId);
+        stripe.lock();
+        try {
+            removeUnlocked(new HoldKey(orderId, productId));
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    private int heldByOthersUnlocked(HoldKey key) {
+        Hold own = holds.get(key);
+        return heldByProduct.getOrDefault(key.productId(), 0) - (own != null ? own.quantity() : 0);
+    }
+
+    private void putUnlocked(HoldKey key, Hold hold) {
+        Hold previous = holds.put(key, hold);
+        int delta = hold.quantity() - (previous != null ? previous.quantity() : 0);
+        heldByProduct.merge(key.productId(), delta, Integer::sum);
+    }
+
+    private void removeUnlocked(HoldKey key) {
+        Hold previous = holds.remove(key);
+        if (previous != null) {
+            heldByProduct.computeIfPresent(key.productId(), (productId, held) -> held == previous.quantity() ? null : held - previous.quantity());
+        }
+    }
+
+    private ReentrantLock stripe(int productId) {
+        return stripes[Math.floorMod(productId, STRIPES)];
+    }
+}
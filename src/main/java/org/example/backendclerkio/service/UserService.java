@@ -1,13 +1,16 @@
 package org.example.backendclerkio.service;
 
+import org.example.backendclerkio.AuthenticatedUser;
 import org.example.backendclerkio.config.SecurityConfiguration;
 import org.example.backendclerkio.dto.LoginRequestDTO;
 import org.example.backendclerkio.dto.UserRequestDTO;
 import org.example.backendclerkio.dto.UserResponseDTO;
 import org.example.backendclerkio.entity.User;
 import org.example.backendclerkio.repository.UserRepository;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.security.Principal;
 import java.util.List;
@@ -19,10 +22,12 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final UserTokenVersions tokenVersions;
 
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, UserTokenVersions tokenVersions) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.tokenVersions = tokenVersions;
     }
 
     public Optional<UserResponseDTO> getUser(int userId) {
@@ -80,16 +85,27 @@ public class UserService {
         }
 
         User user = optionalUser.get();
+        // A new password or email (the tokens' subject) logs the user out everywhere
+        boolean revokeTokens;
 
         if (userRequestDTO.password() != null) {
             user.setPasswordHash(passwordEncoder.encode(userRequestDTO.password()));
+            revokeTokens = true;
         } else {
+            revokeTokens = !user.getUserEmail().equals(userRequestDTO.email());
             user.setFirstName(userRequestDTO.firstName());
             user.setLastName(userRequestDTO.lastName());
             user.setUserEmail(userRequestDTO.email());
         }
+        if (revokeTokens) {
+            user.setTokenVersion(user.getTokenVersion() + 1);
+            user.setTokenRevokedAt(System.currentTimeMillis());
+        }
 
         User updatedUser = userRepository.save(user);
+        if (revokeTokens) {
+            tokenVersions.revoked(updatedUser.getUserId(), updatedUser.getTokenVersion());
+        }
 
         UserResponseDTO userResponseDTO = new UserResponseDTO(
                 updatedUser.getUserId(),
@@ -111,11 +127,13 @@ public class UserService {
         }
     }
 
+    @Transactional
     public boolean deleteUser(int userId) {
         Optional<User> optionalUser = userRepository.findByUserId(userId);
 
         if (optionalUser.isPresent()) {
             userRepository.delete(optionalUser.get());
+            tokenVersions.revokeDeleted(userId);
             return true;
         } else {
             return false;
@@ -138,6 +156,15 @@ public class UserService {
         return userRepository.findUserByUserId(userId);
     }
 
+    // From the token's claims when JwtFilter authenticated the request, so no user lookup is needed
+    public int getUserIdFromPrincipal(Principal principal) {
+        if (principal instanceof Authentication authentication
+                && authentication.getPrincipal() instanceof AuthenticatedUser user) {
+            return user.userId();
+        }
+        return getUserResponseDTOFromPrincipal(principal).userId();
+    }
+
     public UserResponseDTO getUserResponseDTOFromPrincipal(Principal principal) {
         Optional<User> optionalUser = userRepository.findByUserEmail(principal.getName());
 
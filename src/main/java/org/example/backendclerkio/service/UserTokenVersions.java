@@ -0,0 +1,108 @@
+package org.example.backendclerkio.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.example.backendclerkio.JwtTokenManager;
+import org.example.backendclerkio.entity.DeletedUser;
+import org.example.backendclerkio.repository.DeletedUserRepository;
+import org.example.backendclerkio.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Current token version of the users whose tokens were revoked, so JwtFilter can reject an old token without a
+// user lookup. Users not in the map are at version 0. Loaded at startup, then refreshed on the same schedule as
+// TokenBlacklist (token.blacklist.refresh-interval-ms, reaching token.blacklist.refresh-overlap-ms back) from the
+// users whose token_revoked_at changed and the deleted_user rows, so revocations made by another instance are seen
+// within a refresh. Versions only go up, so reading a change twice is harmless.
+@Component
+public class UserTokenVersions {
+    // Above any version a token can carry
+    private static final int DELETED = Integer.MAX_VALUE;
+
+    private final UserRepository userRepository;
+    private final DeletedUserRepository deletedUserRepository;
+    private final long refreshIntervalMillis;
+    private final long refreshOverlapMillis;
+    private final Map<Integer, Integer> versions = new ConcurrentHashMap<>();
+    private long lastRefreshAt;
+    private ScheduledExecutorService refresher;
+
+    public UserTokenVersions(UserRepository userRepository, DeletedUserRepository deletedUserRepository,
+                             @Value("${token.blacklist.refresh-interval-ms:1000}") long refreshIntervalMillis,
+                             @Value("${token.blacklist.refresh-overlap-ms:10000}") long refreshOverlapMillis) {
+        this.userRepository = userRepository;
+        this.deletedUserRepository = deletedUserRepository;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.refreshOverlapMillis = refreshOverlapMillis;
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (refresher != null) {
+            return;
+        }
+        // Every token of a user deleted before this has expired
+        deletedUserRepository.deleteDeletedBefore(System.currentTimeMillis() - JwtTokenManager.TOKEN_VALIDITY);
+        load(0);
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "token-versions-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (RuntimeException e) {
+                System.err.println("Token version refresh failed: " + e.getMessage());
+            }
+        }, refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+
+    synchronized void refresh() {
+        load(lastRefreshAt - refreshOverlapMillis);
+    }
+
+    public int current(int userId) {
+        return versions.getOrDefault(userId, 0);
+    }
+
+    public boolean isCurrent(int userId, int tokenVersion) {
+        return tokenVersion >= current(userId);
+    }
+
+    // Call once the user's new token version is saved; tokens issued with a lower version stop working
+    public void revoked(int userId, int version) {
+        versions.merge(userId, version, Math::max);
+    }
+
+    // Call in the transaction deleting the user; the deleted_user row tells the other instances
+    public void revokeDeleted(int userId) {
+        deletedUserRepository.save(new DeletedUser(userId, System.currentTimeMillis()));
+        versions.put(userId, DELETED);
+    }
+
+    private void load(long since) {
+        long now = System.currentTimeMillis();
+        for (Object[] row : userRepository.findTokenVersionsRevokedSince(since)) {
+            revoked((Integer) row[0], (Integer) row[1]);
+        }
+        for (int userId : deletedUserRepository.findDeletedSince(since)) {
+            versions.put(userId, DELETED);
+        }
+        lastRefreshAt = now;
+    }
+}
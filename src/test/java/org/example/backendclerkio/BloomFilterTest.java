@@ -0,0 +1,42 @@
+package org.example.backendclerkio;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterTest {
+
+    @Test
+    void noFalseNegativesAndFalsePositivesNearTheTarget() {
+        BloomFilter filter = BloomFilter.create(10_000, 0.01);
+        SplittableRandom random = new SplittableRandom(42);
+        long[][] added = new long[10_000][];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = new long[] {random.nextLong(), random.nextLong()};
+            filter.add(added[i][0], added[i][1]);
+        }
+
+        for (long[] key : added) {
+            assertTrue(filter.mightContain(key[0], key[1]));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain(random.nextLong(), random.nextLong())) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 2_000, "false positives: " + falsePositives);
+        assertEquals(0.01, filter.expectedFalsePositiveRate(), 0.005);
+    }
+
+    @Test
+    void addingAKeyAgainDoesNotCountIt() {
+        BloomFilter filter = BloomFilter.create(100, 0.01);
+        filter.add(1, 2);
+        filter.add(1, 2);
+
+        assertEquals(1, filter.entries());
+    }
+}
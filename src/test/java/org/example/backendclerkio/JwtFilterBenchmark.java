@@ -0,0 +1,56 @@
+package org.example.backendclerkio;
+
+import org.example.backendclerkio.repository.RevokedTokenRepository;
+import org.example.backendclerkio.repository.DeletedUserRepository;
+import org.example.backendclerkio.repository.UserRepository;
+import org.example.backendclerkio.service.UserTokenVersions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+// Time JwtFilter spends on an authenticated request, with the claims cache and with every token parsed again
+// (cache size 0). The filter builds the principal from the token, so no user lookup is involved.
+// Skipped in normal builds, run with: mvn test -Dtest=JwtFilterBenchmark -Dbenchmark=true
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class JwtFilterBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 50_000;
+    private static final int MEASURED_ITERATIONS = 200_000;
+
+    @Test
+    void benchmarkFilter() throws Exception {
+        for (int cacheSize : new int[] {0, 10_000}) {
+            // Not started: nobody is logged out
+            TokenBlacklist tokenBlacklist = new TokenBlacklist(Mockito.mock(RevokedTokenRepository.class),
+                    1000, 10000, 60, 100000, 0.01, "unused");
+            JwtTokenManager jwtTokenManager = new JwtTokenManager(tokenBlacklist,
+                    new UserTokenVersions(Mockito.mock(UserRepository.class), Mockito.mock(DeletedUserRepository.class), 1000, 10000), JwtTokenManagerTest.SECRET, cacheSize);
+            JwtFilter filter = new JwtFilter(jwtTokenManager);
+            String token = jwtTokenManager.generateJwtToken(JwtTokenManagerTest.user(false));
+
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                filter(filter, token);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+                filter(filter, token);
+            }
+            long nanosPerRequest = (System.nanoTime() - start) / MEASURED_ITERATIONS;
+            System.out.printf("cache size %,6d: %,8d ns/request%n", cacheSize, nanosPerRequest);
+        }
+    }
+
+    private static void filter(JwtFilter filter, String token) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/order/cart");
+        request.addHeader("Authorization", "Bearer " + token);
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        if (!(SecurityContextHolder.getContext().getAuthentication().getPrincipal() instanceof AuthenticatedUser)) {
+            throw new IllegalStateException("Request was not authenticated");
+        }
+        SecurityContextHolder.clearContext();
+    }
+}
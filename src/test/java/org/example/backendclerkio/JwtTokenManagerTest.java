@@ -0,0 +1,113 @@
+package org.example.backendclerkio;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import org.example.backendclerkio.entity.User;
+import org.example.backendclerkio.repository.RevokedTokenRepository;
+import org.example.backendclerkio.repository.DeletedUserRepository;
+import org.example.backendclerkio.repository.UserRepository;
+import org.example.backendclerkio.service.UserTokenVersions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.Date;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtTokenManagerTest {
+
+    static final String SECRET = "somerandomsecret1234SOMERANDOMSECRETLifeCanBeMeaningful1234SOMERANDOMSECRETLifeCanBeGo";
+
+    // Not started: the filter starts empty and revocations go to the mocked table and memory
+    private final TokenBlacklist tokenBlacklist = new TokenBlacklist(Mockito.mock(RevokedTokenRepository.class),
+            1000, 10000, 60, 1000, 0.01, "unused");
+    private final UserTokenVersions tokenVersions = new UserTokenVersions(Mockito.mock(UserRepository.class), Mockito.mock(DeletedUserRepository.class), 1000, 10000);
+    private final JwtTokenManager jwtTokenManager = new JwtTokenManager(tokenBlacklist, tokenVersions, SECRET, 100);
+
+    static User user(boolean isAdmin) {
+        User user = new User("Anders", "Ludvigsen", "a@a.dk", "hash");
+        user.setUserId(7);
+        user.setAdmin(isAdmin);
+        return user;
+    }
+
+    @Test
+    void verifiesGeneratedToken() {
+        String token = jwtTokenManager.generateJwtToken(user(true));
+
+        VerifiedToken verified = jwtTokenManager.verify(token).orElseThrow();
+
+        assertEquals(7, verified.userId());
+        assertEquals("a@a.dk", verified.username());
+        assertTrue(verified.isAdmin());
+        assertEquals(0, verified.tokenVersion());
+        assertTrue(jwtTokenManager.validateJwtToken(token, verified));
+        // The second lookup comes from the cache
+        assertSame(verified, jwtTokenManager.verify(token).orElseThrow());
+    }
+
+    @Test
+    void cacheStaysWithinItsMaxSize() {
+        for (int userId = 1; userId <= 250; userId++) {
+            User user = user(false);
+            user.setUserId(userId);
+            assertTrue(jwtTokenManager.verify(jwtTokenManager.generateJwtToken(user)).isPresent());
+            assertTrue(jwtTokenManager.cachedTokens() <= 100);
+        }
+    }
+
+    @Test
+    void rejectsTamperedAndForeignTokens() {
+        String token = jwtTokenManager.generateJwtToken(user(false));
+        String otherKeyToken = Jwts.builder().setSubject("a@a.dk").claim("uid", 7).claim("ver", 0)
+                .setExpiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(Keys.secretKeyFor(SignatureAlgorithm.HS512))
+                .compact();
+
+        assertEquals(Optional.empty(), jwtTokenManager.verify(token.substring(0, token.length() - 2) + "xx"));
+        assertEquals(Optional.empty(), jwtTokenManager.verify(otherKeyToken));
+        assertEquals(Optional.empty(), jwtTokenManager.verify("not a token"));
+    }
+
+    @Test
+    void expiredAndOldFormatTokensAreRejected() {
+        String expired = Jwts.builder().setSubject("a@a.dk").claim("uid", 7).claim("ver", 0)
+                .setExpiration(new Date(System.currentTimeMillis() - 1000))
+                .signWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET)), SignatureAlgorithm.HS512)
+                .compact();
+        String withoutUserId = Jwts.builder().setSubject("a@a.dk").claim("isAdmin", false)
+                .setExpiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET)), SignatureAlgorithm.HS512)
+                .compact();
+
+        assertEquals(Optional.empty(), jwtTokenManager.verify(expired));
+        assertEquals(Optional.empty(), jwtTokenManager.verify(withoutUserId));
+    }
+
+    @Test
+    void blacklistIsCheckedEvenForCachedTokens() {
+        String token = jwtTokenManager.generateJwtToken(user(false));
+        VerifiedToken verified = jwtTokenManager.verify(token).orElseThrow();
+
+        jwtTokenManager.blacklistToken(token);
+
+        assertFalse(jwtTokenManager.validateJwtToken(token, verified));
+    }
+
+    @Test
+    void revokedTokenVersionIsRejected() {
+        User user = user(false);
+        String oldToken = jwtTokenManager.generateJwtToken(user);
+        VerifiedToken oldVerified = jwtTokenManager.verify(oldToken).orElseThrow();
+
+        user.setTokenVersion(1);
+        tokenVersions.revoked(user.getUserId(), 1);
+        String newToken = jwtTokenManager.generateJwtToken(user);
+
+        assertFalse(jwtTokenManager.validateJwtToken(oldToken, oldVerified));
+        assertTrue(jwtTokenManager.validateJwtToken(newToken, jwtTokenManager.verify(newToken).orElseThrow()));
+    }
+}
@@ -0,0 +1,166 @@
+package org.example.backendclerkio;
+
+import org.example.backendclerkio.dto.RevocationStatsDTO;
+import org.example.backendclerkio.entity.RevokedToken;
+import org.example.backendclerkio.repository.RevokedTokenRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Two instances share the revoked_token table. The refresher runs once an hour here, so the tests refresh.
+@DataJpaTest
+@Import(TokenBlacklist.class)
+@TestPropertySource(properties = "token.blacklist.refresh-interval-ms=3600000")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class TokenBlacklistTest {
+
+    private static final long IN_AN_HOUR = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+    private static final Path LOG = logPath();
+
+    @DynamicPropertySource
+    static void logPath(DynamicPropertyRegistry registry) {
+        registry.add("token.blacklist.path", LOG::toString);
+    }
+
+    @Autowired
+    private TokenBlacklist tokenBlacklist;
+
+    @Autowired
+    private RevokedTokenRepository revokedTokenRepository;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        revokedTokenRepository.deleteAll();
+        // Otherwise the rebuild puts the previous test's revocations back
+        Files.write(LOG, new byte[0]);
+        tokenBlacklist.rebuild();
+    }
+
+    // Not started, so without a log of its own
+    private TokenBlacklist otherInstance(int expectedRevocations, double falsePositiveRate) {
+        TokenBlacklist other = new TokenBlacklist(revokedTokenRepository, 3_600_000, 10_000, 60,
+                expectedRevocations, falsePositiveRate, "unused");
+        other.rebuild();
+        return other;
+    }
+
+    private TokenBlacklist startedInstance(Path log) throws IOException {
+        TokenBlacklist instance = new TokenBlacklist(revokedTokenRepository, 3_600_000, 10_000, 60, 1000, 0.01, log.toString());
+        instance.start();
+        return instance;
+    }
+
+    private static Path logPath() {
+        try {
+            return Files.createTempDirectory("token-blacklist").resolve("token-blacklist.log");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Test
+    void revocationReachesOtherInstancesOnRefresh() {
+        TokenBlacklist other = otherInstance(1000, 0.01);
+
+        tokenBlacklist.addToken("token-a", IN_AN_HOUR);
+
+        assertTrue(tokenBlacklist.isTokenBlacklisted("token-a"));
+        assertFalse(other.isTokenBlacklisted("token-a"));
+        other.refresh();
+        assertTrue(other.isTokenBlacklisted("token-a"));
+        assertFalse(other.isTokenBlacklisted("token-b"));
+        assertEquals(1, other.stats().storeLookups());
+    }
+
+    @Test
+    void restartedInstanceLoadsLiveRevocationsOnly() {
+        tokenBlacklist.addToken("token-a", IN_AN_HOUR);
+        revokedTokenRepository.save(new RevokedToken("AAAAAAAAAAAAAAAAAAAAAA", System.currentTimeMillis() - 1000,
+                System.currentTimeMillis() - 5000));
+
+        TokenBlacklist restarted = otherInstance(1000, 0.01);
+
+        assertTrue(restarted.isTokenBlacklisted("token-a"));
+        assertEquals(1, restarted.stats().filterEntries());
+        assertEquals(1, revokedTokenRepository.count());
+    }
+
+    @Test
+    void revocationsSurviveTheTableBeingRecreated(@TempDir Path dir) throws Exception {
+        TokenBlacklist first = startedInstance(dir.resolve("first.log"));
+        TokenBlacklist second = startedInstance(dir.resolve("second.log"));
+        first.addToken("token-a", IN_AN_HOUR);
+        second.refresh();
+        first.stop();
+        second.stop();
+        // What ddl-auto=create does on the next start
+        revokedTokenRepository.deleteAll();
+
+        // The second instance only saw the revocation through the table, and still puts it back
+        TokenBlacklist restarted = startedInstance(dir.resolve("second.log"));
+
+        assertTrue(restarted.isTokenBlacklisted("token-a"));
+        assertEquals(1, revokedTokenRepository.count());
+        restarted.stop();
+    }
+
+    @Test
+    void falsePositivesAreCheckedInTheTableOnceAndCounted() {
+        // Far too small a filter, so most tokens that aren't revoked get through it
+        TokenBlacklist other = otherInstance(10, 0.5);
+        for (int i = 0; i < 50; i++) {
+            other.addToken("revoked-" + i, IN_AN_HOUR);
+        }
+
+        for (int i = 0; i < 100; i++) {
+            assertFalse(other.isTokenBlacklisted("valid-" + i));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertFalse(other.isTokenBlacklisted("valid-" + i));
+        }
+
+        RevocationStatsDTO stats = other.stats();
+        assertEquals(200, stats.lookups());
+        assertTrue(stats.falsePositives() > 0);
+        assertEquals(200, stats.filterNegatives() + stats.falsePositives());
+        // A token the table said isn't revoked isn't looked up again
+        assertEquals(stats.falsePositives() / 2, stats.storeLookups());
+        assertEquals((double) stats.falsePositives() / 200, stats.falsePositiveRate(), 1e-9);
+    }
+
+    @Test
+    void revocationAfterAFalsePositiveIsSeen() {
+        TokenBlacklist other = otherInstance(10, 0.5);
+        for (int i = 0; i < 50; i++) {
+            other.addToken("revoked-" + i, IN_AN_HOUR);
+        }
+        String token = null;
+        for (int i = 0; token == null; i++) {
+            other.isTokenBlacklisted("valid-" + i);
+            if (other.stats().falsePositives() > 0) {
+                token = "valid-" + i;
+            }
+        }
+
+        tokenBlacklist.addToken(token, IN_AN_HOUR);
+        other.refresh();
+
+        assertTrue(other.isTokenBlacklisted(token));
+    }
+}
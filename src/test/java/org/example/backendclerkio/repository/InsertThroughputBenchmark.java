@@ -0,0 +1,105 @@
+package org.example.backendclerkio.repository;
+
+import jakarta.persistence.EntityManager;
+import org.example.backendclerkio.entity.*;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+// Insert throughput for the seed-data path (products with images and tags) and for a 30-line cart checkout.
+// Skipped in normal builds, run with: mvn test -Dtest=InsertThroughputBenchmark -Dbenchmark=true [-Dbenchmark.batch-size=50]
+// -Dbenchmark.batch-size=1 turns JDBC batching off, which is how every insert went out while ids were IDENTITY columns.
+@DataJpaTest(properties = {
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.properties.hibernate.jdbc.batch_size=${benchmark.batch-size:50}"
+})
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class InsertThroughputBenchmark {
+
+    private static final int CART_LINES = 30;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void benchmarkInserts() {
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        Category category = categoryRepository.save(new Category("benchmark"));
+        List<Tag> tags = tagRepository.saveAll(List.of(new Tag("benchmark-a"), new Tag("benchmark-b"), new Tag("benchmark-c")));
+        User user = userRepository.save(new User("Bench", "Mark", "benchmark@example.com", "hash"));
+        entityManager.flush();
+
+        System.out.printf("batch_size=%s%n", System.getProperty("benchmark.batch-size", "50"));
+        System.out.printf("%-30s %10s %12s %12s%n", "workload", "rows", "rows/s", "statements");
+
+        int productCount = Integer.getInteger("benchmark.products", 5_000);
+        List<Product> products = new ArrayList<>();
+        statistics.clear();
+        long start = System.nanoTime();
+        for (int i = 0; i < productCount; i++) {
+            products.add(new Product("product " + i, "description " + i, 10 + i % 90, 9 + i % 90, 100,
+                    category, new ArrayList<>(List.of("image-" + i + ".jpg")), Set.of(tags.get(i % tags.size()))));
+            if (products.size() == 1000) {
+                productRepository.saveAll(products);
+                entityManager.flush();
+                entityManager.clear();
+                products.clear();
+            }
+        }
+        productRepository.saveAll(products);
+        entityManager.flush();
+        entityManager.clear();
+        report("seed products", productCount, start, statistics);
+
+        int checkouts = Integer.getInteger("benchmark.checkouts", 200);
+        List<Product> cartProducts = productRepository.findAll().subList(0, CART_LINES);
+        statistics.clear();
+        start = System.nanoTime();
+        for (int i = 0; i < checkouts; i++) {
+            Order order = new Order();
+            order.setUser(user);
+            order.setOrderDate(System.currentTimeMillis());
+            order.setPaid(true);
+            for (Product product : cartProducts) {
+                OrderProduct orderProduct = new OrderProduct();
+                orderProduct.setOrder(order);
+                orderProduct.setProduct(product);
+                orderProduct.setPriceAtTimeOfOrder(product.getDiscountPrice());
+                orderProduct.setQuantity(1);
+                order.getOrderProducts().add(orderProduct);
+            }
+            orderRepository.save(order);
+            entityManager.flush();
+        }
+        entityManager.clear();
+        report("checkout, " + CART_LINES + " lines", (long) checkouts * (CART_LINES + 1), start, statistics);
+    }
+
+    private static void report(String workload, long rows, long start, Statistics statistics) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-30s %10d %12.0f %12d%n", workload, rows, rows / seconds, statistics.getPrepareStatementCount());
+    }
+}
@@ -0,0 +1,122 @@
+package org.example.backendclerkio.repository;
+
+import org.example.backendclerkio.dto.CartLineDTO;
+import org.example.backendclerkio.dto.OrderSummaryDTO;
+import org.example.backendclerkio.dto.ProductResponseDTO;
+import org.example.backendclerkio.entity.Order;
+import org.example.backendclerkio.entity.OrderProduct;
+import org.example.backendclerkio.entity.Product;
+import org.example.backendclerkio.entity.User;
+import org.example.backendclerkio.service.ProductViewService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+class OrderRepositoryTest {
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OrderProductRepository orderProductRepository;
+
+    private User user;
+    private Product apple;
+    private Product pear;
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.save(new User("History", "Test", "history@example.com", "hash"));
+        apple = productRepository.save(new Product("Apple", "", 2.5, 2.5, 100, null, new ArrayList<>(), new HashSet<>()));
+        pear = productRepository.save(new Product("Pear", "", 4, 4, 100, null, new ArrayList<>(), new HashSet<>()));
+    }
+
+    @Test
+    void orderSummariesAreComputedInTheQueryAndSeekPastTheCursor() {
+        User otherUser = userRepository.save(new User("Other", "User", "other@example.com", "hash"));
+        int first = order(user, 1000, true, 2, 1);
+        int second = order(user, 2000, true, 1, 0);
+        int sameDate = order(user, 2000, true, 0, 3);
+        order(user, 3000, false, 1, 1);
+        order(otherUser, 2500, true, 1, 1);
+
+        List<OrderSummaryDTO> page = orderRepository.findOrderSummaries(user.getUserId(),
+                OrderCursor.START.lastOrderDate(), OrderCursor.START.lastId(), PageRequest.of(0, 2));
+
+        // Newest first, ties broken by the higher id; unpaid carts and other users' orders are left out
+        assertEquals(List.of(Math.max(second, sameDate), Math.min(second, sameDate)), page.stream().map(OrderSummaryDTO::id).toList());
+        OrderSummaryDTO secondSummary = page.stream().filter(summary -> summary.id() == second).findFirst().orElseThrow();
+        assertEquals(1, secondSummary.lineCount());
+        assertEquals(2.5, secondSummary.total());
+
+        OrderSummaryDTO last = page.get(1);
+        List<OrderSummaryDTO> next = orderRepository.findOrderSummaries(user.getUserId(), last.orderDate(), last.id(), PageRequest.of(0, 2));
+
+        assertEquals(1, next.size());
+        assertEquals(first, next.get(0).id());
+        assertEquals(2, next.get(0).lineCount());
+        assertEquals(2 * 2.5 + 4, next.get(0).total());
+    }
+
+    @Test
+    void orderDetailIsOnlyFoundForTheUsersPaidOrders() {
+        User otherUser = userRepository.save(new User("Other", "User", "other@example.com", "hash"));
+        int paid = order(user, 1000, true, 1, 0);
+        int cart = order(user, 2000, false, 1, 0);
+
+        assertEquals(1, orderRepository.findPaidOrderRowByIdAndUserId(paid, user.getUserId()).size());
+        assertTrue(orderRepository.findPaidOrderRowByIdAndUserId(cart, user.getUserId()).isEmpty());
+        assertTrue(orderRepository.findPaidOrderRowByIdAndUserId(paid, otherUser.getUserId()).isEmpty());
+    }
+
+    @Test
+    void cartThumbnailIsTheSameFirstImageTheProductViewShows() {
+        apple.setImages(new ArrayList<>(List.of("zebra.png", "apple.png")));
+        productRepository.save(apple);
+        order(user, 1000, false, 1, 0);
+
+        List<CartLineDTO> lines = orderProductRepository.findCartLinesByUserId(user.getUserId());
+        ProductResponseDTO view = new ProductViewService(productRepository).findViewById(apple.getProductId()).orElseThrow();
+
+        assertEquals("zebra.png", lines.get(0).imageUrl());
+        assertEquals(view.images().get(0), lines.get(0).imageUrl());
+    }
+
+    private int order(User owner, long orderDate, boolean paid, int apples, int pears) {
+        Order order = new Order();
+        order.setUser(owner);
+        order.setOrderDate(orderDate);
+        order.setPaid(paid);
+        if (apples > 0) {
+            order.getOrderProducts().add(line(order, apple, apples));
+        }
+        if (pears > 0) {
+            order.getOrderProducts().add(line(order, pear, pears));
+        }
+        return orderRepository.save(order).getId();
+    }
+
+    private static OrderProduct line(Order order, Product product, int quantity) {
+        OrderProduct line = new OrderProduct();
+        line.setOrder(order);
+        line.setProduct(product);
+        line.setQuantity(quantity);
+        line.setPriceAtTimeOfOrder(product.getPrice());
+        return line;
+    }
+}
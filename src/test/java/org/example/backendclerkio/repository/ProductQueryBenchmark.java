@@ -0,0 +1,154 @@
+package org.example.backendclerkio.repository;
+
+import jakarta.persistence.EntityManager;
+import org.example.backendclerkio.entity.Category;
+import org.example.backendclerkio.entity.Product;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Plan and latency of the listing query for every filter combination GET /api/v1/products accepts.
+// Skipped in normal builds, run with: mvn test -Dtest=ProductQueryBenchmark -Dbenchmark=true [-Dbenchmark.products=50000]
+// Runs against the embedded H2 database; point spring.datasource at MySQL with @AutoConfigureTestDatabase(replace = NONE) to see its plans.
+@DataJpaTest(properties = {
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.criteria.value_handling_mode=inline",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=org.example.backendclerkio.repository.ProductQueryBenchmark$CapturingStatementInspector"
+})
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ProductQueryBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int MEASURED_ITERATIONS = 200;
+
+    public static class CapturingStatementInspector implements StatementInspector {
+        static final List<String> statements = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            statements.add(sql);
+            return sql;
+        }
+    }
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void benchmarkFilterCombinations() {
+        int productCount = Integer.getInteger("benchmark.products", 20_000);
+        seed(productCount);
+
+        // Roughly what a one-word search resolves to through the search index
+        List<Integer> searchIds = new ArrayList<>();
+        for (int id = 1; id <= productCount; id += 97) {
+            searchIds.add(id);
+        }
+
+        System.out.printf("%-60s %10s %10s %10s%n", "filters", "avg us", "p50 us", "p99 us");
+        for (int mask = 0; mask < 64; mask++) {
+            ProductFilter filter = new ProductFilter(
+                    (mask & 1) != 0 ? "category-3" : null,
+                    (mask & 2) != 0 ? searchIds : null,
+                    (mask & 4) != 0,
+                    (mask & 8) != 0,
+                    (mask & 16) != 0 ? 100 : null,
+                    (mask & 32) != 0 ? 400 : null);
+
+            long[] micros = measure(filter, PageRequest.of(0, 20));
+            System.out.printf("%-60s %10d %10d %10d%n", describe(filter), average(micros), micros[micros.length / 2], micros[micros.length * 99 / 100]);
+            System.out.println(plan(filter));
+        }
+    }
+
+    private void seed(int productCount) {
+        Random random = new Random(42);
+        List<Category> categories = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            categories.add(categoryRepository.save(new Category("category-" + i)));
+        }
+
+        List<Product> batch = new ArrayList<>();
+        for (int i = 0; i < productCount; i++) {
+            double price = 1 + random.nextInt(1000);
+            batch.add(new Product("product " + i, "description " + i, price, price * 0.9,
+                    random.nextInt(100) < 5 ? 0 : random.nextInt(200),
+                    categories.get(random.nextInt(categories.size())), List.of(), Set.of()));
+            if (batch.size() == 1000) {
+                productRepository.saveAll(batch);
+                entityManager.flush();
+                entityManager.clear();
+                batch.clear();
+            }
+        }
+        productRepository.saveAll(batch);
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private long[] measure(ProductFilter filter, Pageable pageable) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            productRepository.findProductRows(filter, pageable);
+            entityManager.clear();
+        }
+        long[] micros = new long[MEASURED_ITERATIONS];
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            productRepository.findProductRows(filter, pageable);
+            micros[i] = (System.nanoTime() - start) / 1000;
+            entityManager.clear();
+        }
+        Arrays.sort(micros);
+        return micros;
+    }
+
+    // Runs the query unpaged (so it has no bind parameters left) and asks the database to explain the SQL Hibernate sent
+    private String plan(ProductFilter filter) {
+        CapturingStatementInspector.statements.clear();
+        productRepository.findProductRows(filter, Pageable.unpaged());
+        entityManager.clear();
+
+        String sql = CapturingStatementInspector.statements.get(0);
+        try {
+            StringBuilder plan = new StringBuilder();
+            for (Object row : entityManager.createNativeQuery("EXPLAIN " + sql).getResultList()) {
+                plan.append("    ").append(row).append(System.lineSeparator());
+            }
+            return plan.toString();
+        } catch (RuntimeException e) {
+            return "    could not explain: " + sql;
+        }
+    }
+
+    private static long average(long[] values) {
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    private static String describe(ProductFilter filter) {
+        List<String> parts = new ArrayList<>();
+        if (filter.category() != null) parts.add("category");
+        if (filter.productIds() != null) parts.add("search");
+        if (filter.lowStock()) parts.add("lowStock");
+        if (filter.outOfStock()) parts.add("outOfStock");
+        if (filter.minPrice() != null) parts.add("minPrice");
+        if (filter.maxPrice() != null) parts.add("maxPrice");
+        return parts.isEmpty() ? "(none)" : String.join(" + ", parts);
+    }
+}
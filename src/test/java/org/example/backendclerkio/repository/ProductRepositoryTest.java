@@ -1,8 +1,13 @@
 package org.example.backendclerkio.repository;
 
+import jakarta.persistence.EntityManager;
+import org.example.backendclerkio.dto.ProductResponseDTO;
 import org.example.backendclerkio.entity.Category;
 import org.example.backendclerkio.entity.Product;
 import org.example.backendclerkio.entity.Tag;
+import org.example.backendclerkio.service.ProductViewService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,12 +15,12 @@ import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
-@DataJpaTest
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
 class ProductRepositoryTest {
 
     @Autowired
@@ -24,8 +29,18 @@ class ProductRepositoryTest {
     @Autowired
     private CategoryRepository categoryRepository;
 
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
     private Category category;
 
+    private Tag tag(String name) {
+        return tagRepository.findByTagName(name).orElseGet(() -> tagRepository.save(new Tag(name)));
+    }
+
     @BeforeEach
     void setUp() {
         category = new Category();
@@ -41,7 +56,7 @@ class ProductRepositoryTest {
         product1.setStockCount(100);
         product1.setCategory(category);
         product1.setImages(List.of("image1_url", "image2_url"));
-        product1.setTags(Set.of(new Tag("electronics"), new Tag("computers")));
+        product1.setTags(Set.of(tag("electronics"), tag("computers")));
 
 
 
@@ -54,7 +69,7 @@ class ProductRepositoryTest {
         product2.setStockCount(102);
         product2.setCategory(category);
         product2.setImages(List.of("image3_url", "image4_url"));
-        product2.setTags(Set.of(new Tag("electronics"), new Tag("mobile")));
+        product2.setTags(Set.of(tag("electronics"), tag("mobile")));
 
         // Product 3 - Table
         Product product3 = new Product();
@@ -65,7 +80,7 @@ class ProductRepositoryTest {
         product3.setStockCount(99);
         product3.setCategory(category);
         product3.setImages(List.of("image5_url", "image6_url"));
-        product3.setTags(Set.of(new Tag("furniture"), new Tag("wooden")));
+        product3.setTags(Set.of(tag("furniture"), tag("wooden")));
 
         // Product 4 - Laptop2
         Product product4 = new Product();
@@ -76,7 +91,7 @@ class ProductRepositoryTest {
         product4.setStockCount(1);
         product4.setCategory(category);
         product4.setImages(List.of("image7_url", "image8_url"));
-        product4.setTags(Set.of(new Tag("electronics"), new Tag("budget")));
+        product4.setTags(Set.of(tag("electronics"), tag("budget")));
 
         // Save all products
         productRepository.saveAll(List.of(product1, product2, product3, product4));
@@ -135,4 +150,108 @@ class ProductRepositoryTest {
         int expected = 2;
         assertEquals(expected, result.getTotalElements());
     }
-}
\ No newline at end of file
+
+    @Test
+    void scrollProductsByPriceVisitsEveryProductOnce() {
+        ProductFilter filter = new ProductFilter("Tis", null, false, false, null, null);
+
+        List<ProductRow> firstPage = productRepository.scrollProductRows(filter, ProductCursor.SortKey.PRICE, false, null, 2);
+        ProductCursor cursor = ProductCursor.after(firstPage.get(1), ProductCursor.SortKey.PRICE, false, "");
+        List<ProductRow> secondPage = productRepository.scrollProductRows(filter, ProductCursor.SortKey.PRICE, false, ProductCursor.decode(cursor.encode()), 2);
+
+        assertEquals(List.of("Laptop2", "Table"), firstPage.stream().map(ProductRow::title).toList());
+        assertEquals(List.of("Smartphone", "Laptop"), secondPage.stream().map(ProductRow::title).toList());
+    }
+
+    @Test
+    void scrollProductsAppliesStockFilter() {
+        ProductFilter filter = new ProductFilter(null, null, true, false, null, null);
+
+        List<ProductRow> result = productRepository.scrollProductRows(filter, ProductCursor.SortKey.ID, false, null, 10);
+
+        assertEquals(List.of("Laptop2"), result.stream().map(ProductRow::title).toList());
+    }
+
+    @Test
+    void largeSearchMatchSetIsNotBoundAsOneInList() {
+        int bulkSize = ProductRepositoryCustomImpl.MAX_IN_IDS * 3;
+        List<Product> bulk = new ArrayList<>();
+        for (int i = 0; i < bulkSize; i++) {
+            Product product = new Product();
+            product.setTitle("Bulk " + i);
+            product.setDescription("Imported");
+            product.setPrice(10 + i);
+            product.setDiscountPrice(10 + i);
+            product.setStockCount(i % 10);
+            product.setCategory(category);
+            bulk.add(product);
+        }
+        productRepository.saveAll(bulk);
+        // Every imported product but those with stock 0 or 1 matches the search
+        Set<Integer> matchingIds = new TreeSet<>();
+        Set<Integer> expected = new HashSet<>();
+        for (Product product : bulk) {
+            if (product.getStockCount() > 1) {
+                matchingIds.add(product.getProductId());
+                if (product.getStockCount() <= 5) {
+                    expected.add(product.getProductId());
+                }
+            }
+        }
+        ProductFilter filter = new ProductFilter("Tis", matchingIds, true, false, null, null);
+
+        Page<ProductRow> page = productRepository.findProductRows(filter, PageRequest.of(1, 50, Sort.by("discountPrice").descending()));
+        assertEquals(expected.size(), page.getTotalElements());
+        assertEquals(50, page.getContent().size());
+        List<Double> prices = page.getContent().stream().map(ProductRow::discountPrice).toList();
+        assertEquals(prices.stream().sorted(Comparator.reverseOrder()).toList(), prices);
+
+        Set<Integer> scrolled = new HashSet<>();
+        ProductCursor cursor = null;
+        List<ProductRow> rows;
+        do {
+            rows = productRepository.scrollProductRows(filter, ProductCursor.SortKey.PRICE, false, cursor, 100);
+            rows.forEach(row -> assertTrue(scrolled.add(row.id())));
+            cursor = rows.isEmpty() ? null : ProductCursor.after(rows.get(rows.size() - 1), ProductCursor.SortKey.PRICE, false, "");
+        } while (rows.size() == 100);
+        assertEquals(expected, scrolled);
+
+        assertEquals(matchingIds.size(), productRepository.findProductRowsByIds(matchingIds).size());
+    }
+
+    @Test
+    void listingPageLoadsImagesAndTagsInBatches() {
+        entityManager.flush();
+        entityManager.clear();
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        Page<ProductRow> page = productRepository.findProductRows(new ProductFilter(null, null, false, false, null, null), PageRequest.of(0, 20));
+        List<ProductResponseDTO> views = new ProductViewService(productRepository).toViews(page.getContent());
+
+        assertEquals(4, views.size());
+        assertEquals(List.of("image1_url", "image2_url"), views.stream().filter(view -> view.title().equals("Laptop")).findFirst().get().images());
+        assertEquals(Set.of("electronics", "computers"), views.stream().filter(view -> view.title().equals("Laptop")).findFirst().get().tags());
+        // Rows with their category, one query for all images, one for all tags. No count: the page holds every match.
+        assertEquals(3, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void entityListingLoadsImagesAndTagsInBatches() {
+        entityManager.flush();
+        entityManager.clear();
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        Page<Product> page = productRepository.findProducts(null, "", false, false, null, null, PageRequest.of(0, 20));
+        for (Product product : page.getContent()) {
+            product.getCategory().getCategoryName();
+            product.getImages().size();
+            product.getTags().size();
+        }
+
+        assertEquals(4, page.getNumberOfElements());
+        // Page query with its category, one batch for all images, one batch for all tags
+        assertEquals(3, statistics.getPrepareStatementCount());
+    }
+}
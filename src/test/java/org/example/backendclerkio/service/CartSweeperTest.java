@@ -0,0 +1,83 @@
+package org.example.backendclerkio.service;
+
+import org.example.backendclerkio.entity.Order;
+import org.example.backendclerkio.entity.OrderProduct;
+import org.example.backendclerkio.entity.Product;
+import org.example.backendclerkio.entity.User;
+import org.example.backendclerkio.repository.OrderRepository;
+import org.example.backendclerkio.repository.ProductRepository;
+import org.example.backendclerkio.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Every batch commits on its own, so the test runs outside a rolled back transaction
+@DataJpaTest
+@Import(CartSweeper.class)
+@TestPropertySource(properties = {"cart.sweeper.enabled=false", "cart.sweeper.batch-size=2"})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CartSweeperTest {
+
+    @Autowired
+    private CartSweeper cartSweeper;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void sweepDeletesEmptyAndAbandonedCartsOnly() {
+        User user = userRepository.save(new User("Sweep", "Test", "sweep@example.com", "hash"));
+        Product product = productRepository.save(new Product("Product", "", 10, 10, 5, null, new ArrayList<>(), new HashSet<>()));
+        long now = System.currentTimeMillis();
+
+        int emptyOld1 = cart(user, now - TimeUnit.HOURS.toMillis(2), false, null);
+        int emptyOld2 = cart(user, now - TimeUnit.HOURS.toMillis(3), false, null);
+        int emptyOld3 = cart(user, now - TimeUnit.HOURS.toMillis(4), false, null);
+        int emptyRecent = cart(user, now, false, null);
+        int abandoned = cart(user, now - TimeUnit.DAYS.toMillis(40), false, product);
+        int active = cart(user, now - TimeUnit.DAYS.toMillis(1), false, product);
+        int paid = cart(user, now - TimeUnit.DAYS.toMillis(40), true, product);
+
+        assertEquals(4, cartSweeper.sweep());
+
+        assertFalse(orderRepository.existsById(emptyOld1));
+        assertFalse(orderRepository.existsById(emptyOld2));
+        assertFalse(orderRepository.existsById(emptyOld3));
+        assertFalse(orderRepository.existsById(abandoned));
+        assertTrue(orderRepository.existsById(emptyRecent));
+        assertTrue(orderRepository.existsById(active));
+        assertTrue(orderRepository.existsById(paid), "Paid orders are history, not carts");
+    }
+
+    private int cart(User user, long orderDate, boolean paid, Product product) {
+        Order order = new Order();
+        order.setUser(user);
+        order.setOrderDate(orderDate);
+        order.setPaid(paid);
+        if (product != null) {
+            OrderProduct line = new OrderProduct();
+            line.setOrder(order);
+            line.setProduct(product);
+            line.setQuantity(1);
+            line.setPriceAtTimeOfOrder(product.getPrice());
+            order.getOrderProducts().add(line);
+        }
+        return orderRepository.save(order).getId();
+    }
+}
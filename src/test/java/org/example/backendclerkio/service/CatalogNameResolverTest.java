@@ -0,0 +1,85 @@
+package org.example.backendclerkio.service;
+
+import org.example.backendclerkio.entity.Category;
+import org.example.backendclerkio.entity.Tag;
+import org.example.backendclerkio.repository.CategoryRepository;
+import org.example.backendclerkio.repository.TagRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The resolver commits in its own transactions, so these tests run without the usual rollback and use names nothing else does
+@DataJpaTest
+@Import(CatalogNameResolver.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CatalogNameResolverTest {
+
+    @Autowired
+    private CatalogNameResolver nameResolver;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void resolvesExistingAndCreatesMissingCategories() {
+        Category existing = categoryRepository.save(new Category("resolver-existing"));
+
+        Map<String, Category> categories = nameResolver.resolveCategories(List.of("resolver-existing", "resolver-new"));
+
+        assertEquals(existing.getCategoryId(), categories.get("resolver-existing").getCategoryId());
+        assertTrue(categoryRepository.findByCategoryName("resolver-new").isPresent());
+        assertEquals(categories.get("resolver-new").getCategoryId(), nameResolver.resolveCategory("resolver-new").getCategoryId());
+    }
+
+    @Test
+    void repeatedTagNamesCreateOneRow() {
+        Set<Tag> tags = nameResolver.resolveTags(List.of("resolver-tag", "resolver-tag", "resolver-other"));
+
+        assertEquals(2, tags.size());
+        assertEquals(2, tagRepository.findByTagNameIn(List.of("resolver-tag", "resolver-other")).size());
+    }
+
+    @Test
+    void concurrentWritersShareOneRowPerName() throws Exception {
+        List<String> names = List.of("resolver-race-1", "resolver-race-2", "resolver-race-3");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Map<String, Integer>>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                // Fresh resolvers, so every thread misses its in-memory ids and races to insert
+                CatalogNameResolver resolver = new CatalogNameResolver(categoryRepository, tagRepository, transactionManager);
+                results.add(executor.submit(() -> {
+                    start.await();
+                    Map<String, Integer> ids = new HashMap<>();
+                    resolver.resolveTagsByName(names).forEach((name, tag) -> ids.put(name, tag.getTagId()));
+                    return ids;
+                }));
+            }
+            start.countDown();
+
+            Map<String, Integer> first = results.get(0).get(30, TimeUnit.SECONDS);
+            for (Future<Map<String, Integer>> result : results) {
+                assertEquals(first, result.get(30, TimeUnit.SECONDS));
+            }
+            assertEquals(3, tagRepository.findByTagNameIn(names).size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
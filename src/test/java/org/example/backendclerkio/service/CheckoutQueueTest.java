@@ -0,0 +1,205 @@
+package org.example.backendclerkio.service;
+
+import org.example.backendclerkio.dto.CheckoutStatusDTO;
+import org.example.backendclerkio.entity.Order;
+import org.example.backendclerkio.entity.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckoutQueueTest {
+
+    private static final int USER_ID = 7;
+
+    @TempDir
+    Path tempDir;
+
+    private OrderService orderService;
+    private final Map<Integer, Order> orders = new HashMap<>();
+    private CheckoutQueue checkoutQueue;
+
+    @BeforeEach
+    void setUp() {
+        orderService = Mockito.mock(OrderService.class);
+        Mockito.when(orderService.findOrderForCheckout(ArgumentMatchers.anyInt()))
+                .thenAnswer(invocation -> Optional.ofNullable(orders.get(invocation.<Integer>getArgument(0))));
+        // Checkout marks the order paid, like the real one
+        Mockito.doAnswer(invocation -> {
+            invocation.<Order>getArgument(0).setPaid(true);
+            return null;
+        }).when(orderService).checkout(ArgumentMatchers.any());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (checkoutQueue != null) {
+            checkoutQueue.stop();
+        }
+    }
+
+    private CheckoutQueue startQueue(int workers, int capacity) throws Exception {
+        return startQueue(workers, capacity, "none");
+    }
+
+    private CheckoutQueue startQueue(int workers, int capacity, String ddlAuto) throws Exception {
+        checkoutQueue = new CheckoutQueue(orderService, true, workers, capacity,
+                tempDir.resolve("checkout.journal").toString(), 600, ddlAuto);
+        checkoutQueue.start();
+        return checkoutQueue;
+    }
+
+    private Order order(int orderId) {
+        Order order = new Order();
+        order.setId(orderId);
+        User user = new User("Anders", "Ludvigsen", "a@a.dk", "password");
+        user.setUserId(USER_ID);
+        order.setUser(user);
+        orders.put(orderId, order);
+        return order;
+    }
+
+    @Test
+    void submittedCheckoutCompletes() throws Exception {
+        order(1);
+        CheckoutQueue queue = startQueue(2, 10);
+
+        CheckoutStatusDTO accepted = queue.submit(1, USER_ID);
+
+        assertEquals(CheckoutStatusDTO.Status.QUEUED, accepted.status());
+        Mockito.verify(orderService, Mockito.timeout(5000)).checkout(orders.get(1));
+        awaitStatus(queue, 1, CheckoutStatusDTO.Status.COMPLETED);
+        // Nothing open is left, so the journal started over
+        assertEquals(0, Files.size(tempDir.resolve("checkout.journal")));
+    }
+
+    @Test
+    void failedCheckoutReportsTheReason() throws Exception {
+        order(1);
+        Mockito.doThrow(new IllegalArgumentException("Not enough stock for product: Mascara"))
+                .when(orderService).checkout(ArgumentMatchers.any());
+        CheckoutQueue queue = startQueue(1, 10);
+
+        queue.submit(1, USER_ID);
+
+        CheckoutStatusDTO status = awaitStatus(queue, 1, CheckoutStatusDTO.Status.FAILED);
+        assertEquals("Not enough stock for product: Mascara", status.message());
+    }
+
+    @Test
+    void invalidOrdersAreRejectedBeforeQueueing() throws Exception {
+        order(2).setPaid(true);
+        CheckoutQueue queue = startQueue(1, 10);
+
+        assertThrows(IllegalArgumentException.class, () -> queue.submit(1, USER_ID));
+        assertThrows(IllegalArgumentException.class, () -> queue.submit(2, USER_ID));
+        Mockito.verify(orderService, Mockito.never()).checkout(ArgumentMatchers.any());
+    }
+
+    @Test
+    void fullQueueRejectsInsteadOfWaiting() throws Exception {
+        order(1);
+        order(2);
+        order(3);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return null;
+        }).when(orderService).checkout(ArgumentMatchers.any());
+        CheckoutQueue queue = startQueue(1, 1);
+
+        queue.submit(1, USER_ID);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // The worker is busy with order 1, so order 2 takes the only slot
+        queue.submit(2, USER_ID);
+        assertThrows(CheckoutQueue.CheckoutUnavailableException.class, () -> queue.submit(3, USER_ID));
+        // Submitting an order again doesn't take another slot
+        assertEquals(CheckoutStatusDTO.Status.QUEUED, queue.submit(2, USER_ID).status());
+
+        release.countDown();
+        Mockito.verify(orderService, Mockito.timeout(5000).times(2)).checkout(ArgumentMatchers.any());
+    }
+
+    @Test
+    void openCheckoutsAreReplayedOnStart() throws Exception {
+        order(1);
+        order(2).setPaid(true);
+        Files.writeString(tempDir.resolve("checkout.journal"), "1,1,7\n2,2,7\n3,3,7\nD,3\n4,4,7");
+
+        CheckoutQueue queue = startQueue(1, 10);
+
+        awaitStatus(queue, 1, CheckoutStatusDTO.Status.COMPLETED);
+        // Order 2 was paid before the restart, order 3 was done and the line for order 4 was cut short
+        awaitStatus(queue, 2, CheckoutStatusDTO.Status.COMPLETED);
+        Mockito.verify(orderService).checkout(orders.get(1));
+        Mockito.verify(orderService, Mockito.never()).checkout(orders.get(2));
+        assertEquals(Optional.empty(), queue.status(3, USER_ID));
+        assertEquals(Optional.empty(), queue.status(4, USER_ID));
+    }
+
+    @Test
+    void otherUsersCantCheckOutOrSeeTheOrder() throws Exception {
+        order(1);
+        CheckoutQueue queue = startQueue(1, 10);
+
+        assertThrows(IllegalArgumentException.class, () -> queue.submit(1, USER_ID + 1));
+        queue.submit(1, USER_ID);
+
+        assertThrows(IllegalArgumentException.class, () -> queue.submit(1, USER_ID + 1));
+        assertEquals(Optional.empty(), queue.status(1, USER_ID + 1));
+        awaitStatus(queue, 1, CheckoutStatusDTO.Status.COMPLETED);
+    }
+
+    @Test
+    void journalIsNotReplayedWhenTheSchemaWasRecreated() throws Exception {
+        order(1);
+        Files.writeString(tempDir.resolve("checkout.journal"), "1,1,7\n");
+
+        CheckoutQueue queue = startQueue(1, 10, "create");
+
+        Thread.sleep(200);
+        Mockito.verify(orderService, Mockito.never()).checkout(ArgumentMatchers.any());
+        assertEquals(Optional.empty(), queue.status(1, USER_ID));
+        assertEquals(0, Files.size(tempDir.resolve("checkout.journal")));
+    }
+
+    @Test
+    void replayedCheckoutOfAnOrderNowOwnedByAnotherUserIsDropped() throws Exception {
+        order(1).getUser().setUserId(USER_ID + 1);
+        Files.writeString(tempDir.resolve("checkout.journal"), "1,1,7\n");
+
+        CheckoutQueue queue = startQueue(1, 10);
+
+        assertEquals("Order not found.", awaitStatus(queue, 1, CheckoutStatusDTO.Status.FAILED).message());
+        Mockito.verify(orderService, Mockito.never()).checkout(ArgumentMatchers.any());
+    }
+
+    private static CheckoutStatusDTO awaitStatus(CheckoutQueue queue, int orderId, CheckoutStatusDTO.Status expected)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            Optional<CheckoutStatusDTO> status = queue.status(orderId, USER_ID);
+            if (status.isPresent() && status.get().status() == expected) {
+                return status.get();
+            }
+            if (System.currentTimeMillis() > deadline) {
+                fail("Order " + orderId + " did not reach " + expected + ", was " + status);
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.example.backendclerkio.service;
+
+import org.example.backendclerkio.entity.Order;
+import org.example.backendclerkio.entity.OrderProduct;
+import org.example.backendclerkio.entity.Product;
+import org.example.backendclerkio.entity.User;
+import org.example.backendclerkio.repository.OrderRepository;
+import org.example.backendclerkio.repository.ProductRepository;
+import org.example.backendclerkio.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Many threads checking out carts that all contain the same scarce product. Every checkout commits on its own,
+// so the test runs outside a rolled back transaction.
+@DataJpaTest
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({OrderService.class, ProductCache.class, ProductViewService.class, CatalogVersion.class, StockReservationService.class, HotStockService.class, EmailOutboxService.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CheckoutStressTest {
+
+    private static final int THREADS = 8;
+    private static final int ORDERS = 200;
+    private static final int HOT_STOCK = 50;
+    private static final int COLD_STOCK = 1000;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private StockReservationService stockReservations;
+
+    @Test
+    void concurrentCheckoutsNeverOversell() throws Exception {
+        User user = userRepository.save(new User("Stress", "Test", "stress@example.com", "hash"));
+        Product hot = productRepository.save(new Product("Hot product", "", 10, 10, HOT_STOCK, null, new ArrayList<>(), new HashSet<>()));
+        Product cold = productRepository.save(new Product("Cold product", "", 10, 10, COLD_STOCK, null, new ArrayList<>(), new HashSet<>()));
+
+        List<Integer> orderIds = new ArrayList<>();
+        for (int i = 0; i < ORDERS; i++) {
+            Order order = new Order();
+            order.setUser(user);
+            order.setOrderDate(System.currentTimeMillis());
+            order.getOrderProducts().add(line(order, cold));
+            order.getOrderProducts().add(line(order, hot));
+            orderIds.add(orderRepository.save(order).getId());
+        }
+
+        // Every order is submitted twice, as a double-clicked checkout button would
+        List<Integer> submissions = new ArrayList<>(orderIds);
+        submissions.addAll(orderIds);
+        Collections.shuffle(submissions, new Random(42));
+
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Throwable> unexpected = new CopyOnWriteArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int orderId : submissions) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    orderService.checkout(orderRepository.findWithUserById(orderId).orElseThrow());
+                    succeeded.incrementAndGet();
+                } catch (IllegalArgumentException e) {
+                    rejected.incrementAndGet();
+                } catch (RuntimeException e) {
+                    unexpected.add(e);
+                }
+                return null;
+            }));
+        }
+
+        long startedAt = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        double seconds = (System.nanoTime() - startedAt) / 1e9;
+        executor.shutdown();
+
+        System.out.printf("%d checkouts succeeded, %d rejected, %.0f checkout attempts/s with %d threads%n",
+                succeeded.get(), rejected.get(), submissions.size() / seconds, THREADS);
+
+        assertTrue(unexpected.isEmpty(), () -> "Unexpected failures: " + unexpected);
+        assertEquals(HOT_STOCK, succeeded.get(), "Exactly the available stock should be sold");
+        assertEquals(submissions.size() - HOT_STOCK, rejected.get());
+        assertEquals(0, productRepository.findById(hot.getProductId()).orElseThrow().getStockCount());
+        // A rejected checkout must also give back the cold product it took before hitting the hot one
+        assertEquals(COLD_STOCK - HOT_STOCK, productRepository.findById(cold.getProductId()).orElseThrow().getStockCount());
+
+        long paidOrders = orderIds.stream().filter(id -> orderRepository.findById(id).orElseThrow().isPaid()).count();
+        assertEquals(HOT_STOCK, paidOrders);
+    }
+
+    // Two carts hold half the stock each; whichever checkout waits for the other must not count the other's hold
+    // once that one has taken its stock
+    @Test
+    void twoCartsHoldingAllTheStockBothCheckOut() throws Exception {
+        User user = userRepository.save(new User("Holds", "Test", "holds@example.com", "hash"));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < 20; round++) {
+                Product product = productRepository.save(new Product("Held product " + round, "", 10, 10, 10, null, new ArrayList<>(), new HashSet<>()));
+                List<Integer> orderIds = new ArrayList<>();
+                for (int i = 0; i < 2; i++) {
+                    Order order = new Order();
+                    order.setUser(user);
+                    order.setOrderDate(System.currentTimeMillis());
+                    OrderProduct line = line(order, product);
+                    line.setQuantity(5);
+                    order.getOrderProducts().add(line);
+                    int orderId = orderRepository.save(order).getId();
+                    assertTrue(stockReservations.reserve(orderId, product.getProductId(), 5, 10));
+                    orderIds.add(orderId);
+                }
+
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<?>> futures = new ArrayList<>();
+                for (int orderId : orderIds) {
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        orderService.checkout(orderRepository.findWithUserById(orderId).orElseThrow());
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> future : futures) {
+                    future.get(30, TimeUnit.SECONDS);
+                }
+
+                assertEquals(0, productRepository.findById(product.getProductId()).orElseThrow().getStockCount());
+                assertEquals(0, stockReservations.held(product.getProductId()));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static OrderProduct line(Order order, Product product) {
+        OrderProduct orderProduct = new OrderProduct();
+        orderProduct.setOrder(order);
+        orderProduct.setProduct(product);
+        orderProduct.setPriceAtTimeOfOrder(product.getDiscountPrice());
+        orderProduct.setQuantity(1);
+        return orderProduct;
+    }
+}
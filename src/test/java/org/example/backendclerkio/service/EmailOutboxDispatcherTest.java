@@ -0,0 +1,112 @@
+package org.example.backendclerkio.service;
+
+import org.example.backendclerkio.dto.OrderResponseDTO;
+import org.example.backendclerkio.entity.EmailOutbox;
+import org.example.backendclerkio.entity.Order;
+import org.example.backendclerkio.entity.User;
+import org.example.backendclerkio.repository.EmailOutboxRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Sends through a real JavaMail client to an in-process SMTP server
+class EmailOutboxDispatcherTest {
+
+    private FakeSmtpServer smtpServer;
+    private EmailOutboxRepository outboxRepository;
+    private EmailOutboxDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        smtpServer = new FakeSmtpServer();
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(smtpServer.port());
+        mailSender.getJavaMailProperties().put("mail.smtp.from", "shop@example.com");
+
+        outboxRepository = Mockito.mock(EmailOutboxRepository.class);
+        OrderService orderService = Mockito.mock(OrderService.class);
+        User user = new User("Anders", "Ludvigsen", "a@a.dk", "password");
+        Order order = new Order();
+        order.setUser(user);
+        Mockito.when(orderService.findOrderForCheckout(ArgumentMatchers.anyInt())).thenReturn(Optional.of(order));
+        Mockito.when(orderService.findOrderView(ArgumentMatchers.anyInt()))
+                .thenAnswer(invocation -> Optional.of(new OrderResponseDTO(invocation.getArgument(0), 0, true, List.of())));
+        OrderEmailRenderer renderer = Mockito.mock(OrderEmailRenderer.class);
+        Mockito.when(renderer.render(ArgumentMatchers.any(), ArgumentMatchers.any())).thenReturn("<h1>Thank you</h1>");
+
+        dispatcher = new EmailOutboxDispatcher(outboxRepository, new EmailOutboxService(outboxRepository), orderService,
+                renderer, new EmailService(mailSender), Mockito.mock(PlatformTransactionManager.class),
+                false, 2, 20, 1000, 3, 5000, 300000);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        smtpServer.close();
+    }
+
+    @Test
+    void sendsABatchOverOneConnection() throws Exception {
+        due(email(1, "a@example.com", 0), email(2, "b@example.com", 0), email(3, "c@example.com", 0));
+
+        assertEquals(3, dispatcher.dispatchDue());
+
+        assertEquals(1, smtpServer.connections());
+        assertEquals(List.of("a@example.com", "b@example.com", "c@example.com"),
+                smtpServer.deliveries().stream().map(FakeSmtpServer.Delivery::recipient).toList());
+        assertTrue(smtpServer.deliveries().get(0).data().contains("Order Confirmation for order: 1"));
+        Mockito.verify(outboxRepository).markSent(ArgumentMatchers.eq(List.of(1, 2, 3)), ArgumentMatchers.anyLong());
+    }
+
+    @Test
+    void rejectedEmailIsRetriedWithBackoffWithoutHoldingUpTheOthers() throws Exception {
+        due(email(1, "a@example.com", 0), email(2, "bounce@example.com", 0));
+        long before = System.currentTimeMillis();
+
+        dispatcher.dispatchDue();
+
+        assertEquals(1, smtpServer.deliveries().size());
+        Mockito.verify(outboxRepository).markSent(ArgumentMatchers.eq(List.of(1)), ArgumentMatchers.anyLong());
+        Mockito.verify(outboxRepository).recordFailure(ArgumentMatchers.eq(2), ArgumentMatchers.eq(EmailOutbox.Status.PENDING),
+                ArgumentMatchers.eq(1), ArgumentMatchers.longThat(nextAttempt -> nextAttempt >= before + 5000), ArgumentMatchers.anyString());
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() throws Exception {
+        smtpServer.close();
+        due(email(1, "a@example.com", 2));
+
+        dispatcher.dispatchDue();
+
+        Mockito.verify(outboxRepository).recordFailure(ArgumentMatchers.eq(1), ArgumentMatchers.eq(EmailOutbox.Status.FAILED),
+                ArgumentMatchers.eq(3), ArgumentMatchers.anyLong(), ArgumentMatchers.anyString());
+        Mockito.verify(outboxRepository, Mockito.never()).markSent(ArgumentMatchers.any(), ArgumentMatchers.anyLong());
+    }
+
+    private void due(EmailOutbox... emails) {
+        List<Integer> ids = new ArrayList<>();
+        for (EmailOutbox email : emails) {
+            ids.add(email.getId());
+        }
+        Mockito.when(outboxRepository.findDueIds(ArgumentMatchers.anyLong(), ArgumentMatchers.any())).thenReturn(ids);
+        Mockito.when(outboxRepository.claim(ArgumentMatchers.eq(ids), ArgumentMatchers.anyLong(), ArgumentMatchers.anyLong())).thenReturn(ids.size());
+        Mockito.when(outboxRepository.findByIdInAndNextAttemptAt(ArgumentMatchers.eq(ids), ArgumentMatchers.anyLong())).thenReturn(List.of(emails));
+    }
+
+    private static EmailOutbox email(int id, String recipient, int attempts) {
+        EmailOutbox email = new EmailOutbox(id, recipient, System.currentTimeMillis());
+        email.setId(id);
+        email.setAttempts(attempts);
+        return email;
+    }
+}
@@ -0,0 +1,99 @@
+package org.example.backendclerkio.service;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Just enough of an SMTP server for JavaMail to deliver to, in process. Recipients starting with "bounce" are
+// rejected at RCPT TO.
+class FakeSmtpServer implements Closeable {
+
+    record Delivery(String recipient, String data) {}
+
+    private final ServerSocket serverSocket;
+    private final List<Delivery> deliveries = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connections = new AtomicInteger();
+
+    FakeSmtpServer() throws IOException {
+        serverSocket = new ServerSocket(0);
+        Thread acceptor = new Thread(this::accept, "fake-smtp");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    List<Delivery> deliveries() {
+        return deliveries;
+    }
+
+    int connections() {
+        return connections.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.incrementAndGet();
+                Thread session = new Thread(() -> serve(socket), "fake-smtp-session");
+                session.setDaemon(true);
+                session.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+             Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII)) {
+            reply(out, "220 localhost fake SMTP");
+            String recipient = null;
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.toUpperCase();
+                if (command.startsWith("RCPT TO:")) {
+                    recipient = line.substring(line.indexOf('<') + 1, line.indexOf('>'));
+                    reply(out, recipient.startsWith("bounce") ? "550 No such user" : "250 OK");
+                } else if (command.equals("DATA")) {
+                    reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                    StringBuilder data = new StringBuilder();
+                    while (!(line = in.readLine()).equals(".")) {
+                        data.append(line).append('\n');
+                    }
+                    deliveries.add(new Delivery(recipient, data.toString()));
+                    reply(out, "250 OK");
+                } else if (command.equals("QUIT")) {
+                    reply(out, "221 Bye");
+                    return;
+                } else {
+                    // EHLO, MAIL FROM, RSET, NOOP
+                    if (command.startsWith("RSET") || command.startsWith("MAIL FROM:")) {
+                        recipient = null;
+                    }
+                    reply(out, "250 OK");
+                }
+            }
+        } catch (IOException e) {
+            // The client went away
+        }
+    }
+
+    private static void reply(Writer out, String line) throws IOException {
+        out.write(line + "\r\n");
+        out.flush();
+    }
+}
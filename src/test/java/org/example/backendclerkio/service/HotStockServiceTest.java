@@ -0,0 +1,137 @@
+package org.example.backendclerkio.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.backendclerkio.entity.Product;
+import org.example.backendclerkio.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotStockServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ProductRepository productRepository;
+
+    @BeforeEach
+    void setUp() {
+        productRepository = Mockito.mock(ProductRepository.class);
+        Product product = new Product();
+        product.setProductId(26);
+        product.setStockCount(100);
+        Mockito.when(productRepository.findAllById(ArgumentMatchers.any())).thenReturn(List.of(product));
+    }
+
+    private HotStockService startService() throws Exception {
+        return startService("none");
+    }
+
+    // The flusher runs once an hour here, so the tests decide when changes reach the database
+    private HotStockService startService(String ddlAuto) throws Exception {
+        HotStockService hotStock = new HotStockService(productRepository, Mockito.mock(PlatformTransactionManager.class),
+                new ProductCache(new ObjectMapper(), 10, 60), new CatalogVersion(),
+                true, "26", 3_600_000, tempDir.resolve("hot-stock.journal").toString(), 4, ddlAuto);
+        hotStock.start();
+        return hotStock;
+    }
+
+    @Test
+    void flushWritesCoalescedChanges() throws Exception {
+        HotStockService hotStock = startService();
+        assertTrue(hotStock.isHot(26));
+        assertFalse(hotStock.isHot(27));
+
+        assertTrue(hotStock.tryTake(26, 1, 0));
+        assertTrue(hotStock.tryTake(26, 2, 0));
+        hotStock.adjust(26, 10);
+        assertEquals(107, hotStock.available(26));
+
+        hotStock.flush();
+        Mockito.verify(productRepository, Mockito.times(1)).incrementStock(26, 7);
+
+        hotStock.flush();
+        Mockito.verify(productRepository, Mockito.times(1)).incrementStock(ArgumentMatchers.anyInt(), ArgumentMatchers.anyInt());
+        hotStock.stop();
+    }
+
+    @Test
+    void takeLeavesReservedStock() throws Exception {
+        HotStockService hotStock = startService();
+
+        assertFalse(hotStock.tryTake(26, 10, 91));
+        assertTrue(hotStock.tryTake(26, 10, 90));
+        assertEquals(90, hotStock.available(26));
+        hotStock.stop();
+    }
+
+    @Test
+    void unflushedChangesAreReplayedAfterACrash() throws Exception {
+        HotStockService crashed = startService();
+        crashed.tryTake(26, 5, 0);
+        crashed.tryTake(26, 1, 0);
+        // No stop(): the process dies before the flusher ran
+
+        HotStockService restarted = startService();
+
+        Mockito.verify(productRepository).incrementStock(26, -6);
+        restarted.stop();
+    }
+
+    @Test
+    void unflushedChangesAreDiscardedWhenTheTableWasRecreated() throws Exception {
+        HotStockService crashed = startService("create");
+        crashed.tryTake(26, 5, 0);
+
+        HotStockService restarted = startService("create");
+
+        Mockito.verify(productRepository, Mockito.never()).incrementStock(ArgumentMatchers.anyInt(), ArgumentMatchers.anyInt());
+        restarted.stop();
+    }
+
+    @Test
+    void removingMoreThanIsLeftOnlyJournalsWhatWasRemoved() throws Exception {
+        HotStockService hotStock = startService();
+
+        hotStock.adjust(26, -150);
+        assertEquals(0, hotStock.available(26));
+
+        hotStock.flush();
+        Mockito.verify(productRepository).incrementStock(26, -100);
+        hotStock.stop();
+    }
+
+    @Test
+    void concurrentTakesNeverOversell() throws Exception {
+        HotStockService hotStock = startService();
+        AtomicInteger taken = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(() -> {
+                while (hotStock.tryTake(26, 1, 0)) {
+                    taken.incrementAndGet();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(100, taken.get());
+        assertEquals(0, hotStock.available(26));
+        hotStock.stop();
+    }
+}
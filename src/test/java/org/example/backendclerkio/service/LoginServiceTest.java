@@ -0,0 +1,86 @@
+package org.example.backendclerkio.service;
+
+import org.example.backendclerkio.JwtTokenManager;
+import org.example.backendclerkio.dto.LatencyHistogramDTO;
+import org.example.backendclerkio.entity.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoginServiceTest {
+
+    private UserService userService;
+    private JwtTokenManager jwtTokenManager;
+    private LoginService loginService;
+
+    @BeforeEach
+    void setUp() {
+        userService = Mockito.mock(UserService.class);
+        jwtTokenManager = Mockito.mock(JwtTokenManager.class);
+        Mockito.when(jwtTokenManager.generateJwtToken(ArgumentMatchers.any())).thenReturn("token");
+        Mockito.when(userService.findByUserEmail(ArgumentMatchers.anyString())).thenReturn(Optional.empty());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (loginService != null) {
+            loginService.stop();
+        }
+    }
+
+    @Test
+    void loadsTheUserOnceAndChecksThePassword() throws Exception {
+        // Low cost keeps the test fast
+        PasswordEncoder encoder = new BCryptPasswordEncoder(4);
+        User user = new User("Anders", "Ludvigsen", "a@a.dk", encoder.encode("password"));
+        Mockito.when(userService.findByUserEmail("a@a.dk")).thenReturn(Optional.of(user));
+        loginService = new LoginService(userService, jwtTokenManager, encoder, 2, 10);
+
+        assertEquals(Optional.of("token"), loginService.login("a@a.dk", "password").get(5, TimeUnit.SECONDS));
+        assertEquals(Optional.empty(), loginService.login("a@a.dk", "wrong").get(5, TimeUnit.SECONDS));
+        assertEquals(Optional.empty(), loginService.login("nobody@a.dk", "password").get(5, TimeUnit.SECONDS));
+
+        Mockito.verify(userService, Mockito.times(2)).findByUserEmail("a@a.dk");
+        Mockito.verify(jwtTokenManager).generateJwtToken(user);
+        // An unknown email is hashed too, so it can't be told apart by timing
+        LatencyHistogramDTO hashTime = loginService.stats().hashTime();
+        assertEquals(3, hashTime.count());
+        assertEquals(3, loginService.stats().totalTime().count());
+    }
+
+    @Test
+    void fullQueueShedsLogins() throws Exception {
+        PasswordEncoder encoder = Mockito.mock(PasswordEncoder.class);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(encoder.matches(ArgumentMatchers.any(), ArgumentMatchers.any())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return false;
+        });
+        loginService = new LoginService(userService, jwtTokenManager, encoder, 1, 1);
+
+        CompletableFuture<Optional<String>> first = loginService.login("a@a.dk", "password");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // The only thread is busy with the first login, so the second takes the only place in the queue
+        CompletableFuture<Optional<String>> second = loginService.login("b@a.dk", "password");
+        assertThrows(LoginService.LoginUnavailableException.class, () -> loginService.login("c@a.dk", "password"));
+        assertEquals(1, loginService.stats().rejected());
+        assertEquals(1, loginService.stats().queued());
+
+        release.countDown();
+        assertEquals(Optional.empty(), first.get(5, TimeUnit.SECONDS));
+        assertEquals(Optional.empty(), second.get(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.backendclerkio.service;
+
+import org.example.backendclerkio.dto.OrderProductResponseDTO;
+import org.example.backendclerkio.dto.OrderResponseDTO;
+import org.example.backendclerkio.dto.ProductResponseDTO;
+import org.example.backendclerkio.entity.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+// Rendering time of the order confirmation email for 1, 10 and 100 line orders.
+// Skipped in normal builds, run with: mvn test -Dtest=OrderEmailRendererBenchmark -Dbenchmark=true
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class OrderEmailRendererBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 50_000;
+    private static final int MEASURED_ITERATIONS = 200_000;
+
+    // Keeps the JIT from dropping the rendering
+    private static int sink;
+
+    @Test
+    void benchmarkRender() {
+        OrderEmailRenderer renderer = new OrderEmailRenderer();
+        User user = new User("Anders", "Ludvigsen", "a@a.dk", "password");
+
+        for (int lines : new int[] {1, 10, 100}) {
+            OrderResponseDTO order = order(lines);
+            int iterations = MEASURED_ITERATIONS / lines;
+            for (int i = 0; i < WARMUP_ITERATIONS / lines; i++) {
+                sink += renderer.render(user, order).length();
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sink += renderer.render(user, order).length();
+            }
+            long nanosPerRender = (System.nanoTime() - start) / iterations;
+            System.out.printf("%3d lines: %,8d ns/render, %,7d chars%n", lines, nanosPerRender, renderer.render(user, order).length());
+        }
+        System.out.println("(sink " + sink + ")");
+    }
+
+    private static OrderResponseDTO order(int lines) {
+        List<OrderProductResponseDTO> orderProducts = new ArrayList<>();
+        for (int i = 1; i <= lines; i++) {
+            ProductResponseDTO product = new ProductResponseDTO(i, "Product " + i, "", 10 + i * 0.25, 9 + i * 0.25, 100,
+                    "Groceries", List.of("https://cdn.dummyjson.com/products/images/" + i + "/thumbnail.png"), Set.of());
+            orderProducts.add(new OrderProductResponseDTO(i, product, product.discountPrice(), 1 + i % 3));
+        }
+        return new OrderResponseDTO(1, System.currentTimeMillis(), true, orderProducts);
+    }
+}
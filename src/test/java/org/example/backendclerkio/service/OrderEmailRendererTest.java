@@ -0,0 +1,59 @@
+package org.example.backendclerkio.service;
+
+import org.example.backendclerkio.dto.OrderProductResponseDTO;
+import org.example.backendclerkio.dto.OrderResponseDTO;
+import org.example.backendclerkio.dto.ProductResponseDTO;
+import org.example.backendclerkio.entity.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderEmailRendererTest {
+
+    private final OrderEmailRenderer renderer = new OrderEmailRenderer();
+
+    @Test
+    void rendersEveryLineAndTheTotal() {
+        User user = new User("Anders", "Ludvigsen", "a@a.dk", "password");
+        OrderResponseDTO order = new OrderResponseDTO(1, 0, true, List.of(
+                line(1, "Green Chili Pepper", "chili.png", 0.99, 3),
+                line(2, "Apple", null, 12.5, 2)));
+
+        String html = renderer.render(user, order);
+
+        assertTrue(html.startsWith("<h1>Hi Anders Ludvigsen</h1><h3>Your order was confirmed at 1970-01-01T01:00</h3>"));
+        assertTrue(html.contains("<img src='chili.png' style='width: auto; height: 50px;'></td>"
+                + "<td style='border: 1px solid black; padding: 8px;'>Green Chili Pepper</td>"
+                + "<td style='border: 1px solid black; padding: 8px;'>$0.99</td>"
+                + "<td style='border: 1px solid black; padding: 8px;'>3</td>"
+                + "<td style='border: 1px solid black; padding: 8px;'>$2.97</td></tr>"));
+        assertTrue(html.contains("<img src='' style="), "A product without images renders an empty src");
+        assertTrue(html.endsWith("</tbody></table><h3 style='text-align: right;'>Total: $27.97</h3>"));
+    }
+
+    @Test
+    void amountsMatchStringFormat() {
+        double[] amounts = {0, 0.1 * 3, 0.125, 1.005, 2.675, 9.99, 12.5, 19.999, 1234567.891, -3.5};
+        for (double amount : amounts) {
+            StringBuilder formatted = new StringBuilder();
+            OrderEmailRenderer.appendAmount(formatted, amount);
+            assertEquals(String.format(Locale.ROOT, "%.2f", amount), formatted.toString(), "Amount " + amount);
+        }
+    }
+
+    @Test
+    void unknownPlaceholderIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new OrderEmailRenderer("<p>{{nickname}}</p>{{#lines}}{{title}}{{/lines}}"));
+    }
+
+    private static OrderProductResponseDTO line(int id, String title, String image, double price, int quantity) {
+        ProductResponseDTO product = new ProductResponseDTO(id, title, "", price, price, 10, "Fruit",
+                image != null ? List.of(image) : List.of(), Set.of());
+        return new OrderProductResponseDTO(id, product, price, quantity);
+    }
+}
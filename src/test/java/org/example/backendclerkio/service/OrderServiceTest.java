@@ -3,17 +3,20 @@ package org.example.backendclerkio.service;
 import jakarta.transaction.Transactional;
 import org.example.backendclerkio.dto.CartItemRequestDTO;
 import org.example.backendclerkio.dto.CartItemResponseDTO;
+import org.example.backendclerkio.dto.CartLineDTO;
+import org.example.backendclerkio.dto.CartOperationDTO;
 import org.example.backendclerkio.dto.PaymentRequestDTO;
-import org.example.backendclerkio.dto.UserResponseDTO;
 import org.example.backendclerkio.entity.Order;
 import org.example.backendclerkio.entity.OrderProduct;
 import org.example.backendclerkio.entity.Product;
 import org.example.backendclerkio.entity.User;
+import org.example.backendclerkio.repository.OrderProductRepository;
 import org.example.backendclerkio.repository.OrderRepository;
 import org.example.backendclerkio.repository.ProductRepository;
 import org.example.backendclerkio.repository.UserRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -22,6 +25,7 @@ import org.mockito.MockitoAnnotations;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.IntPredicate;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -31,9 +35,23 @@ class OrderServiceTest {
     @Mock
     OrderRepository orderRepository;
     @Mock
+    OrderProductRepository orderProductRepository;
+    @Mock
     UserRepository userRepository;
     @Mock
     ProductRepository productRepository;
+    @Mock
+    ProductCache productCache;
+    @Mock
+    ProductViewService productViewService;
+    @Mock
+    CatalogVersion catalogVersion;
+    @Mock
+    StockReservationService stockReservations;
+    @Mock
+    HotStockService hotStock;
+    @Mock
+    EmailOutboxService emailOutbox;
 
     @InjectMocks
     OrderService orderService;
@@ -102,11 +120,11 @@ class OrderServiceTest {
 
     @Test
     void addToCart() throws Exception {
-        UserResponseDTO userDTO = new UserResponseDTO(1, "Anders", "Ludvigsen","A@A.dk", true);
+        int userId = 1;
         CartItemRequestDTO cartItemDTO = new CartItemRequestDTO(1, 2); // Requesting 2 items
 
         User mockUser = new User("Anders", "Ludvigsen", "a@a.dk", "password");
-        Mockito.when(userRepository.findById(userDTO.userId())).thenReturn(Optional.of(mockUser));
+        Mockito.when(userRepository.getReferenceById(userId)).thenReturn(mockUser);
 
         Product mockProduct = new Product();
         mockProduct.setProductId(1);
@@ -118,19 +136,45 @@ class OrderServiceTest {
         mockCart.setId(1);
         mockCart.setOrderProducts(new ArrayList<>());
         Mockito.when(orderRepository.save(Mockito.any(Order.class))).thenReturn(mockCart);
+        Mockito.when(stockReservations.reserve(1, 1, 2, 10)).thenReturn(true);
 
-        orderService.addToCart(userDTO, cartItemDTO);
+        orderService.addToCart(userId, cartItemDTO);
 
         assertEquals(1, mockCart.getOrderProducts().size(), "Cart should contain 1 product");
         assertEquals(2, mockCart.getOrderProducts().get(0).getQuantity(), "Product quantity should be 2");
     }
+
+    @Test
+    void addToCart_StockHeldByOtherCarts() {
+        int userId = 1;
+        CartItemRequestDTO cartItemDTO = new CartItemRequestDTO(1, 2);
+
+        User mockUser = new User("Anders", "Ludvigsen", "a@a.dk", "password");
+        Mockito.when(userRepository.getReferenceById(userId)).thenReturn(mockUser);
+
+        Product mockProduct = new Product();
+        mockProduct.setProductId(1);
+        mockProduct.setStockCount(10);
+        Mockito.when(productRepository.findById(cartItemDTO.productId())).thenReturn(Optional.of(mockProduct));
+
+        Order mockCart = new Order();
+        mockCart.setId(1);
+        mockCart.setOrderProducts(new ArrayList<>());
+        Mockito.when(orderRepository.save(Mockito.any(Order.class))).thenReturn(mockCart);
+        Mockito.when(stockReservations.reserve(1, 1, 2, 10)).thenReturn(false);
+
+        Exception exception = assertThrows(Exception.class, () -> orderService.addToCart(userId, cartItemDTO));
+
+        assertEquals("Requested quantity exceeds available stock", exception.getMessage());
+        assertTrue(mockCart.getOrderProducts().isEmpty());
+    }
     @Test
     void addToCart_ProductOutOfStock() {
-        UserResponseDTO userDTO = new UserResponseDTO(1, "Anders", "Ludvigsen","a@A.dk", true);
+        int userId = 1;
         CartItemRequestDTO cartItemDTO = new CartItemRequestDTO(1, 2); // Requesting 2 items
 
         User mockUser = new User("Anders", "Ludvigsen", "a@a.dk", "password");
-        Mockito.when(userRepository.findById(userDTO.userId())).thenReturn(Optional.of(mockUser));
+        Mockito.when(userRepository.getReferenceById(userId)).thenReturn(mockUser);
 
         Product mockProduct = new Product();
         mockProduct.setProductId(1);
@@ -138,21 +182,120 @@ class OrderServiceTest {
         Mockito.when(productRepository.findById(cartItemDTO.productId())).thenReturn(Optional.of(mockProduct));
 
         Exception exception = assertThrows(Exception.class, () -> {
-            orderService.addToCart(userDTO, cartItemDTO);
+            orderService.addToCart(userId, cartItemDTO);
         });
 
         assertEquals("Product is out of stock", exception.getMessage());
     }
 
 
+    @Test
+    void getAllProductsInCart() throws Exception {
+        int userId = 1;
+        Mockito.when(orderProductRepository.findCartLinesByUserId(1)).thenReturn(List.of(
+                new CartLineDTO(1, 26, "Green Chili Pepper", 2, 0.99, 1.29, 40, "chili.png")));
+
+        List<CartItemResponseDTO> cartItems = orderService.getAllProductsInCart(userId);
+
+        assertEquals(List.of(new CartItemResponseDTO(26, "Green Chili Pepper", 2, 0.99, 1.29, "chili.png")), cartItems);
+        Mockito.verifyNoInteractions(userRepository, productRepository);
+    }
+
+    @Test
+    void getAllProductsInCart_NoCartDoesNotCreateOne() throws Exception {
+        int userId = 1;
+        Mockito.when(orderProductRepository.findCartLinesByUserId(1)).thenReturn(List.of());
+
+        List<CartItemResponseDTO> cartItems = orderService.getAllProductsInCart(userId);
+
+        assertTrue(cartItems.isEmpty());
+        Mockito.verify(orderRepository, Mockito.never()).save(Mockito.any(Order.class));
+    }
+
+    @Test
+    void updateCartFoldsOperationsPerProduct() throws Exception {
+        int userId = 1;
+        User mockUser = new User("Anders", "Ludvigsen", "a@a.dk", "password");
+        Mockito.when(userRepository.getReferenceById(1)).thenReturn(mockUser);
+
+        Product inCart = new Product();
+        inCart.setProductId(1);
+        inCart.setStockCount(10);
+        Product removed = new Product();
+        removed.setProductId(2);
+        removed.setStockCount(10);
+        Product added = new Product();
+        added.setProductId(3);
+        added.setPrice(20.0);
+        added.setDiscountPrice(15.0);
+        added.setStockCount(10);
+
+        Order mockCart = new Order();
+        mockCart.setId(7);
+        mockCart.setOrderProducts(new ArrayList<>());
+        OrderProduct inCartLine = new OrderProduct();
+        inCartLine.setProduct(inCart);
+        inCartLine.setQuantity(1);
+        OrderProduct removedLine = new OrderProduct();
+        removedLine.setProduct(removed);
+        removedLine.setQuantity(1);
+        mockCart.getOrderProducts().add(inCartLine);
+        mockCart.getOrderProducts().add(removedLine);
+        Mockito.when(orderRepository.findByUserAndPaidWithProducts(mockUser, false)).thenReturn(Optional.of(mockCart));
+        Mockito.when(productRepository.findAllById(List.of(3))).thenReturn(List.of(added));
+        Mockito.when(stockReservations.reserve(7, 1, 4, 10)).thenReturn(true);
+        Mockito.when(stockReservations.reserve(7, 3, 2, 10)).thenReturn(true);
+
+        orderService.updateCart(userId, List.of(
+                new CartOperationDTO(CartOperationDTO.Action.ADD, 1, 1),
+                new CartOperationDTO(CartOperationDTO.Action.ADD, 3, 2),
+                new CartOperationDTO(CartOperationDTO.Action.REMOVE, 2, 0),
+                new CartOperationDTO(CartOperationDTO.Action.SET, 1, 4),
+                new CartOperationDTO(CartOperationDTO.Action.REMOVE, 99, 0)));
+
+        assertEquals(2, mockCart.getOrderProducts().size());
+        assertEquals(4, inCartLine.getQuantity());
+        OrderProduct addedLine = mockCart.getOrderProducts().get(1);
+        assertEquals(3, addedLine.getProduct().getProductId());
+        assertEquals(2, addedLine.getQuantity());
+        assertEquals(15.0, addedLine.getPriceAtTimeOfOrder());
+        Mockito.verify(stockReservations).release(7, 2);
+        Mockito.verify(orderRepository, Mockito.times(1)).save(mockCart);
+        Mockito.verify(orderProductRepository).findCartLinesByUserId(1);
+    }
+
+    @Test
+    void updateCartRejectsTheWholeBatchWhenStockIsShort() throws Exception {
+        int userId = 1;
+        User mockUser = new User("Anders", "Ludvigsen", "a@a.dk", "password");
+        Mockito.when(userRepository.getReferenceById(1)).thenReturn(mockUser);
+
+        Product product = new Product();
+        product.setProductId(3);
+        product.setTitle("Test Product 3");
+        product.setStockCount(1);
+        Order mockCart = new Order();
+        mockCart.setId(7);
+        mockCart.setOrderProducts(new ArrayList<>());
+        Mockito.when(orderRepository.findByUserAndPaidWithProducts(mockUser, false)).thenReturn(Optional.of(mockCart));
+        Mockito.when(productRepository.findAllById(List.of(3))).thenReturn(List.of(product));
+        Mockito.when(stockReservations.reserve(7, 3, 5, 1)).thenReturn(false);
+
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> orderService.updateCart(userId,
+                List.of(new CartOperationDTO(CartOperationDTO.Action.SET, 3, 5))));
+
+        assertEquals("Requested quantity exceeds available stock for product: Test Product 3", exception.getMessage());
+        Mockito.verify(orderRepository, Mockito.never()).save(Mockito.any(Order.class));
+    }
+
     @Test
     void removeItemFromCart() throws Exception {
-        UserResponseDTO userDTO = new UserResponseDTO(1, "Anders", "Ludvigsen","a@a.dk",true);
+        int userId = 1;
         CartItemResponseDTO cartItemDTO = new CartItemResponseDTO(1, "Test Product", 2, 90.0, 100.0, "imageUrl");
 
 
         User mockUser = new User("Anders", "Ludvigsen", "a@a.dk", "password");
-        Mockito.when(userRepository.findById(userDTO.userId())).thenReturn(Optional.of(mockUser));
+        Mockito.when(userRepository.getReferenceById(userId)).thenReturn(mockUser);
 
 
         Product mockProduct = new Product();
@@ -173,9 +316,10 @@ class OrderServiceTest {
         mockCart.setOrderProducts(new ArrayList<>());
         mockCart.getOrderProducts().add(orderProduct);
 
+        Mockito.when(orderRepository.findByUserAndPaidWithProducts(mockUser, false)).thenReturn(Optional.of(mockCart));
         Mockito.when(orderRepository.save(Mockito.any(Order.class))).thenReturn(mockCart);
 
-        orderService.removeItemFromCart(userDTO, cartItemDTO);
+        orderService.removeItemFromCart(userId, cartItemDTO);
 
         assertTrue(mockCart.getOrderProducts().isEmpty(), "The cart should be empty after removing the product");
 
@@ -185,39 +329,19 @@ class OrderServiceTest {
 
     @Test
     void checkout() {
-        Mockito.when(orderRepository.save(Mockito.any(Order.class)))
-                .thenReturn(new Order() {{
-                    setPaid(true);
-                }});
-        Product product1 = new Product();
-        product1.setProductId(1);
-        product1.setTitle("Test Product 1");
-        product1.setPrice(100.0);
-        product1.setStockCount(10);
-
-        Product product2 = new Product();
-        product2.setProductId(2);
-        product2.setTitle("Test Product 2");
-        product2.setPrice(50.0);
-        product2.setStockCount(5);
-        OrderProduct orderProduct1 = new OrderProduct();
-        orderProduct1.setProduct(product1);
-        orderProduct1.setQuantity(2);
-
-        OrderProduct orderProduct2 = new OrderProduct();
-        orderProduct2.setProduct(product2);
-        orderProduct2.setQuantity(1);
-
         Order order = new Order();
         order.setId(1);
         order.setUser(new User("Anders", "Ludvigsen", "a@a.dk", "password"));
         order.setPaid(false);
         order.setOrderDate(System.currentTimeMillis());
-        order.setOrderProducts(List.of(orderProduct1, orderProduct2));
-
-        orderProduct1.setOrder(order);
-        orderProduct2.setOrder(order);
 
+        Mockito.when(orderRepository.markPaid(Mockito.eq(1), Mockito.anyLong())).thenReturn(1);
+        Mockito.when(orderProductRepository.findLinesByOrderId(1)).thenReturn(List.of(
+                new CartLineDTO(1, 2, "Test Product 2", 1, 50.0, 50.0, 5, null),
+                new CartLineDTO(1, 1, "Test Product 1", 2, 100.0, 100.0, 10, null)));
+        Mockito.when(stockReservations.heldByOthers(1, 2)).thenReturn(3);
+        Mockito.when(productRepository.decrementStock(1, 2, 0)).thenReturn(1);
+        Mockito.when(productRepository.decrementStock(2, 1, 3)).thenReturn(1);
 
         orderService.checkout(order);
 
@@ -225,9 +349,102 @@ class OrderServiceTest {
 
         assertNotNull(order.getOrderDate(), "Order date should be set");
 
-        assertEquals(8, product1.getStockCount(), "Stock count for product 1 should be reduced by the ordered quantity");
-        assertEquals(4, product2.getStockCount(), "Stock count for product 2 should be reduced by the ordered quantity");
+        // Stock is decremented in the database, in product id order, leaving other carts' holds untouched
+        InOrder inOrder = Mockito.inOrder(productRepository);
+        inOrder.verify(productRepository).decrementStock(1, 2, 0);
+        inOrder.verify(productRepository).decrementStock(2, 1, 3);
+        Mockito.verify(productRepository, Mockito.never()).save(Mockito.any(Product.class));
+        Mockito.verify(stockReservations).deleteRows(1);
+        Mockito.verify(stockReservations).releaseAll(1, List.of(1, 2));
+        Mockito.verify(emailOutbox).enqueue(1, "a@a.dk");
+        Mockito.verify(emailOutbox).wakeUp();
+    }
+
+    @Test
+    void checkoutTakesHotProductsFromCounters() {
+        Order order = new Order();
+        order.setId(1);
+        order.setUser(new User("Anders", "Ludvigsen", "a@a.dk", "password"));
+
+        Mockito.when(orderRepository.markPaid(Mockito.eq(1), Mockito.anyLong())).thenReturn(1);
+        Mockito.when(orderProductRepository.findLinesByOrderId(1)).thenReturn(List.of(
+                new CartLineDTO(1, 26, "Green Chili Pepper", 2, 1.29, 1.29, 40, null)));
+        Mockito.when(hotStock.isHot(26)).thenReturn(true);
+        Mockito.when(hotStock.tryTake(26, 2, 0)).thenReturn(true);
+        // Takes with nothing held by other carts, and this cart held nothing
+        Mockito.when(stockReservations.takeHeld(Mockito.eq(1), Mockito.eq(26), Mockito.any()))
+                .thenAnswer(invocation -> invocation.<IntPredicate>getArgument(2).test(0) ? 0 : -1);
+
+        orderService.checkout(order);
+
+        assertTrue(order.isPaid());
+        Mockito.verify(hotStock).tryTake(26, 2, 0);
+        Mockito.verify(productRepository, Mockito.never()).decrementStock(Mockito.anyInt(), Mockito.anyInt(), Mockito.anyInt());
+    }
+
+    @Test
+    void checkoutRetriesWhenAnotherCheckoutTookItsHeldStockMeanwhile() {
+        Order order = new Order();
+        order.setId(1);
+        order.setUser(new User("Anders", "Ludvigsen", "a@a.dk", "password"));
+
+        Mockito.when(orderRepository.markPaid(Mockito.eq(1), Mockito.anyLong())).thenReturn(1);
+        Mockito.when(orderProductRepository.findLinesByOrderId(1)).thenReturn(List.of(
+                new CartLineDTO(1, 1, "Test Product 1", 5, 100.0, 100.0, 10, null)));
+        // The other cart's hold of 5 is gone once its checkout took the stock
+        Mockito.when(stockReservations.heldByOthers(1, 1)).thenReturn(5, 0);
+        Mockito.when(productRepository.decrementStock(1, 5, 5)).thenReturn(0);
+        Mockito.when(productRepository.decrementStock(1, 5, 0)).thenReturn(1);
+        Mockito.when(stockReservations.releaseTaken(1, 1)).thenReturn(5);
+
+        orderService.checkout(order);
+
+        assertTrue(order.isPaid());
+        Mockito.verify(productRepository).decrementStock(1, 5, 0);
+    }
+
+    @Test
+    void checkoutInsufficientStock() {
+        Order order = new Order();
+        order.setId(1);
+        order.setUser(new User("Anders", "Ludvigsen", "a@a.dk", "password"));
+
+        Mockito.when(orderRepository.markPaid(Mockito.eq(1), Mockito.anyLong())).thenReturn(1);
+        Mockito.when(orderProductRepository.findLinesByOrderId(1)).thenReturn(List.of(
+                new CartLineDTO(1, 1, "Test Product 1", 3, 100.0, 100.0, 2, null)));
+        Mockito.when(productRepository.decrementStock(1, 3, 0)).thenReturn(0);
+
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> orderService.checkout(order));
+
+        assertEquals("Insufficient stock for product: Test Product 1", exception.getMessage());
+        Mockito.verify(catalogVersion, Mockito.never()).bump();
+    }
+
+    @Test
+    void checkoutEmptyOrder() {
+        Order order = new Order();
+        order.setId(1);
+        order.setUser(new User("Anders", "Ludvigsen", "a@a.dk", "password"));
+
+        Mockito.when(orderRepository.markPaid(Mockito.eq(1), Mockito.anyLong())).thenReturn(1);
+        Mockito.when(orderProductRepository.findLinesByOrderId(1)).thenReturn(List.of());
+
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> orderService.checkout(order));
+
+        assertEquals("Invalid order details", exception.getMessage());
+        Mockito.verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void checkoutAlreadyPaidOrder() {
+        Order order = new Order();
+        order.setId(1);
+        order.setOrderProducts(new ArrayList<>());
+
+        Mockito.when(orderRepository.markPaid(Mockito.eq(1), Mockito.anyLong())).thenReturn(0);
 
+        assertThrows(IllegalArgumentException.class, () -> orderService.checkout(order));
+        Mockito.verifyNoInteractions(productRepository);
     }
 
     @Test
@@ -0,0 +1,86 @@
+package org.example.backendclerkio.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.backendclerkio.dto.CacheStatsDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductCacheTest {
+
+    private ProductCache productCache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        productCache = new ProductCache(new ObjectMapper(), 2, 60);
+        loads = new AtomicInteger();
+    }
+
+    private Object load(int id) {
+        loads.incrementAndGet();
+        return id == 404 ? null : Map.of("id", id);
+    }
+
+    @Test
+    void secondReadIsServedFromCache() {
+        byte[] first = productCache.getOrLoad(1, this::load);
+        byte[] second = productCache.getOrLoad(1, this::load);
+
+        assertArrayEquals(first, second);
+        assertEquals("{\"id\":1}", new String(second));
+        assertEquals(1, loads.get());
+
+        CacheStatsDTO stats = productCache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+    }
+
+    @Test
+    void missingProductIsNotCached() {
+        assertNull(productCache.getOrLoad(404, this::load));
+        assertNull(productCache.getOrLoad(404, this::load));
+
+        assertEquals(2, loads.get());
+        assertEquals(0, productCache.stats().size());
+    }
+
+    @Test
+    void invalidateForcesReload() {
+        productCache.getOrLoad(1, this::load);
+        productCache.invalidate(1);
+        productCache.getOrLoad(1, this::load);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvictedWhenFull() {
+        productCache.getOrLoad(1, this::load);
+        productCache.getOrLoad(2, this::load);
+        productCache.getOrLoad(1, this::load);
+        productCache.getOrLoad(3, this::load);
+
+        CacheStatsDTO stats = productCache.stats();
+        assertEquals(2, stats.size());
+        assertEquals(1, stats.evictions());
+
+        productCache.getOrLoad(1, this::load);
+        assertEquals(3, loads.get(), "Product 1 was used recently and should still be cached");
+    }
+
+    @Test
+    void expiredEntryIsReloaded() {
+        ProductCache expiringCache = new ProductCache(new ObjectMapper(), 10, 0);
+
+        expiringCache.getOrLoad(1, this::load);
+        expiringCache.getOrLoad(1, this::load);
+
+        assertEquals(2, loads.get());
+        assertEquals(1, expiringCache.stats().evictions());
+    }
+}
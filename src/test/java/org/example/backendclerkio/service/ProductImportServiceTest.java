@@ -0,0 +1,99 @@
+package org.example.backendclerkio.service;
+
+import org.example.backendclerkio.dto.ProductImportResultDTO;
+import org.example.backendclerkio.entity.Product;
+import org.example.backendclerkio.entity.Tag;
+import org.example.backendclerkio.repository.ProductRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Chunks commit on their own, so the test runs outside a rolled back transaction
+@DataJpaTest(properties = "product.import.chunk-size=2")
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({ProductImportService.class, CatalogNameResolver.class, ProductSearchIndex.class, CatalogVersion.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ProductImportServiceTest {
+
+    @Autowired
+    private ProductImportService productImportService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductSearchIndex searchIndex;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static InputStream body(String... lines) {
+        return new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void importsNdjsonInChunksAndReportsBadRows() throws Exception {
+        ProductImportResultDTO result = productImportService.importProducts(body(
+                "{\"title\":\"Import Kettle\",\"price\":30,\"discountPrice\":25,\"stock\":4,\"category\":\"import-kitchen\",\"images\":[\"kettle.jpg\"],\"tags\":[\"import-steel\"]}",
+                "{\"title\":\"Import Toaster\",\"price\":40,\"discountPrice\":40,\"stock\":2,\"category\":\"import-kitchen\",\"images\":[],\"tags\":[\"import-steel\",\"import-bread\"]}",
+                "{\"title\":\"\",\"price\":10}",
+                "not json",
+                "{\"title\":\"Import Pan\",\"price\":20,\"discountPrice\":15,\"stock\":9,\"category\":\"import-kitchen\"}"
+        ), "application/x-ndjson");
+
+        assertEquals(5, result.rowsRead());
+        assertEquals(3, result.rowsImported());
+        assertEquals(2, result.rowsFailed());
+        assertEquals(List.of(3L, 4L), result.errors().stream().map(error -> error.line()).toList());
+
+        Set<Integer> ids = searchIndex.search("import kitchen");
+        assertEquals(3, ids.size());
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Product toaster = productRepository.findById(searchIndex.search("toaster").first()).orElseThrow();
+            assertEquals(2, toaster.getStockCount());
+            assertEquals("import-kitchen", toaster.getCategory().getCategoryName());
+            assertEquals(Set.of("import-steel", "import-bread"), toaster.getTags().stream().map(Tag::getTagName).collect(Collectors.toSet()));
+        });
+    }
+
+    @Test
+    void importsCsvWithQuotedFields() throws Exception {
+        ProductImportResultDTO result = productImportService.importProducts(body(
+                "title,description,price,discountPrice,stock,category,images,tags",
+                "Import Chair,\"Oak, with \"\"soft\"\" seat\",120,99.5,7,import-furniture,chair-1.jpg|chair-2.jpg,import-oak",
+                "Import Stool,,abc,,1,import-furniture,,"
+        ), "text/csv; charset=utf-8");
+
+        assertEquals(1, result.rowsImported());
+        assertEquals(1, result.rowsFailed());
+        assertEquals(3L, result.errors().get(0).line());
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Product chair = productRepository.findById(searchIndex.search("chair").first()).orElseThrow();
+            assertEquals("Oak, with \"soft\" seat", chair.getDescription());
+            assertEquals(99.5, chair.getDiscountPrice());
+            assertEquals(List.of("chair-1.jpg", "chair-2.jpg"), List.copyOf(chair.getImages()));
+        });
+    }
+
+    @Test
+    void rejectsUnknownContentType() {
+        assertThrows(IllegalArgumentException.class, () -> productImportService.importProducts(body("{}"), "application/json"));
+    }
+}
@@ -0,0 +1,60 @@
+package org.example.backendclerkio.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductSearchIndexTest {
+
+    private ProductSearchIndex searchIndex;
+
+    @BeforeEach
+    void setUp() {
+        searchIndex = new ProductSearchIndex();
+        searchIndex.index(1, "Laptop", "High performance laptop", "electronics", Set.of("computers"));
+        searchIndex.index(2, "Smartphone", "Latest smartphone with advanced features", "electronics", Set.of("mobile"));
+        searchIndex.index(3, "Table", "Wooden dining table", "furniture", Set.of("wooden"));
+    }
+
+    @Test
+    void searchMatchesTitleIgnoringCase() {
+        assertEquals(Set.of(1), searchIndex.search("LAPTOP"));
+    }
+
+    @Test
+    void searchMatchesPrefixWhileTyping() {
+        assertEquals(Set.of(2), searchIndex.search("smartp"));
+    }
+
+    @Test
+    void searchMatchesTagsAndCategory() {
+        assertEquals(List.of(1, 2), List.copyOf(searchIndex.search("electronics")));
+        assertEquals(Set.of(3), searchIndex.search("wooden"));
+    }
+
+    @Test
+    void searchRequiresEveryToken() {
+        assertEquals(Set.of(3), searchIndex.search("wooden table"));
+        assertTrue(searchIndex.search("wooden laptop").isEmpty());
+    }
+
+    @Test
+    void reindexReplacesOldTokens() {
+        searchIndex.index(1, "Notebook", "Budget notebook", "electronics", Set.of("budget"));
+
+        assertTrue(searchIndex.search("laptop").isEmpty());
+        assertEquals(Set.of(1), searchIndex.search("notebook"));
+    }
+
+    @Test
+    void removeDropsProductFromResults() {
+        searchIndex.remove(3);
+
+        assertTrue(searchIndex.search("table").isEmpty());
+        assertEquals(2, searchIndex.size());
+    }
+}
@@ -1,13 +1,13 @@
 package org.example.backendclerkio.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.transaction.Transactional;
 import org.example.backendclerkio.dto.ProductRequestDTO;
 import org.example.backendclerkio.entity.Category;
 import org.example.backendclerkio.entity.Product;
 import org.example.backendclerkio.entity.Tag;
-import org.example.backendclerkio.repository.CategoryRepository;
 import org.example.backendclerkio.repository.ProductRepository;
-import org.example.backendclerkio.repository.TagRepository;
+import org.example.backendclerkio.repository.ProductRow;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentMatchers;
@@ -35,21 +35,23 @@ class ProductServiceTest {
     private WebClient.Builder mockedWebClientBuilder; // Mocking WebClient.Builder
 
     @Mock
-    CategoryRepository mockedCategoryRepository;
+    CatalogNameResolver mockedNameResolver;
 
     @Mock
-    TagRepository mockedTagRepository;
+    HotStockService mockedHotStock;
 
     @Mock
     private WebClient mockedWebClient; // Mocking WebClient if used in ProductService
 
+    private final CatalogVersion catalogVersion = new CatalogVersion();
+
     private ProductService productService; // ProductService with mocked dependencies
 
 
     @BeforeEach
     void setUp() {
         // Instantiate ProductService with mocked dependencies
-        productService = new ProductService(mockedProductRepository,mockedCategoryRepository, mockedTagRepository, mockedWebClientBuilder);
+        productService = new ProductService(mockedProductRepository, mockedNameResolver, mockedWebClientBuilder, new ProductSearchIndex(), new ProductCache(new ObjectMapper(), 100, 60), new ProductViewService(mockedProductRepository), catalogVersion, mockedHotStock);
 
         // Arrange Mock behaviors
 
@@ -156,6 +158,8 @@ class ProductServiceTest {
                 new HashSet<>(Set.of(("Test Tag")))
         );
 
+        String etagBefore = catalogVersion.etag();
+
         // Act: Call the service method to create a product
         Product createdProduct = productService.createProduct(productRequestDTO);
 
@@ -167,10 +171,13 @@ class ProductServiceTest {
         assertEquals(1, createdProduct.getStockCount(), "Product stock count should match");
         assertEquals(List.of("test-image-url.jpg"), createdProduct.getImages(), "Product image URL should match");
         assertEquals(10.0f, createdProduct.getDiscountPrice(), "Product discount should match");
+        assertNotEquals(etagBefore, catalogVersion.etag(), "Creating a product should change the catalog ETag");
 
         // Verify interactions with WebClient if applicable
         Mockito.verify(mockedWebClientBuilder, Mockito.times(1)).build();
         Mockito.verify(mockedProductRepository, Mockito.times(1)).save(ArgumentMatchers.any(Product.class));
+        Mockito.verify(mockedNameResolver, Mockito.times(1)).resolveCategory("Test Category");
+        Mockito.verify(mockedNameResolver, Mockito.times(1)).resolveTags(Set.of("Test Tag"));
     }
 
     @Test
@@ -245,10 +252,35 @@ class ProductServiceTest {
         // Arrange
         int existingProductId = 1;
 
+        String etagBefore = catalogVersion.etag();
+
         // Act & Assert: Attempt to delete an existing product and expect no exception
         assertDoesNotThrow(() -> productService.deleteProduct(existingProductId), "Deleting existing product should not throw any exception");
+        assertNotEquals(etagBefore, catalogVersion.etag(), "Deleting a product should change the catalog ETag");
 
         // Verify that deleteById was called with id=1
         Mockito.verify(mockedProductRepository, Mockito.times(1)).deleteById(existingProductId);
     }
+
+    @Test
+    void testScrollCursorIsRejectedForOtherFilters() {
+        // Arrange: two rows for a page of one, so the first page hands out a cursor
+        List<ProductRow> rows = List.of(
+                new ProductRow(1, "Test Product1", "Test Description", 50.0, 10.0, 1, "Test Category"),
+                new ProductRow(2, "Test Product2", "Test Description", 50.0, 10.0, 1, "Test Category"));
+        Mockito.when(mockedProductRepository.scrollProductRows(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.anyBoolean(),
+                ArgumentMatchers.any(), ArgumentMatchers.anyInt())).thenReturn(rows);
+
+        String cursor = productService.scrollProducts("Test Category", "", false, false, null, 100, "price", "asc", null, 1).nextCursor();
+        assertNotNull(cursor, "The first page should return a cursor");
+
+        // Act & Assert: the same filters continue, changed ones are a bad request
+        assertDoesNotThrow(() -> productService.scrollProducts("Test Category", "", false, false, null, 100, "price", "asc", cursor, 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> productService.scrollProducts("Test Category", "", false, false, null, 50, "price", "asc", cursor, 1),
+                "A cursor from a listing with other filters should be rejected");
+        assertThrows(IllegalArgumentException.class,
+                () -> productService.scrollProducts("Other Category", "", false, false, null, 100, "price", "asc", cursor, 1),
+                "A cursor from a listing with other filters should be rejected");
+    }
 }
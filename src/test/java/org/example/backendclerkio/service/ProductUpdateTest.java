@@ -0,0 +1,73 @@
+package org.example.backendclerkio.service;
+
+import org.example.backendclerkio.dto.ProductRequestDTO;
+import org.example.backendclerkio.entity.Product;
+import org.example.backendclerkio.repository.ProductRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.reactive.function.client.WebClientAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+// Editing a hot product while the stock flusher writes its counter. The edit and the flush commit on their own,
+// so the test runs outside a rolled back transaction.
+@DataJpaTest
+@ImportAutoConfiguration({JacksonAutoConfiguration.class, WebClientAutoConfiguration.class})
+@Import({ProductService.class, ProductSearchIndex.class, ProductCache.class, ProductViewService.class, CatalogVersion.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ProductUpdateTest {
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockBean
+    private HotStockService hotStock;
+
+    @MockBean
+    private CatalogNameResolver nameResolver;
+
+    @Test
+    void editingAHotProductKeepsStockFlushedDuringTheEdit() {
+        Product product = productRepository.save(new Product("Hot product", "", 10, 10, 20, null, new ArrayList<>(), new HashSet<>()));
+        int id = product.getId();
+        when(hotStock.isHot(id)).thenReturn(true);
+        when(hotStock.available(id)).thenReturn(20);
+
+        // The flusher commits a stock change after updateProduct has loaded the product but before it is written
+        TransactionTemplate flusher = new TransactionTemplate(transactionManager);
+        flusher.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        when(nameResolver.resolveCategory(any())).thenAnswer(invocation -> {
+            flusher.executeWithoutResult(status -> productRepository.incrementStock(id, -5));
+            return null;
+        });
+        when(nameResolver.resolveTags(any())).thenReturn(new HashSet<>());
+
+        productService.updateProduct(id, new ProductRequestDTO("Renamed", "New description", 12, 11, 20, null, List.of(), Set.of()));
+
+        Product updated = productRepository.findById(id).orElseThrow();
+        assertEquals("Renamed", updated.getTitle());
+        assertEquals(11.0, updated.getDiscountPrice());
+        assertEquals(15, updated.getStockCount());
+        verify(hotStock).adjust(id, 0);
+    }
+}
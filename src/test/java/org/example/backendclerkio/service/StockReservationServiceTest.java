@@ -0,0 +1,88 @@
+package org.example.backendclerkio.service;
+
+import org.example.backendclerkio.entity.StockReservation;
+import org.example.backendclerkio.repository.StockReservationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StockReservationServiceTest {
+
+    private StockReservationRepository reservationRepository;
+    private StockReservationService stockReservations;
+
+    @BeforeEach
+    void setUp() {
+        reservationRepository = Mockito.mock(StockReservationRepository.class);
+        Mockito.when(reservationRepository.findByOrderIdAndProductId(ArgumentMatchers.anyInt(), ArgumentMatchers.anyInt())).thenReturn(Optional.empty());
+        stockReservations = new StockReservationService(reservationRepository, 60);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stockReservations.shutdown();
+    }
+
+    @Test
+    void holdsAreSubtractedFromOtherCartsOnly() {
+        assertTrue(stockReservations.reserve(1, 10, 3, 5));
+
+        assertEquals(3, stockReservations.heldByOthers(2, 10));
+        assertEquals(0, stockReservations.heldByOthers(1, 10));
+        assertFalse(stockReservations.reserve(2, 10, 3, 5), "Only 2 of the 5 are left for another cart");
+        assertTrue(stockReservations.reserve(2, 10, 2, 5));
+        Mockito.verify(reservationRepository, Mockito.times(2)).save(ArgumentMatchers.any(StockReservation.class));
+    }
+
+    @Test
+    void reservingAgainReplacesTheLinesHold() {
+        stockReservations.reserve(1, 10, 2, 5);
+        stockReservations.reserve(1, 10, 4, 5);
+
+        assertEquals(4, stockReservations.held(10));
+    }
+
+    @Test
+    void releaseFreesTheStock() {
+        stockReservations.reserve(1, 10, 5, 5);
+        stockReservations.release(1, 10);
+
+        assertEquals(0, stockReservations.held(10));
+        assertTrue(stockReservations.reserve(2, 10, 5, 5));
+        Mockito.verify(reservationRepository).deleteHold(1, 10);
+    }
+
+    @Test
+    void releaseAllAfterCheckout() {
+        stockReservations.reserve(1, 10, 1, 5);
+        stockReservations.reserve(1, 11, 1, 5);
+        stockReservations.releaseAll(1, List.of(10, 11));
+
+        assertEquals(0, stockReservations.held(10));
+        assertEquals(0, stockReservations.held(11));
+    }
+
+    @Test
+    void expiredHoldsAreReclaimed() throws InterruptedException {
+        StockReservationService shortLived = new StockReservationService(reservationRepository, 1);
+        try {
+            shortLived.reserve(1, 10, 5, 5);
+            assertEquals(5, shortLived.held(10));
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (shortLived.held(10) != 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            assertEquals(0, shortLived.held(10));
+        } finally {
+            shortLived.shutdown();
+        }
+    }
+}
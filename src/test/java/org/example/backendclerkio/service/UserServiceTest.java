@@ -27,6 +27,9 @@ class UserServiceTest {
     @Mock
     private PasswordEncoder passwordEncoder;
 
+    @Mock
+    private UserTokenVersions tokenVersions;
+
     @InjectMocks
     private UserService userService;
 
@@ -151,6 +154,36 @@ class UserServiceTest {
         assertTrue(result);
         verify(userRepository, times(1)).delete(user);
         verify(userRepository, times(1)).findByUserId(userId);
+        verify(tokenVersions, times(1)).revokeDeleted(userId);
+    }
+
+    @Test
+    void testPasswordChangeRevokesTokens() {
+        System.out.println("Testing: testPasswordChangeRevokesTokens...");
+        User user = new User("FirstName", "LastName", "user@mail.dk", "password");
+        user.setUserId(1);
+        when(userRepository.findByUserId(1)).thenReturn(Optional.of(user));
+        when(userRepository.save(user)).thenReturn(user);
+        when(passwordEncoder.encode("newPassword")).thenReturn("newHash");
+
+        userService.updateUser(1, new UserRequestDTO(null, null, null, "newPassword"));
+
+        assertEquals(1, user.getTokenVersion());
+        verify(tokenVersions, times(1)).revoked(1, 1);
+    }
+
+    @Test
+    void testNameChangeKeepsTokens() {
+        System.out.println("Testing: testNameChangeKeepsTokens...");
+        User user = new User("FirstName", "LastName", "user@mail.dk", "password");
+        user.setUserId(1);
+        when(userRepository.findByUserId(1)).thenReturn(Optional.of(user));
+        when(userRepository.save(user)).thenReturn(user);
+
+        userService.updateUser(1, new UserRequestDTO("NewName", "LastName", "user@mail.dk", null));
+
+        assertEquals(0, user.getTokenVersion());
+        verify(tokenVersions, never()).revoked(anyInt(), anyInt());
     }
 
     @Test
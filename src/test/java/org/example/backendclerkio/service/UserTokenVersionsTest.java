@@ -0,0 +1,67 @@
+package org.example.backendclerkio.service;
+
+import org.example.backendclerkio.entity.User;
+import org.example.backendclerkio.repository.DeletedUserRepository;
+import org.example.backendclerkio.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Two instances share the user and deleted_user tables. Neither is started, so the tests refresh.
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class UserTokenVersionsTest {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DeletedUserRepository deletedUserRepository;
+
+    private UserTokenVersions thisInstance;
+    private UserTokenVersions otherInstance;
+
+    @BeforeEach
+    void setUp() {
+        deletedUserRepository.deleteAll();
+        userRepository.deleteAll();
+        thisInstance = newInstance();
+        otherInstance = newInstance();
+    }
+
+    private UserTokenVersions newInstance() {
+        UserTokenVersions instance = new UserTokenVersions(userRepository, deletedUserRepository, 3_600_000, 10_000);
+        instance.refresh();
+        return instance;
+    }
+
+    @Test
+    void aVersionBumpedByAnotherInstanceIsSeenAfterARefresh() {
+        User user = userRepository.save(new User("Token", "Test", "token@example.com", "hash"));
+        user.setTokenVersion(1);
+        user.setTokenRevokedAt(System.currentTimeMillis());
+        userRepository.save(user);
+        otherInstance.revoked(user.getUserId(), 1);
+
+        assertTrue(thisInstance.isCurrent(user.getUserId(), 0));
+        thisInstance.refresh();
+        assertFalse(thisInstance.isCurrent(user.getUserId(), 0));
+        assertTrue(thisInstance.isCurrent(user.getUserId(), 1));
+    }
+
+    @Test
+    void aDeletedUserStaysRevokedOnOtherInstancesAndAfterARestart() {
+        User user = userRepository.save(new User("Deleted", "Test", "deleted@example.com", "hash"));
+        userRepository.delete(user);
+        otherInstance.revokeDeleted(user.getUserId());
+
+        thisInstance.refresh();
+        assertFalse(thisInstance.isCurrent(user.getUserId(), 0));
+        assertFalse(newInstance().isCurrent(user.getUserId(), 0));
+    }
+}